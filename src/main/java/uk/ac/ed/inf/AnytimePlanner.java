@@ -0,0 +1,326 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * class for planning the drone's journey within a wall-clock budget, the orders are delivered in the sequence of the best plan found before the deadline,
+ * a plan is made by running the drone movement algorithm on a sequence of the orders without publishing it,
+ * the first plan is a greedy sequence picking the order worth the most per distance flown next, then the sequence the orders were placed in if the budget allows,
+ * the rest of the budget is spent on local search, i.e., swapping two orders, moving an order elsewhere in the sequence or reversing part of the sequence,
+ * a plan is kept if it delivers more money, or the same money in fewer moves, and ends at Appleton Tower within the move limit
+ */
+public class AnytimePlanner {
+
+    // the coordinates of Appleton Tower, where the drone begins and ends its delivery service for the day
+    private static final double[] APPLETON_COORDS = {-3.1869, 55.9445};
+
+    // the delivery charge added to the price of the items of an order
+    private static final int DELIVERY_FEE = 50;
+
+    private final List<List<List<Double>>> no_fly_zones;
+    // plans the legs of every plan, null for the rotation sweeps
+    private final LegPlanner leg_planner;
+    // picks the sequence the shops of each order are visited in, null if they're visited in the order the items were read
+    private final PickupSequencer pickup_sequencer;
+    // picks the heading of the moves around the no-fly zones, null for the rotation sweeps
+    private final HeadingScorer heading_scorer;
+    // tests the moves against the edges of the no-fly zones, null to test each edge as a Line2D
+    private final SegmentKernel segment_kernel;
+    // the wall-clock budget of a day's planning in milliseconds
+    private final long budget_millis;
+    // picks the local search moves, seeded so the same orders and budget give the same journey on the same machine
+    private final Random random;
+
+    /**
+     * constructor of the class
+     * @param no_fly_zones the no-fly zones
+     * @param budget_millis the wall-clock budget of a day's planning in milliseconds
+     * @param seed the seed of the local search
+     * @param leg_planner plans the legs of every plan, null for the rotation sweeps
+     * @param pickup_sequencer picks the sequence the shops of each order are visited in, null for the order the items were read
+     * @param heading_scorer picks the heading of the moves around the no-fly zones, null for the rotation sweeps
+     * @param segment_kernel tests the moves against the edges of the no-fly zones, null to test each edge as a Line2D
+     */
+    public AnytimePlanner(List<List<List<Double>>> no_fly_zones, long budget_millis, long seed, LegPlanner leg_planner, PickupSequencer pickup_sequencer,
+                          HeadingScorer heading_scorer, SegmentKernel segment_kernel) {
+        this.no_fly_zones = no_fly_zones;
+        this.leg_planner = leg_planner;
+        this.pickup_sequencer = pickup_sequencer;
+        this.heading_scorer = heading_scorer;
+        this.segment_kernel = segment_kernel;
+        this.budget_millis = budget_millis;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * function to make a planner from the system properties drone.planner.deadline and drone.planner.seed
+     * @param no_fly_zones the no-fly zones
+     * @param leg_planner plans the legs of every plan, null for the rotation sweeps
+     * @param pickup_sequencer picks the sequence the shops of each order are visited in, null for the order the items were read
+     * @param heading_scorer picks the heading of the moves around the no-fly zones, null for the rotation sweeps
+     * @param segment_kernel tests the moves against the edges of the no-fly zones, null to test each edge as a Line2D
+     * @return the planner, null if drone.planner.deadline isn't set and the orders are delivered in the sequence they were placed in
+     */
+    public static AnytimePlanner from_properties(List<List<List<Double>>> no_fly_zones, LegPlanner leg_planner, PickupSequencer pickup_sequencer,
+                                                 HeadingScorer heading_scorer, SegmentKernel segment_kernel) {
+        long budget_millis = Long.getLong("drone.planner.deadline", 0);
+        if (budget_millis <= 0)
+            return null;
+        return new AnytimePlanner(no_fly_zones, budget_millis, Long.getLong("drone.planner.seed", 0), leg_planner, pickup_sequencer, heading_scorer, segment_kernel);
+    }
+
+    /**
+     * function to plan the drone's journey delivering orders and publish the best plan found before the deadline to the sink,
+     * the plan of the greedy sequence is always made in full, so there's a plan to publish even if it takes longer than the budget, which is reported
+     * @param day_orders a list of all the orders placed, the items of an order have to be next to each other
+     * @param sink the sink receiving the positions, moves and deliveries of the journey
+     * @throws InterruptedException if the thread is interrupted while waiting for the sink to accept a published value
+     */
+    public void plan(List<Orders> day_orders, MoveSink sink) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + budget_millis * 1_000_000;
+        List<List<Orders>> sequence = group_orders(day_orders);
+        int total_value = 0;
+        for (List<Orders> order : sequence)
+            total_value += value(order);
+
+        // the value delivered, moves and time of every plan which was better than the plans before it
+        List<String> improvements = new ArrayList<>();
+        List<List<Orders>> greedy = greedy_sequence(sequence);
+        Plan best = evaluate(greedy, Long.MAX_VALUE);
+        improvements.add(describe(best, "greedy", start, total_value));
+        long greedy_nanos = System.nanoTime() - start;
+        int evaluations = 1;
+        // the sequence the orders were placed in is kept if it's as good as the greedy sequence, the plan is null if the deadline passed first
+        Plan plan = evaluate(sequence, deadline);
+        if (plan != null) {
+            ++evaluations;
+            if (!best.better_than(plan)) {
+                best = plan;
+                improvements.add(describe(best, "placed", start, total_value));
+            } else
+                sequence = greedy;
+        } else
+            sequence = greedy;
+        long baseline_nanos = System.nanoTime() - start;
+
+        while (sequence.size() > 1 && System.nanoTime() < deadline) {
+            List<List<Orders>> candidate = neighbour(sequence);
+            plan = evaluate(candidate, deadline);
+            // the plan is null if the deadline passed before it was made
+            if (plan == null)
+                break;
+            ++evaluations;
+            Metrics.PLANNER_EVALUATIONS.increment();
+            if (plan.better_than(best)) {
+                best = plan;
+                sequence = candidate;
+                Metrics.PLANNER_IMPROVEMENTS.increment();
+                improvements.add(describe(best, "local search", start, total_value));
+            }
+        }
+        long search_nanos = System.nanoTime() - start;
+
+        System.out.printf("Anytime planner: %d orders, %d plans in %.1f ms (budget %d ms, baseline %.1f ms)%n",
+                sequence.size(), evaluations, search_nanos / 1e6, budget_millis, baseline_nanos / 1e6);
+        for (String improvement : improvements)
+            System.out.println("  " + improvement);
+        // the other plans stop within a move of the deadline, the greedy plan can take longer than the whole budget
+        if (greedy_nanos > budget_millis * 1_000_000)
+            System.err.printf("Anytime planner: budget of %d ms overrun by %.1f ms, the greedy plan took %.1f ms%n",
+                    budget_millis, search_nanos / 1e6 - budget_millis, greedy_nanos / 1e6);
+        if (!best.feasible)
+            System.err.println("Anytime planner: no plan found ends at Appleton Tower within the battery budget");
+
+        // the plan is published in the order the drone movement algorithm published it
+        for (Object value : best.published) {
+            if (value instanceof double[])
+                sink.publish_position((double[]) value);
+            else if (value instanceof Flightpath)
+                sink.publish_flightpath((Flightpath) value);
+            else
+                sink.publish_delivery((Deliveries) value);
+        }
+    }
+
+    // describes a plan for the quality-vs-time report
+    private static String describe(Plan plan, String found_by, long start, int total_value) {
+        return String.format("%8.1f ms %-12s %d deliveries, %d of %d pence (%.1f%%), %d moves%s", (System.nanoTime() - start) / 1e6, found_by,
+                plan.deliveries, plan.value, total_value, total_value == 0 ? 100.0 : 100.0 * plan.value / total_value, plan.moves,
+                plan.feasible ? "" : ", infeasible");
+    }
+
+    /**
+     * function to split the items into orders, the items of an order stay in the sequence they were placed in
+     * @param day_orders a list of all the orders placed
+     * @return the items of each order
+     */
+    private static List<List<Orders>> group_orders(List<Orders> day_orders) {
+        List<List<Orders>> sequence = new ArrayList<>();
+        for (Orders item : day_orders) {
+            if (sequence.isEmpty() || !sequence.get(sequence.size() - 1).get(0).getOrderNo().equals(item.getOrderNo()))
+                sequence.add(new ArrayList<>());
+            sequence.get(sequence.size() - 1).add(item);
+        }
+        return sequence;
+    }
+
+    // the money the drone earns delivering an order
+    private static int value(List<Orders> order) {
+        int value = DELIVERY_FEE;
+        for (Orders item : order)
+            value += item.getItemPrice();
+        return value;
+    }
+
+    /**
+     * function to make the greedy sequence, starting at Appleton Tower it repeatedly picks the order with the most money per straight-line distance
+     * from the last delivery location via the shops of the order to its delivery location
+     * @param sequence the orders
+     * @return the orders in the greedy sequence
+     */
+    private static List<List<Orders>> greedy_sequence(List<List<Orders>> sequence) {
+        List<List<Orders>> remaining = new ArrayList<>(sequence), greedy = new ArrayList<>();
+        double[] position = APPLETON_COORDS;
+        while (!remaining.isEmpty()) {
+            int pick = 0;
+            double best_ratio = -1;
+            for (int o = 0; o < remaining.size(); ++o) {
+                double distance = 0;
+                double[] from = position;
+                for (Orders item : remaining.get(o)) {
+                    distance += Math.hypot(item.getShopCoords()[0] - from[0], item.getShopCoords()[1] - from[1]);
+                    from = item.getShopCoords();
+                }
+                double[] deliver_to = remaining.get(o).get(0).getDeliverToCoords();
+                distance += Math.hypot(deliver_to[0] - from[0], deliver_to[1] - from[1]);
+                // the distance of a move is added so an order next to the drone doesn't divide by zero
+                double ratio = value(remaining.get(o)) / (distance + Drone.DISTANCE_TOLERANCE);
+                if (ratio > best_ratio) {
+                    best_ratio = ratio;
+                    pick = o;
+                }
+            }
+            position = remaining.get(pick).get(0).getDeliverToCoords();
+            greedy.add(remaining.remove(pick));
+        }
+        return greedy;
+    }
+
+    /**
+     * function to make a sequence differing from the given one by a random local search move
+     * @param sequence the orders, at least 2
+     * @return a new sequence
+     */
+    private List<List<Orders>> neighbour(List<List<Orders>> sequence) {
+        List<List<Orders>> candidate = new ArrayList<>(sequence);
+        int i = random.nextInt(candidate.size()), j = random.nextInt(candidate.size() - 1);
+        if (j >= i)
+            ++j;
+        switch (random.nextInt(3)) {
+            case 0:
+                Collections.swap(candidate, i, j);
+                break;
+            case 1:
+                candidate.add(j, candidate.remove(i));
+                break;
+            default:
+                Collections.reverse(candidate.subList(Math.min(i, j), Math.max(i, j) + 1));
+        }
+        return candidate;
+    }
+
+    /**
+     * function to make the plan of a sequence of orders by running the drone movement algorithm from Appleton Tower
+     * @param sequence the orders
+     * @param deadline the value of System.nanoTime() after which the plan is given up
+     * @return the plan, null if the deadline passed before it was made
+     */
+    private Plan evaluate(List<List<Orders>> sequence, long deadline) {
+        List<Orders> items = new ArrayList<>();
+        for (List<Orders> order : sequence)
+            items.addAll(order);
+        Plan plan = new Plan(deadline);
+        ConstraintEngine battery = ConstraintEngine.from_properties();
+        try {
+            Drone drone = new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1]);
+            drone.setLegPlanner(leg_planner);
+            drone.setPickupSequencer(pickup_sequencer);
+            drone.setHeadingScorer(heading_scorer);
+            drone.setSegmentKernel(segment_kernel);
+            drone.setConstraintEngine(battery);
+            drone.drone_movement(items, no_fly_zones, plan);
+        } catch (DeadlineExceeded err) {
+            return null;
+        } catch (InterruptedException err) {
+            // the plan never waits, so it's only interrupted if the thread was interrupted before
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        plan.feasible = battery.getSpent() <= battery.getBudget() && plan.last_position != null
+                && new Drone(plan.last_position[0], plan.last_position[1]).closeTo(new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1]));
+        return plan;
+    }
+
+    /**
+     * class holding a plan, it's the sink of the drone movement algorithm while the plan is made
+     */
+    private static class Plan implements MoveSink {
+        // the positions, moves and deliveries in the order they were published
+        final List<Object> published = new ArrayList<>();
+        final long deadline;
+        int moves = 0, deliveries = 0, value = 0;
+        double[] last_position;
+        boolean feasible;
+
+        Plan(long deadline) {
+            this.deadline = deadline;
+        }
+
+        // a feasible plan is better than an infeasible one, then the plan delivering more money, then the plan with fewer moves
+        boolean better_than(Plan other) {
+            if (feasible != other.feasible)
+                return feasible;
+            if (value != other.value)
+                return value > other.value;
+            return moves < other.moves;
+        }
+
+        @Override
+        public void publish_position(double[] position) {
+            published.add(position);
+            last_position = position;
+        }
+
+        @Override
+        public void publish_flightpath(Flightpath flightpath) {
+            // checked once per move, which bounds how long a plan runs on after the deadline
+            if (System.nanoTime() > deadline)
+                throw new DeadlineExceeded();
+            published.add(flightpath);
+            ++moves;
+        }
+
+        @Override
+        public void publish_delivery(Deliveries delivery) {
+            published.add(delivery);
+            ++deliveries;
+            value += delivery.getCostInPence();
+        }
+    }
+
+    /**
+     * exception stopping the drone movement algorithm when a plan's deadline has passed
+     */
+    private static class DeadlineExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceeded() {
+            // thrown once per deadline, the stack trace isn't needed
+            super(null, null, false, false);
+        }
+    }
+}
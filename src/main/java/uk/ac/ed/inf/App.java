@@ -1,19 +1,21 @@
 package uk.ac.ed.inf;
 
-import com.mapbox.geojson.*;
-
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Date;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * class for controlling the main functionality of the application,
- * it processes the command-line arguments, calls methods to create the tables needed, get the orders placed (from the database server) on the given date passed as command-line arguments,
- * get the no-fly zones from the web server and get the positions the drone has moved to throughout its journey by calling the drone movement algorithm,
- * it also creates a geoJSON file with the positions supplied as coordinates for a LineString.
+ * it processes the command-line arguments, calls methods to create the tables needed, get the orders placed (from the database server) on the given date (or range of dates) passed as command-line arguments,
+ * get the no-fly zones from the web server and plan the drone's journey by calling the drone movement algorithm,
+ * while the journey is planned a pipeline inserts it into the database and writes a geoJSON file with the positions supplied as coordinates for a LineString.
  *
  */
 public class App {
@@ -23,53 +25,20 @@ public class App {
     // the server name
     private static final String server = "localhost";
 
-    /**
-     * function to make a geoJSON string with the list of positions of the drone
-     * @param drone_movement a list containing all the positions the drone had occupied on a given date
-     * @return a geoJSON string
-     */
-    public static String makeGeoJSON(List<double[]> drone_movement) {
-        List<Point> points = new ArrayList<>();
-        for (double[] positions : drone_movement) {
-            Point point = Point.fromLngLat(positions[0], positions[1]);
-            points.add(point);
-        }
-        LineString lineString = LineString.fromLngLats(points);
-        Geometry geometry = lineString;
-        Feature feature = Feature.fromGeometry(geometry);
-        FeatureCollection featureCollection = FeatureCollection.fromFeature(feature);
-
-        String geoJSON = featureCollection.toJson();
-
-        return geoJSON;
-    }
-
-    /**
-     * function to create a geoJSON file
-     * @param geoJSON a geoJSON string
-     * @param date date received as command-line arguments
-     */
-    public static void createFile(String geoJSON, String date) {
-        try {
-            File file = new File("." + File.separator + "drone-" + date + ".geojson");
-            file.createNewFile();
-            FileWriter fileWriter = new FileWriter(file);
-            System.out.println("Writing geoJSON string to file");
-            System.out.println("-----------------------");
-            fileWriter.write(geoJSON);
-            fileWriter.flush();
-            fileWriter.close();
-        } catch (IOException err) {
-            err.getStackTrace();
-        }
-    }
+    // the date format geoJSON files are saved with
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
 
     /**
      * main function to control the functionality of the application
-     * @param args command line arguments including the date of delivery, the web server and database port number
+     * @param args command line arguments including the date of delivery, the web server and database port number,
+     *             optionally followed by a last date of delivery to plan every date from the first to the last date
      * @throws SQLException if there's an error accessing the database
+     * @throws IOException if there's an error writing the geoJSON file
+     * @throws InterruptedException if the thread is interrupted while waiting for the pipeline
      */
-    public static void main(String[] args) throws SQLException {
+    public static void main(String[] args) throws SQLException, IOException, InterruptedException {
+        Metrics.main_started();
+        long main_start = System.nanoTime();
         // date to pass to constructors of the Database class
         String str_date = args[2] + "-" + args[1] + "-" + args[0];
         // date format to save the geoJSON file with
@@ -78,26 +47,148 @@ public class App {
         String webserver_port = args[3];
         System.out.println(str_date + database_port + webserver_port + server);
 
+        // in service mode the metrics can be read over JMX while the application runs
+        if (Boolean.getBoolean("drone.jmx"))
+            Metrics.register_mbean();
+
         // creating a Database object
         Database database = new Database(server, database_port, webserver_port, str_date);
 
+        long start = System.nanoTime();
+        // makes sure the indexes used to read the orders exist
+        database.bootstrap_schema();
+
         // calling methods to create the tables needed
         database.create_deliveries_table();
         database.create_deliveries_flightpath();
+        Metrics.stage_time("schema", start);
 
-        // gets a list of orders placed on the given date
-        ArrayList<Orders> orders = database.getOrdersTable();
-
+        start = System.nanoTime();
         WebServer w1 = new WebServer(server, webserver_port);
-        // gets the no-fly zones
+        // gets the no-fly zones, the run fails if they can't be read rather than planning a day without them
         List<List<List<Double>>> no_fly_zones = w1.get_no_fly_zones();
+        Metrics.stage_time("noFlyZones", start);
+
+        // with drone.legplanner the legs are planned with a lattice search instead of the rotation sweeps,
+        // and with drone.legtable the legs between the shops and Appleton Tower are replayed from a table built once for the no-fly zones and shops
+        LegPlanner leg_planner = SearchLegPlanner.from_properties(no_fly_zones);
+        LegTable leg_table = System.getProperty("drone.legtable") == null ? null : LegTable.from_properties(no_fly_zones, w1.get_shop_coords(), leg_planner);
+        LegPlanner day_leg_planner = leg_table != null ? leg_table : leg_planner;
+        // with drone.pickups=sequence the shops of each order are visited in the sequence with the fewest moves
+        PickupSequencer pickup_sequencer = PickupSequencer.from_properties(no_fly_zones, leg_table);
+        // the time from entering main to being ready to read the orders, the part of a short run the class data sharing archive cuts down
+        Metrics.stage_time("startup", main_start);
 
+        if (args.length >= 8) {
+            // the orders of every date in the range are read with one query and each date is planned as soon as its orders have been read
+            String str_last_date = args[7] + "-" + args[6] + "-" + args[5];
+            new OrdersLoader(database).load(str_date, str_last_date,
+                    (date, orders) -> plan_day(database, orders.as_list(), no_fly_zones, day_leg_planner, pickup_sequencer, date.toLocalDate().format(FILE_DATE_FORMAT)));
+        } else if (System.getProperty("drone.stream") != null) {
+            // with drone.stream the orders are planned in batches while they arrive instead of from every order of the date at once
+            plan_stream(database, OrderSource.from_properties(database, Date.valueOf(str_date)), no_fly_zones, day_leg_planner, pickup_sequencer, str_date_for_file);
+        } else {
+            start = System.nanoTime();
+            // gets a list of orders placed on the given date
+            ArrayList<Orders> orders = database.getOrdersTable();
+            Metrics.stage_time("orders", start);
+            plan_day(database, orders, no_fly_zones, day_leg_planner, pickup_sequencer, str_date_for_file);
+        }
+        database.close();
+        write_metrics();
+    }
+
+    /**
+     * function to dump the metrics of the run as JSON, to the file named by the system property drone.metrics or else to the standard output
+     * @throws IOException if there's an error writing the file
+     */
+    public static void write_metrics() throws IOException {
+        String metrics_file = System.getProperty("drone.metrics");
+        if (metrics_file == null) {
+            System.out.println("Metrics: " + Metrics.to_json());
+            return;
+        }
+        try (FileWriter fileWriter = new FileWriter(metrics_file)) {
+            fileWriter.write(Metrics.to_json());
+        }
+    }
+
+    /**
+     * function to plan the drone's journey for the orders of one date, the journey is inserted into the database
+     * and written to a geoJSON file on separate threads while it is planned
+     * @param database a database object
+     * @param orders a list of orders placed on the date
+     * @param no_fly_zones the no-fly zones
+     * @param leg_planner plans the legs of the journey, null for the rotation sweeps
+     * @param pickup_sequencer picks the sequence the shops of each order are visited in, null for the order the items were read
+     * @param str_date_for_file the date in the format the geoJSON file is saved with (DD-MM-YYYY)
+     * @throws SQLException if there's an error accessing the database
+     * @throws IOException if there's an error writing the geoJSON file
+     * @throws InterruptedException if the thread is interrupted while waiting for the pipeline
+     */
+    public static void plan_day(Database database, List<Orders> orders, List<List<List<Double>>> no_fly_zones, LegPlanner leg_planner, PickupSequencer pickup_sequencer, String str_date_for_file) throws SQLException, IOException, InterruptedException {
+        // the moves are also appended to the day's segment of the flight log if the system property drone.flightlog names its directory
+        LocalDate date = LocalDate.parse(str_date_for_file, FILE_DATE_FORMAT);
+        String flight_log_dir = System.getProperty("drone.flightlog");
+        FlightLog flight_log = flight_log_dir == null ? null : new FlightLog(Paths.get(flight_log_dir), date);
+        Pipeline pipeline = new Pipeline(database, Date.valueOf(date), new File("." + File.separator + "drone-" + str_date_for_file + ".geojson"), flight_log);
         Drone l1 = new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1]);
-        // calls the drone_movement method which returns a list of positions the drone has moved to throughout its journey
-        List<double[]> drone_movement = l1.drone_movement(orders, no_fly_zones, database);
+        l1.setLegPlanner(leg_planner);
+        l1.setPickupSequencer(pickup_sequencer);
+        // with drone.sweep=headings the moves around the no-fly zones are picked by scoring every heading at once
+        HeadingScorer heading_scorer = HeadingScorer.from_properties(no_fly_zones);
+        l1.setHeadingScorer(heading_scorer);
+        // the edges of the no-fly zones are tested from arrays, with the Vector API on maps of at least drone.vector.minEdges edges
+        SegmentKernel segment_kernel = SegmentKernel.create(no_fly_zones);
+        l1.setSegmentKernel(segment_kernel);
+        // with drone.planner.deadline the journey is the best plan found within the budget, published once the budget is spent
+        AnytimePlanner planner = AnytimePlanner.from_properties(no_fly_zones, leg_planner, pickup_sequencer, heading_scorer, segment_kernel);
+        long start = System.nanoTime();
+        try {
+            if (planner != null)
+                planner.plan(orders, pipeline);
+            else
+                // calls the drone_movement method which publishes the drone's journey to the pipeline as it is planned
+                l1.drone_movement(orders, no_fly_zones, pipeline);
+        } catch (RuntimeException | InterruptedException err) {
+            pipeline.abort();
+            throw err;
+        }
+        Metrics.stage_time("planning", start);
+        // the time the stages still need once the journey has been planned
+        start = System.nanoTime();
+        pipeline.finish();
+        Metrics.stage_time("pipelineDrain", start);
+    }
 
-        // makes and creates a geoJSON file
-        String geoJSON = makeGeoJSON(drone_movement);
-        createFile(geoJSON, str_date_for_file);
+    /**
+     * function to plan the drone's journey for the orders of one date while they arrive from an order stream,
+     * every batch of orders is inserted into the database and written to the geoJSON file as soon as it has been planned
+     * @param database a database object
+     * @param source the stream the orders of the date arrive from
+     * @param no_fly_zones the no-fly zones
+     * @param leg_planner plans the legs of the journey, null for the rotation sweeps
+     * @param pickup_sequencer picks the sequence the shops of each order are visited in, null for the order the items were read
+     * @param str_date_for_file the date in the format the geoJSON file is saved with (DD-MM-YYYY)
+     * @throws SQLException if there's an error accessing the database
+     * @throws IOException if there's an error reading the stream or writing the geoJSON file
+     * @throws InterruptedException if the thread is interrupted while waiting for orders or for the pipeline
+     */
+    public static void plan_stream(Database database, OrderSource source, List<List<List<Double>>> no_fly_zones, LegPlanner leg_planner, PickupSequencer pickup_sequencer, String str_date_for_file) throws SQLException, IOException, InterruptedException {
+        LocalDate date = LocalDate.parse(str_date_for_file, FILE_DATE_FORMAT);
+        String flight_log_dir = System.getProperty("drone.flightlog");
+        FlightLog flight_log = flight_log_dir == null ? null : new FlightLog(Paths.get(flight_log_dir), date);
+        Pipeline pipeline = new Pipeline(database, Date.valueOf(date), new File("." + File.separator + "drone-" + str_date_for_file + ".geojson"), flight_log);
+        StreamDispatcher dispatcher = StreamDispatcher.from_properties(source, database, no_fly_zones, leg_planner, pickup_sequencer,
+                HeadingScorer.from_properties(no_fly_zones), SegmentKernel.create(no_fly_zones));
+        try {
+            dispatcher.run(pipeline);
+        } catch (RuntimeException | SQLException | IOException | InterruptedException err) {
+            pipeline.abort();
+            throw err;
+        }
+        long start = System.nanoTime();
+        pipeline.finish();
+        Metrics.stage_time("pipelineDrain", start);
     }
 }
@@ -0,0 +1,212 @@
+package uk.ac.ed.inf;
+
+/**
+ * class for the battery of a drone, the planner asks it before every move whether the drone can make the move and still get back to Appleton Tower,
+ * the battery is a budget of energy spent by every move, with a drain for every item the drone carries, and by every hover,
+ * with the default costs of one unit per move and per hover and a budget of 1500 it's the 1500-move limit of the coursework specification
+ *
+ * the state is kept in primitive fields updated by each move, hover, pickup and delivery, and the path back to Appleton Tower is only computed
+ * when neither of two bounds on its moves decides the check: every position the drone moves to can get back by retracing the moves since the last position
+ * whose path back was computed (the anchor) and then taking that path, so the moves back are at most the anchor's plus one per move since,
+ * and no path back can take fewer moves than the straight line back, so a move the straight line doesn't leave room for is refused,
+ * a refusal is the answer the computed path would have given, an allowed move may be one the computed path wouldn't allow, but then the retraced path fits
+ *
+ * a stop at a shop or delivery location is checked the same way before the drone hovers and picks up, with the hover and the payload after the stop priced in,
+ * so after every move and stop the battery covers the retraced path back at the payload carried, and the drone flies it back when the path computed
+ * from its position doesn't fit, the budget is only exceeded if it doesn't cover the hover at Appleton Tower, which the constructor refuses
+ *
+ * a drone with other constraints gets a subclass overriding the costs or the checks, Drone.setConstraintEngine sets it per drone
+ */
+public class ConstraintEngine {
+
+    // the budget of the battery, and the energy spent by a move, by a move for each item carried and by a hover
+    private final double budget, move_cost, payload_cost, hover_cost;
+
+    // the energy spent since the drone left Appleton Tower and the number of items the drone carries
+    private double spent;
+    private int payload;
+
+    // the moves of the computed path back to Appleton Tower from the anchor, and the moves the drone made since it was at the anchor
+    private int anchor_return_moves;
+    private int moves_since_anchor;
+
+    /**
+     * constructor of the class
+     * @param budget the budget of the battery
+     * @param move_cost the energy a move spends
+     * @param payload_cost the energy a move spends for each item the drone carries
+     * @param hover_cost the energy a hover spends
+     */
+    public ConstraintEngine(double budget, double move_cost, double payload_cost, double hover_cost) {
+        if (budget <= 0 || move_cost <= 0 || payload_cost < 0 || hover_cost < 0)
+            throw new IllegalArgumentException("The battery budget and move cost have to be above zero, the payload and hover costs at least zero");
+        if (hover_cost > budget)
+            throw new IllegalArgumentException("The battery budget has to cover the hover at Appleton Tower");
+        this.budget = budget;
+        this.move_cost = move_cost;
+        this.payload_cost = payload_cost;
+        this.hover_cost = hover_cost;
+    }
+
+    /**
+     * function to make a battery from the system properties drone.battery.budget, drone.battery.moveCost, drone.battery.payloadCost and drone.battery.hoverCost
+     * @return the battery, the 1500-move limit if none of the properties are set
+     */
+    public static ConstraintEngine from_properties() {
+        return new ConstraintEngine(Double.parseDouble(System.getProperty("drone.battery.budget", "1500")),
+                Double.parseDouble(System.getProperty("drone.battery.moveCost", "1")),
+                Double.parseDouble(System.getProperty("drone.battery.payloadCost", "0")),
+                Double.parseDouble(System.getProperty("drone.battery.hoverCost", "1")));
+    }
+
+    /**
+     * function to make a battery with the same costs and another budget
+     * @param budget the budget of the battery
+     * @return the battery
+     */
+    public ConstraintEngine with_budget(double budget) {
+        return new ConstraintEngine(budget, move_cost, payload_cost, hover_cost);
+    }
+
+    /**
+     * function to charge the battery before a journey, nothing is spent and nothing is carried
+     */
+    public void start() {
+        spent = 0;
+        payload = 0;
+        // Appleton Tower is the first anchor, with no moves back
+        anchor(0);
+    }
+
+    public double getBudget() {
+        return budget;
+    }
+
+    public double getSpent() {
+        return spent;
+    }
+
+    public int getPayload() {
+        return payload;
+    }
+
+    public int getMovesSinceAnchor() {
+        return moves_since_anchor;
+    }
+
+    // the energy the next move spends with the items the drone carries
+    private double next_move_cost() {
+        return move_cost + payload_cost * payload;
+    }
+
+    /**
+     * function to check if a move can be allowed without computing the path back to Appleton Tower, i.e., if the battery still covers the move,
+     * the moves back to the anchor along the moves made since and the anchor's path back, and the hover at Appleton Tower
+     * @return true if the move is allowed, false if the path back has to be computed to decide
+     */
+    public boolean allows_move_bounded() {
+        return allows_move(moves_since_anchor + 1 + anchor_return_moves);
+    }
+
+    /**
+     * function to check if a move can be refused without computing the path back to Appleton Tower, i.e., if the battery doesn't cover the move,
+     * the moves of the straight line back from where it ends and the hover at Appleton Tower, no path back can take fewer moves
+     * @param distance_to_appleton the distance from the end of the move to Appleton Tower
+     * @return true if the move is refused, false if the path back has to be computed to decide
+     */
+    public boolean refuses_move_bounded(double distance_to_appleton) {
+        // a move covers at most DISTANCE_TOLERANCE and the path back ends within DISTANCE_TOLERANCE of Appleton Tower, one move less covers rounding
+        int least_moves = Math.max(0, (int) Math.floor(distance_to_appleton / Drone.DISTANCE_TOLERANCE) - 1);
+        return !allows_move(least_moves);
+    }
+
+    /**
+     * function to check if a move is allowed, i.e., if the battery covers the move, the moves back to Appleton Tower from where it ends
+     * with the items the drone carries, and the hover at Appleton Tower
+     * @param return_moves the moves of the path back to Appleton Tower from the end of the move
+     * @return true if the move is allowed
+     */
+    public boolean allows_move(int return_moves) {
+        return spent + next_move_cost() * (1 + return_moves) + hover_cost <= budget;
+    }
+
+    /**
+     * function to spend the energy of a move
+     */
+    public void moved() {
+        spent += next_move_cost();
+        ++moves_since_anchor;
+    }
+
+    /**
+     * function to make the drone's position the anchor, once the path back to Appleton Tower has been computed from it
+     * @param return_moves the moves of the path back to Appleton Tower from the position
+     */
+    public void anchor(int return_moves) {
+        anchor_return_moves = return_moves;
+        moves_since_anchor = 0;
+    }
+
+    /**
+     * function to check if the battery covers a path back to Appleton Tower from the drone's position and the hover there
+     * @param return_moves the moves of the path back
+     * @return true if the path back fits the budget
+     */
+    public boolean allows_return(int return_moves) {
+        return spent + next_move_cost() * return_moves + hover_cost <= budget;
+    }
+
+    /**
+     * function to check if a stop can be allowed without computing the path back to Appleton Tower, i.e., if the battery still covers the hover,
+     * the moves back to the anchor along the moves made since and the anchor's path back with the payload after the stop, and the hover at Appleton Tower
+     * @param hover true if the drone hovers at the stop
+     * @param payload the items the drone carries after the stop
+     * @return true if the stop is allowed, false if the path back has to be computed to decide
+     */
+    public boolean allows_stop_bounded(boolean hover, int payload) {
+        return allows_stop(hover, payload, moves_since_anchor + anchor_return_moves);
+    }
+
+    /**
+     * function to check if a stop is allowed, i.e., if the battery covers the hover at the stop, the moves back to Appleton Tower from the stop
+     * with the items the drone carries after it, and the hover at Appleton Tower
+     * @param hover true if the drone hovers at the stop
+     * @param payload the items the drone carries after the stop
+     * @param return_moves the moves of the path back to Appleton Tower from the stop
+     * @return true if the stop is allowed
+     */
+    public boolean allows_stop(boolean hover, int payload, int return_moves) {
+        return spent + (hover ? hover_cost : 0) + (move_cost + payload_cost * payload) * return_moves + hover_cost <= budget;
+    }
+
+    /**
+     * function to spend the energy of a hover
+     */
+    public void hovered() {
+        spent += hover_cost;
+    }
+
+    /**
+     * function to spend the energy of the path back to Appleton Tower and the hover there, once a move or stop isn't allowed
+     * @param return_moves the moves of the path back to Appleton Tower
+     * @return true if the battery covered the path back, false if it overran the budget
+     */
+    public boolean returned(int return_moves) {
+        spent += next_move_cost() * return_moves + hover_cost;
+        return spent <= budget;
+    }
+
+    /**
+     * function to add an item picked up at a shop to the payload
+     */
+    public void picked_up() {
+        ++payload;
+    }
+
+    /**
+     * function to empty the payload at a delivery location
+     */
+    public void delivered() {
+        payload = 0;
+    }
+}
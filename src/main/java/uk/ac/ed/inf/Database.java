@@ -1,17 +1,49 @@
 package uk.ac.ed.inf;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
- * class representing the operations of the application which are dependent on the Apache Derby Database at port number supplied as command-line arguments
+ * class representing the operations of the application which are dependent on the Apache Derby Database at port number supplied as command-line arguments,
+ * or on the database files opened in-process when the system property drone.db.mode is set to embedded
  */
 public class Database {
 
     // the server name, database and web server port number and the date on which orders are placed
     private final String server, db_port, server_port, date;
 
+    // the connection to the database, opened when it's first needed and shared by every statement after that
+    private Connection connection;
+
+    // statement to get the orders placed on a date, it joins the 2 tables (orders, orderDetails) based on their order number
+    // and only reads the columns an Orders object is made of
+    private static final String ORDERS_QUERY =
+            "select o1.orderNo, o1.deliveryDate, o1.customer, o1.deliverTo, o2.item from orders o1, orderDetails o2 " +
+                    "where o1.deliveryDate = ? and o1.orderNo = o2.orderNo order by o1.orderNo";
+
+    // the number of rows fetched from the database in one round trip, more than the item count of a busy day
+    private static final int ORDERS_FETCH_SIZE = 200;
+
+    // the orders statement prepared on the current connection
+    private PreparedStatement ordersStatement;
+
+    // maps DeliverTo What3Words to the (Longitude, Latitude) coordinate, kept between calls so orders of several days share the lookups
+    private final HashMap<String, double[]> mapDeliverCoords = new HashMap<>();
+    // maps item shop location What3Words to the (Longitude, Latitude) coordinate
+    private final HashMap<String, double[]> mapShopCoords = new HashMap<>();
+    // maps a food item to its price
+    private final HashMap<String, Integer> mapItemPrice = new HashMap<>();
+
+    // "network" to reach the database through the Derby network server, "embedded" to open it inside this process
+    private static final String MODE = System.getProperty("drone.db.mode", "network");
+    // the directory of the database opened in embedded mode
+    private static final String EMBEDDED_PATH = System.getProperty("drone.db.path", "database" + File.separator + "derbyDB");
+
     /**
      * constructor of the class to assign the server name, database and web server port number and the date on which orders are placed
      *
@@ -44,265 +76,425 @@ public class Database {
     }
 
     /**
-     * function to get all the orders placed on the given date by accessing the database server on the given port number
-     * @return a list of orders placed
+     * function to get the connection to the database, opening it the first time it's needed
+     * @return a connection to the database
+     * @throws SQLException if there's an error accessing the database
      */
-    public ArrayList<Orders> getOrdersTable() {
-        try {
-            // a jdbc string to access the database
-            String jdbcString = "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
-
-            // getting a connection to the database
-            Connection conn = DriverManager.getConnection(jdbcString);
-
-            // statement to be executed, it joins the 2 tables (orders, orderDetails) based on their order number
-            final String deliveryDateQuery =
-                    "select * from orders o1, orderDetails o2 where deliveryDate=(?) and o1.orderNo = o2.orderNo order by o1.orderNo";
-            PreparedStatement psdeliveryDateQuery =
-                    conn.prepareStatement(deliveryDateQuery);
-            // sets the deliveryDate in the sql statement to be equal to the date passed to the constructor
-            psdeliveryDateQuery.setString(1, getDate());
-
-            // sql statement executed
-            ResultSet rs = psdeliveryDateQuery.executeQuery();
-            ArrayList<Orders> orders = new ArrayList<>();
-            WebServer w = new WebServer(this.getServer(), this.getServer_port());
-            double[] deliverToCoords;
-            double[] shopCoords;
-            int price;
-
-            // maps DeliverTo What3Words to the (Longitude, Latitude) coordinate
-            HashMap<String, double[]> mapDeliverCoords = new HashMap<>();
-            // maps item shop location What3Words to the (Longitude, Latitude) coordinate
-            HashMap<String, double[]> mapShopCoords = new HashMap<>();
-            // maps a food item to its price
-            HashMap<String, Integer> mapItemPrice = new HashMap<>();
-            ItemPriceShopLocation price_loc = new ItemPriceShopLocation();
-            // while loop to iterate through every row of the sql table that was received after executing the sql statement
-            while (rs.next()) {
-                String orderNo = rs.getString("orderNo");
-                Date deliveryDate = rs.getDate("deliveryDate");
-                String customer = rs.getString("customer");
-                String deliverTo = rs.getString("deliverTo");
-                String item = rs.getString("item");
-
-                // getting the coordinates from the deliverTo What3Words by calling a method in the WebServer class if the deliverTo string does not map to anything in the Hashmap
-                deliverToCoords = mapDeliverCoords.get(deliverTo);
-                if (deliverToCoords == null) {
-                    deliverToCoords = w.get_coords(deliverTo);
-                    mapDeliverCoords.put(deliverTo, deliverToCoords);
-                }
+    public Connection getConnection() throws SQLException {
+        if (connection == null)
+            connection = DriverManager.getConnection(getJdbcString());
+        return connection;
+    }
 
-                // getting the coordinates from the shop location What3Words by calling a method in the WebServer class if the shop location string does not map to anything in the Hashmap
-                shopCoords = mapShopCoords.get(item);
-                if (shopCoords == null) {
-                    // gets the shop location and the price of the item
-                    price_loc = w.getPriceLocation(item);
-                    shopCoords = w.get_coords(price_loc.getLocation());
-                    price = price_loc.getPrice();
-                    mapShopCoords.put(item, shopCoords);
-                    mapItemPrice.put(item, price);
-                }
-                price = mapItemPrice.get(item);
+    /**
+     * function to get the jdbc string to access the database, which depends on the mode the database is accessed in
+     * @return a jdbc string
+     */
+    public String getJdbcString() {
+        if (isEmbedded())
+            // the embedded driver opens the database files directly, the network server must not have them open at the same time
+            return "jdbc:derby:" + EMBEDDED_PATH;
+        return "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
+    }
 
-                // initialising an Orders object by passing all the necessary fields of an order to the constructor
-                Orders order = new Orders(orderNo, deliveryDate, customer, deliverTo, item, deliverToCoords, shopCoords, price);
-                // adds the order to a list of Orders objects
-                orders.add(order);
-            }
-            // calls a method to sort the list of orders based on the total price of an order
-            orders = create_insert_orders_sort_table(orders);
-            return orders;
+    /**
+     * checks if the database is opened inside this process instead of through the network server
+     * @return true if the database is accessed in embedded mode, false otherwise
+     */
+    public static boolean isEmbedded() {
+        return MODE.equals("embedded");
+    }
 
-        } catch (SQLException err) {
-            err.printStackTrace();
+    /**
+     * function to close the connection to the database if it has been opened,
+     * in embedded mode the database is also shut down so all its files are flushed and unlocked
+     * @throws SQLException if there's an error accessing the database
+     */
+    public void close() throws SQLException {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+            ordersStatement = null;
+            if (isEmbedded()) {
+                try {
+                    DriverManager.getConnection("jdbc:derby:" + EMBEDDED_PATH + ";shutdown=true");
+                } catch (SQLException err) {
+                    // Derby always reports a successful shutdown of a database with the SQL state 08006
+                    if (!"08006".equals(err.getSQLState()))
+                        throw err;
+                }
+            }
         }
-        return null;
     }
 
     /**
-     * function to sort a list of Orders in descending order based on the total price of each order by accessing the database
-     * @param orders a list of Orders placed
-     * @return sorted list of Orders placed
+     * function to make sure the indexes the orders query relies on exist, creating the ones that are missing
      * @throws SQLException if there's an error accessing the database
      */
-    public ArrayList<Orders> create_insert_orders_sort_table(ArrayList<Orders> orders) throws SQLException {
-        String jdbcString = "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
-        Connection conn = DriverManager.getConnection(jdbcString);
-        // creating a statement object that we can use for running various
-        // SQL statement commands against the database.
-        Statement statement = conn.createStatement();
-
-        DatabaseMetaData databaseMetadata = conn.getMetaData();
-        ResultSet resultSet =
-                databaseMetadata.getTables(null, null, "ORDERS_SORT", null);
-        // If the resultSet is not empty then the table exists, so we can drop it
-        if (resultSet.next()) {
-            statement.execute("drop table orders_sort");
-        }
+    public void bootstrap_schema() throws SQLException {
+        create_index_if_missing("orders_deliveryDate", "ORDERS", "DELIVERYDATE");
+        create_index_if_missing("orderDetails_orderNo", "ORDERDETAILS", "ORDERNO");
+    }
 
-        // creates an orders_sort table in order to sort the orders table
-        statement.execute(
-                "create table orders_sort(" +
-                        "orderNo char(8), " +
-                        "deliveryDate DATE, " +
-                        "customer char(8), " +
-                        "deliverTo varchar(19), " +
-                        "item varchar(58), " +
-                        "deliverToCoords varchar(30), " +
-                        "shopCoords varchar(30), " +
-                        "itemPrice int)"
-        );
-        PreparedStatement psOrders = conn.prepareStatement(
-                "insert into orders_sort values (?, ?, ?, ?, ?, ?, ?, ?)");
-
-        // inserting all the orders' information into the table
-        for (Orders order : orders) {
-            psOrders.setString(1, order.getOrderNo());
-            psOrders.setDate(2, order.getDeliveryDate());
-            psOrders.setString(3, order.getCustomer());
-            psOrders.setString(4, order.getDeliverTo());
-            psOrders.setString(5, order.getItem());
-            // inserting the coordinates as a String
-            psOrders.setString(6, String.valueOf(order.getDeliverToCoords()[0]) + ' ' + order.getDeliverToCoords()[1]);
-            psOrders.setString(7, String.valueOf(order.getShopCoords()[0]) + ' ' + order.getShopCoords()[1]);
-            psOrders.setInt(8, order.getItemPrice());
-            psOrders.execute();
+    /**
+     * function to create an index on a column of a table unless the table already has an index starting with that column
+     * @param index the name of the index
+     * @param table the name of the table in upper case
+     * @param column the name of the column in upper case
+     * @throws SQLException if there's an error accessing the database
+     */
+    private void create_index_if_missing(String index, String table, String column) throws SQLException {
+        Connection conn = getConnection();
+        Metrics.DB_ROUND_TRIPS.increment();
+        ResultSet resultSet = conn.getMetaData().getIndexInfo(null, null, table, false, true);
+        boolean exists = false;
+        while (resultSet.next())
+            if (column.equals(resultSet.getString("COLUMN_NAME")) && resultSet.getInt("ORDINAL_POSITION") == 1)
+                exists = true;
+        resultSet.close();
+        if (!exists) {
+            Statement statement = conn.createStatement();
+            execute(statement, "create index " + index + " on " + table + "(" + column + ")");
+            statement.close();
+            System.out.println("Created index " + index);
         }
+    }
 
-        ArrayList<Orders> sorted_orders = new ArrayList<>();
+    /**
+     * function to get the statement reading the orders placed on a date, it is prepared once for each connection
+     * @return the prepared orders statement
+     * @throws SQLException if there's an error accessing the database
+     */
+    private PreparedStatement getOrdersStatement() throws SQLException {
+        Connection conn = getConnection();
+        if (ordersStatement == null || ordersStatement.getConnection() != conn) {
+            ordersStatement = conn.prepareStatement(ORDERS_QUERY);
+            ordersStatement.setFetchSize(ORDERS_FETCH_SIZE);
+        }
+        return ordersStatement;
+    }
 
-        // statement to sort the orders table
-        final String deliveryDateQuery =
-                "select o1.orderNo, o2.deliveryDate, o2.customer, o2.deliverTo, o2.item, o2.deliverToCoords, o2.shopCoords, o2.itemPrice from (select orderNo from orders_sort group by orderNo order by SUM(itemPrice) DESC) o1, orders_sort o2 where o1.orderNo = o2.orderNo";
-        PreparedStatement psdeliveryDateQuery =
-                conn.prepareStatement(deliveryDateQuery);
+    /**
+     * function to read the orders placed on a date from the database, the coordinates and prices of the orders are not set
+     * @param date the date on which the orders are placed (YYYY-MM-DD)
+     * @return a list of orders placed, in order of their order number
+     * @throws SQLException if there's an error accessing the database
+     */
+    public ArrayList<Orders> read_orders(String date) throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement psdeliveryDateQuery = getOrdersStatement();
+        // sets the deliveryDate in the sql statement to be equal to the given date
+        psdeliveryDateQuery.setDate(1, Date.valueOf(date));
+
+        // sql statement executed
+        Metrics.DB_ROUND_TRIPS.increment();
+        DatabaseStatementEvent event = new DatabaseStatementEvent();
+        event.begin();
         ResultSet rs = psdeliveryDateQuery.executeQuery();
+        ArrayList<Orders> orders = new ArrayList<>();
+        // while loop to iterate through every row of the sql table that was received after executing the sql statement
+        while (rs.next())
+            orders.add(new Orders(rs.getString(1), rs.getDate(2), rs.getString(3), rs.getString(4), rs.getString(5), null, null, 0));
+        rs.close();
+        commit(event, ORDERS_QUERY, orders.size());
+        System.out.printf("Orders query for %s: %d rows in %.2f ms%n", date, orders.size(), (System.nanoTime() - start) / 1e6);
+        return orders;
+    }
+
+    /**
+     * function to set the coordinates of the delivery location and shop and the item price of every order by accessing the web server
+     * @param orders a list of orders placed
+     * @throws IOException if a location or an item can't be resolved by the web server
+     */
+    public void resolve_orders(ArrayList<Orders> orders) throws IOException {
+        WebServer w = new WebServer(this.getServer(), this.getServer_port());
+        double[] deliverToCoords;
+        double[] shopCoords;
+        int price;
+        ItemPriceShopLocation price_loc;
+        for (Orders order : orders) {
+            String deliverTo = order.getDeliverTo();
+            String item = order.getItem();
+
+            // getting the coordinates from the deliverTo What3Words by calling a method in the WebServer class if the deliverTo string does not map to anything in the Hashmap
+            deliverToCoords = mapDeliverCoords.get(deliverTo);
+            if (deliverToCoords != null)
+                Metrics.CACHE_HITS.increment();
+            else {
+                deliverToCoords = w.get_coords(deliverTo);
+                mapDeliverCoords.put(deliverTo, deliverToCoords);
+            }
+
+            // getting the coordinates from the shop location What3Words by calling a method in the WebServer class if the shop location string does not map to anything in the Hashmap
+            shopCoords = mapShopCoords.get(item);
+            if (shopCoords != null)
+                Metrics.CACHE_HITS.increment();
+            else {
+                // gets the shop location and the price of the item
+                price_loc = w.getPriceLocation(item);
+                shopCoords = w.get_coords(price_loc.getLocation());
+                price = price_loc.getPrice();
+                mapShopCoords.put(item, shopCoords);
+                mapItemPrice.put(item, price);
+            }
+            price = mapItemPrice.get(item);
 
-        // while loop to get the sorted list of orders
-        while (rs.next()) {
-            String orderNo = rs.getString("orderNo");
-            Date deliveryDate = rs.getDate("deliveryDate");
-            String customer = rs.getString("customer");
-            String deliverTo = rs.getString("deliverTo");
-            String item = rs.getString("item");
-            // getting the coordinates from the String
-            String deliverToLong = rs.getString("deliverToCoords").split(" ")[0];
-            String deliverToLat = rs.getString("deliverToCoords").split(" ")[1];
-            double[] deliverToCoords = new double[]{Double.parseDouble(deliverToLong), Double.parseDouble(deliverToLat)};
-            int price = rs.getInt("itemPrice");
-            // getting the coordinates from the String
-            String shopLong = rs.getString("shopCoords").split(" ")[0];
-            String shopLat = rs.getString("shopCoords").split(" ")[1];
-            double[] shopCoords = new double[]{Double.parseDouble(shopLong), Double.parseDouble(shopLat)};
-            Orders o = new Orders(orderNo, deliveryDate, customer, deliverTo, item, deliverToCoords, shopCoords, price);
-            sorted_orders.add(o);
+            order.setDeliverToCoords(deliverToCoords);
+            order.setShopCoords(shopCoords);
+            order.setItemPrice(price);
         }
+    }
+
+    /**
+     * function to get all the orders placed on the given date by accessing the database server on the given port number
+     * @return a list of orders placed
+     * @throws IOException if a location or an item can't be resolved by the web server
+     */
+    public ArrayList<Orders> getOrdersTable() throws IOException {
+        try {
+            ArrayList<Orders> orders = read_orders(getDate());
+            resolve_orders(orders);
+            // calls a method to sort the list of orders based on the total price of an order
+            orders = sort_orders(orders);
+            return orders;
 
-        // statement to drop the orders_sort table
-        statement.execute("drop table orders_sort");
+        } catch (SQLException err) {
+            err.printStackTrace();
+        }
+        return null;
+    }
 
+    /**
+     * function to sort a list of Orders in descending order of the total price of each order, orders with the same total in descending order of their order number,
+     * the items of an order stay together in the order they were read, the list is sorted in memory so runs at the same time don't share any table
+     * @param orders a list of Orders placed, the items of an order next to each other
+     * @return sorted list of Orders placed
+     */
+    public static ArrayList<Orders> sort_orders(List<Orders> orders) {
+        // the items of each order, in the order the orders were read, and the total price of each order
+        LinkedHashMap<String, List<Orders>> order_items = new LinkedHashMap<>();
+        HashMap<String, Integer> order_price = new HashMap<>();
+        for (Orders order : orders) {
+            order_items.computeIfAbsent(order.getOrderNo(), o -> new ArrayList<>()).add(order);
+            order_price.merge(order.getOrderNo(), order.getItemPrice(), Integer::sum);
+        }
+        ArrayList<String> order_nos = new ArrayList<>(order_items.keySet());
+        order_nos.sort((a, b) -> {
+            int by_price = Integer.compare(order_price.get(b), order_price.get(a));
+            return by_price != 0 ? by_price : b.compareTo(a);
+        });
+        ArrayList<Orders> sorted_orders = new ArrayList<>(orders.size());
+        for (String order_no : order_nos)
+            sorted_orders.addAll(order_items.get(order_no));
         return sorted_orders;
     }
 
     /**
-     * function to create a deliveries table by accessing the database
+     * function to create the deliveries table if it doesn't exist, the table is kept between runs and holds the deliveries of every date planned,
+     * a table made by an older version of the application without the deliveryDate column gets the column added
      * @throws SQLException if there's an error accessing the database
      */
     public void create_deliveries_table() throws SQLException {
-        String jdbcString = "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
-        Connection conn = DriverManager.getConnection(jdbcString);
-        // creating a statement object that we can use for running various
-        // SQL statement commands against the database.
-        Statement statement = conn.createStatement();
-
-        DatabaseMetaData databaseMetadata = conn.getMetaData();
-        ResultSet resultSet =
-                databaseMetadata.getTables(null, null, "DELIVERIES", null);
-        // If the resultSet is not empty then the table exists, so we can drop it
-        if (resultSet.next()) {
-            statement.execute("drop table deliveries");
-        }
-        statement.execute(
+        create_table_if_missing("DELIVERIES",
                 "create table deliveries(" +
                         "orderNo char(8), " +
                         "deliveredTo varchar(19), " +
-                        "costInPence int)"
-        );
+                        "costInPence int, " +
+                        "deliveryDate date)");
+        add_column_if_missing("DELIVERIES", "DELIVERYDATE", "date");
+        create_index_if_missing("deliveries_deliveryDate", "DELIVERIES", "DELIVERYDATE");
     }
 
     /**
-     * function to create a flightpath table by accessing the database
+     * function to create the flightpath table if it doesn't exist, the table is kept between runs and holds the moves of every date planned
+     * numbered in the order they were made, a table made by an older version of the application gets the deliveryDate and moveNo columns added,
+     * and the flightpath_runs table the moves of a date are written to as runs of moves at the same angle with drone.flightpath.runs
      * @throws SQLException if there's an error accessing the database
      */
     public void create_deliveries_flightpath() throws SQLException {
-        String jdbcString = "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
-        Connection conn = DriverManager.getConnection(jdbcString);
-        // creating a statement object that we can use for running various
-        // SQL statement commands against the database.
-        Statement statement = conn.createStatement();
-
-        DatabaseMetaData databaseMetadata = conn.getMetaData();
-        ResultSet resultSet =
-                databaseMetadata.getTables(null, null, "FLIGHTPATH", null);
-        // If the resultSet is not empty then the table exists, so we can drop it
-        if (resultSet.next()) {
-            statement.execute("drop table flightpath");
-        }
-        statement.execute(
+        create_table_if_missing("FLIGHTPATH",
                 "create table flightpath(" +
                         "orderNo char(8), " +
                         "fromLongitude double, " +
                         "fromLatitude double, " +
                         "angle integer, " +
                         "toLongitude double, " +
-                        "toLatitude double)"
-        );
+                        "toLatitude double, " +
+                        "deliveryDate date, " +
+                        "moveNo integer)");
+        add_column_if_missing("FLIGHTPATH", "DELIVERYDATE", "date");
+        add_column_if_missing("FLIGHTPATH", "MOVENO", "integer");
+        create_index_if_missing("flightpath_deliveryDate", "FLIGHTPATH", "DELIVERYDATE");
+        // the end of a run is only stored for a single move whose end can't be computed from its start and angle
+        create_table_if_missing("FLIGHTPATH_RUNS",
+                "create table flightpath_runs(" +
+                        "orderNo char(8), " +
+                        "startLongitude double, " +
+                        "startLatitude double, " +
+                        "angle integer, " +
+                        "moves integer, " +
+                        "endLongitude double, " +
+                        "endLatitude double, " +
+                        "deliveryDate date, " +
+                        "runNo integer)");
+        create_index_if_missing("flightpath_runs_deliveryDate", "FLIGHTPATH_RUNS", "DELIVERYDATE");
+    }
+
+    /**
+     * function to read the moves of a date, from the flightpath_runs table if the date was written as runs and from the flightpath table otherwise,
+     * the moves are the same either way
+     * @param date the date of delivery
+     * @return the moves in the order they were made, a view expanding the runs as it's read if the date was written as runs
+     * @throws SQLException if there's an error accessing the database
+     */
+    public List<Flightpath> read_flightpath(Date date) throws SQLException {
+        final String runsQuery = "select orderNo, startLongitude, startLatitude, angle, moves, endLongitude, endLatitude from flightpath_runs where deliveryDate = ? order by runNo";
+        MoveRuns runs = new MoveRuns();
+        try (PreparedStatement psRuns = getConnection().prepareStatement(runsQuery)) {
+            psRuns.setDate(1, date);
+            Metrics.DB_ROUND_TRIPS.increment();
+            DatabaseStatementEvent event = new DatabaseStatementEvent();
+            event.begin();
+            try (ResultSet rs = psRuns.executeQuery()) {
+                while (rs.next()) {
+                    double end_long = rs.getDouble(6);
+                    double[] exact_end = rs.wasNull() ? null : new double[]{end_long, rs.getDouble(7)};
+                    runs.add_run(rs.getString(1), rs.getDouble(2), rs.getDouble(3), rs.getInt(4), rs.getInt(5), exact_end);
+                }
+            }
+            commit(event, runsQuery, runs.getRunCount());
+        }
+        if (runs.getRunCount() > 0)
+            return runs.as_list();
+        final String movesQuery = "select orderNo, fromLongitude, fromLatitude, angle, toLongitude, toLatitude from flightpath where deliveryDate = ? order by moveNo";
+        List<Flightpath> moves = new ArrayList<>();
+        try (PreparedStatement psMoves = getConnection().prepareStatement(movesQuery)) {
+            psMoves.setDate(1, date);
+            Metrics.DB_ROUND_TRIPS.increment();
+            DatabaseStatementEvent event = new DatabaseStatementEvent();
+            event.begin();
+            try (ResultSet rs = psMoves.executeQuery()) {
+                while (rs.next())
+                    moves.add(new Flightpath(rs.getString(1), rs.getDouble(2), rs.getDouble(3), rs.getInt(4), rs.getDouble(5), rs.getDouble(6)));
+            }
+            commit(event, movesQuery, moves.size());
+        }
+        return moves;
+    }
+
+    /**
+     * function to create a table unless it already exists
+     * @param table the name of the table in upper case
+     * @param create the create table statement
+     * @throws SQLException if there's an error accessing the database
+     */
+    private void create_table_if_missing(String table, String create) throws SQLException {
+        Connection conn = getConnection();
+        Metrics.DB_ROUND_TRIPS.increment();
+        ResultSet resultSet = conn.getMetaData().getTables(null, null, table, null);
+        boolean exists = resultSet.next();
+        resultSet.close();
+        if (!exists) {
+            Statement statement = conn.createStatement();
+            execute(statement, create);
+            statement.close();
+        }
     }
 
     /**
-     * function to insert values into the flightpath table by accessing the database
-     * @param flightPaths a list of Flightpath objects which provide a detailed record of every move
-     * made by the drone while making the day’s lunch deliveries
+     * function to add a column to a table unless the table already has it
+     * @param table the name of the table in upper case
+     * @param column the name of the column in upper case
+     * @param type the sql type of the column
      * @throws SQLException if there's an error accessing the database
      */
-    public void insert_into_flightpath_database(ArrayList<Flightpath> flightPaths) throws SQLException {
-        String jdbcString = "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
-        Connection conn = DriverManager.getConnection(jdbcString);
-        PreparedStatement psFlightpath = conn.prepareStatement(
-                "insert into flightpath values (?, ?, ?, ?, ?, ?)");
-
-        for (Flightpath flightpath : flightPaths) {
-            psFlightpath.setString(1, flightpath.getOrderNo());
-            psFlightpath.setDouble(2, flightpath.getFromLongitude());
-            psFlightpath.setDouble(3, flightpath.getFromLatitude());
-            psFlightpath.setInt(4, flightpath.getAngle());
-            psFlightpath.setDouble(5, flightpath.getToLongitude());
-            psFlightpath.setDouble(6, flightpath.getToLatitude());
-            psFlightpath.execute();
+    private void add_column_if_missing(String table, String column, String type) throws SQLException {
+        Connection conn = getConnection();
+        Metrics.DB_ROUND_TRIPS.increment();
+        ResultSet resultSet = conn.getMetaData().getColumns(null, null, table, column);
+        boolean exists = resultSet.next();
+        resultSet.close();
+        if (!exists) {
+            Statement statement = conn.createStatement();
+            execute(statement, "alter table " + table + " add column " + column + " " + type);
+            statement.close();
+            System.out.println("Added column " + column + " to " + table);
         }
     }
 
     /**
-     * function to insert values into the deliveries table by accessing the database
-     * @param deliveries a list of every lunch delivery which the drone makes
+     * function to start writing the journey of a date, the deliveries and moves written before for the date are deleted
+     * and replaced by the new ones in a single transaction, so dates can be written at the same time without affecting each other
+     * @param date the date of delivery
+     * @return the transaction the deliveries and moves of the date are inserted with
      * @throws SQLException if there's an error accessing the database
      */
-    public void insert_into_deliveries_database(ArrayList<Deliveries> deliveries) throws SQLException {
-        String jdbcString = "jdbc:derby://" + this.getServer() + ":" + this.getDb_port() + "/derbyDB";
-        Connection conn = DriverManager.getConnection(jdbcString);
-        // creating a statement object that we can use for running various
-        // SQL statement commands against the database.
-        //Statement statement = conn.createStatement();
-
-        PreparedStatement psFlightpath = conn.prepareStatement(
-                "insert into deliveries values (?, ?, ?)");
-
-        for (Deliveries delivery : deliveries) {
-            psFlightpath.setString(1, delivery.getOrderNo());
-            psFlightpath.setString(2, delivery.getDeliveredTo());
-            psFlightpath.setInt(3, delivery.getCostInPence());
-            psFlightpath.execute();
+    public DayTransaction begin_day(Date date) throws SQLException {
+        return begin_day(date, true);
+    }
+
+    /**
+     * function to start writing the journey of a date, with or without its moves in the flightpath table,
+     * the moves written before for the date are only deleted if the new ones replace them
+     * @param date the date of delivery
+     * @param write_flightpath true if the moves are written to the flightpath table, false if they only go to the flight log
+     * @return the transaction the deliveries and moves of the date are inserted with
+     * @throws SQLException if there's an error accessing the database
+     */
+    public DayTransaction begin_day(Date date, boolean write_flightpath) throws SQLException {
+        return new DayTransaction(DriverManager.getConnection(getJdbcString()), date, write_flightpath);
+    }
+
+    /**
+     * function to execute an sql statement, counting the round trip and recording it as a flight recorder event
+     * @param statement the statement object used to execute it
+     * @param sql the sql statement
+     * @throws SQLException if there's an error accessing the database
+     */
+    static void execute(Statement statement, String sql) throws SQLException {
+        Metrics.DB_ROUND_TRIPS.increment();
+        DatabaseStatementEvent event = new DatabaseStatementEvent();
+        event.begin();
+        statement.execute(sql);
+        commit(event, sql, statement.getUpdateCount());
+    }
+
+    /**
+     * function to execute a prepared statement, counting the round trip and recording it as a flight recorder event
+     * @param statement the prepared statement with its parameters set
+     * @param name the name the statement is recorded with
+     * @throws SQLException if there's an error accessing the database
+     */
+    static void execute(PreparedStatement statement, String name) throws SQLException {
+        Metrics.DB_ROUND_TRIPS.increment();
+        DatabaseStatementEvent event = new DatabaseStatementEvent();
+        event.begin();
+        statement.execute();
+        commit(event, name, statement.getUpdateCount());
+    }
+
+    /**
+     * function to execute the batch of a prepared statement, counting the round trip and recording it as a flight recorder event
+     * @param statement the prepared statement with its batch added
+     * @param name the name the statement is recorded with
+     * @param rows the number of rows in the batch
+     * @throws SQLException if there's an error accessing the database
+     */
+    static void execute_batch(PreparedStatement statement, String name, int rows) throws SQLException {
+        Metrics.DB_ROUND_TRIPS.increment();
+        DatabaseStatementEvent event = new DatabaseStatementEvent();
+        event.begin();
+        statement.executeBatch();
+        commit(event, name, rows);
+    }
+
+    // ends a statement event and commits it if the flight recorder is recording it
+    static void commit(DatabaseStatementEvent event, String statement, int rows) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.statement = statement;
+            event.rows = rows;
+            event.commit();
         }
     }
 }
@@ -0,0 +1,101 @@
+package uk.ac.ed.inf;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * class for timing the statements the application sends to the database, in the mode selected by the system property drone.db.mode,
+ * run it once with the network server started and once with -Ddrone.db.mode=embedded (with the network server stopped) to compare the two modes,
+ * the rows it writes are kept under a date no orders are placed on and deleted at the end
+ */
+public class DatabaseBenchmark {
+
+    // the number of moves and deliveries written in each repetition, roughly a full day of deliveries
+    private static final int MOVES = 1500;
+    private static final int DELIVERIES = 20;
+
+    // the number of flightpath rows inserted in one batch, the same as the pipeline's database writer stage
+    private static final int BATCH_SIZE = 100;
+
+    // the date the benchmark's deliveries and moves are written for
+    private static final Date BENCHMARK_DATE = Date.valueOf("1900-01-01");
+
+    /**
+     * main function running the benchmark
+     * @param args command line arguments including the date of delivery (YYYY-MM-DD), the database port number and optionally the number of repetitions
+     * @throws SQLException if there's an error accessing the database
+     */
+    public static void main(String[] args) throws SQLException {
+        String date = args[0];
+        String db_port = args[1];
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Database database = new Database("localhost", db_port, "", date);
+        System.out.println("mode: " + (Database.isEmbedded() ? "embedded" : "network") + " (" + database.getJdbcString() + ")");
+
+        long start = System.nanoTime();
+        database.getConnection();
+        System.out.printf("connect: %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        database.bootstrap_schema();
+        database.create_deliveries_table();
+        database.create_deliveries_flightpath();
+
+        long[] read = new long[repetitions];
+        long[] write_flightpath = new long[repetitions];
+        long[] write_deliveries = new long[repetitions];
+        long[] commit = new long[repetitions];
+        int rows = 0;
+        for (int r = 0; r < repetitions; ++r) {
+            // reads the orders placed on the date, like getOrdersTable does before resolving the locations
+            start = System.nanoTime();
+            rows = database.read_orders(date).size();
+            read[r] = System.nanoTime() - start;
+
+            // replaces the rows written by the previous repetition, like planning a date again does
+            try (DayTransaction transaction = database.begin_day(BENCHMARK_DATE)) {
+                List<Flightpath> flightPaths = new ArrayList<>(BATCH_SIZE);
+                start = System.nanoTime();
+                for (int m = 0; m < MOVES; ++m) {
+                    flightPaths.add(new Flightpath(String.format("%08x", m / 75), -3.1869 + m * 1e-6, 55.9445, (m % 36) * 10, -3.1869 + (m + 1) * 1e-6, 55.9445));
+                    if (flightPaths.size() == BATCH_SIZE) {
+                        transaction.insert_flightpath(flightPaths);
+                        flightPaths.clear();
+                    }
+                }
+                transaction.insert_flightpath(flightPaths);
+                write_flightpath[r] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int d = 0; d < DELIVERIES; ++d)
+                    transaction.insert_deliveries(List.of(new Deliveries(String.format("%08x", d), "army.monks.grapes", 1000 + d)));
+                write_deliveries[r] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                transaction.commit();
+                commit[r] = System.nanoTime() - start;
+            }
+        }
+        // deletes the benchmark's rows
+        try (DayTransaction transaction = database.begin_day(BENCHMARK_DATE)) {
+            transaction.commit();
+        }
+        database.close();
+
+        System.out.println("orders read (" + rows + " rows): " + summary(read));
+        System.out.println("flightpath write (" + MOVES + " rows): " + summary(write_flightpath));
+        System.out.println("deliveries write (" + DELIVERIES + " rows): " + summary(write_deliveries));
+        System.out.println("commit: " + summary(commit));
+    }
+
+    // formats the minimum, median and mean of the timings in milliseconds
+    private static String summary(long[] timings) {
+        long[] sorted = timings.clone();
+        Arrays.sort(sorted);
+        return String.format("min %.2f ms, median %.2f ms, mean %.2f ms",
+                sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6, Arrays.stream(sorted).average().orElse(0) / 1e6);
+    }
+}
@@ -0,0 +1,93 @@
+package uk.ac.ed.inf;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * class for polling the orders table for the orders placed on a date, every poll runs the query of the day's orders
+ * and returns the orders whose order number it hasn't returned before, the orders table has no column recording when a row was inserted,
+ * so the order numbers already returned are the cursor
+ *
+ * an order's row in orders and its rows in orderDetails are inserted one after the other, so a poll can run while only some of its items are there,
+ * an order is only returned once two polls in a row found the same number of items for it, a poll later than it was complete
+ */
+public class DatabaseOrderSource implements OrderSource {
+
+    // statement to get the orders of a date, the same join as the query of the day's orders
+    private static final String ORDERS_QUERY =
+            "select o1.orderNo, o1.deliveryDate, o1.customer, o1.deliverTo, o2.item from orders o1, orderDetails o2 " +
+                    "where o1.deliveryDate = ? and o1.orderNo = o2.orderNo order by o1.orderNo";
+
+    private final Database database;
+    private final Date date;
+    // the order numbers already returned
+    private final Set<String> seen = new HashSet<>();
+    // the number of items the poll before found for each order not returned yet
+    private Map<String, Integer> pending = new HashMap<>();
+    // the polls run on a connection of their own, the database's connection is used by the journey's writers
+    private Connection conn;
+    private PreparedStatement psOrdersQuery;
+
+    /**
+     * constructor of the class
+     * @param database the database the orders are read from
+     * @param date the delivery date of the orders
+     */
+    public DatabaseOrderSource(Database database, Date date) {
+        this.database = database;
+        this.date = date;
+    }
+
+    @Override
+    public List<Orders> poll() throws SQLException {
+        if (conn == null) {
+            conn = DriverManager.getConnection(database.getJdbcString());
+            psOrdersQuery = conn.prepareStatement(ORDERS_QUERY);
+            psOrdersQuery.setDate(1, date);
+        }
+        List<Orders> rows_polled = new ArrayList<>();
+        Metrics.DB_ROUND_TRIPS.increment();
+        DatabaseStatementEvent event = new DatabaseStatementEvent();
+        event.begin();
+        int rows = 0;
+        try (ResultSet rs = psOrdersQuery.executeQuery()) {
+            while (rs.next()) {
+                ++rows;
+                if (!seen.contains(rs.getString(1)))
+                    rows_polled.add(new Orders(rs.getString(1), rs.getDate(2), rs.getString(3), rs.getString(4), rs.getString(5), null, null, 0));
+            }
+        }
+        Database.commit(event, ORDERS_QUERY, rows);
+        Map<String, Integer> items = new HashMap<>();
+        for (Orders row : rows_polled)
+            items.merge(row.getOrderNo(), 1, Integer::sum);
+        // the rows are ordered by order number, so every item of an order is returned by the same poll,
+        // an order still being inserted is held back until the next poll finds no new item for it
+        List<Orders> orders = new ArrayList<>();
+        for (Orders row : rows_polled)
+            if (items.get(row.getOrderNo()).equals(pending.get(row.getOrderNo())))
+                orders.add(row);
+        for (Orders order : orders) {
+            seen.add(order.getOrderNo());
+            items.remove(order.getOrderNo());
+        }
+        pending = items;
+        return orders;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (conn != null)
+            conn.close();
+    }
+}
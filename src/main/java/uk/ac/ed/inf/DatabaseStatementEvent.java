@@ -0,0 +1,24 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * flight recorder event for a statement sent to the database
+ */
+@Name("uk.ac.ed.inf.DatabaseStatement")
+@Label("Database Statement")
+@Category({"Drone Delivery", "I/O"})
+@Description("Statement or metadata query sent to the database")
+public class DatabaseStatementEvent extends Event {
+
+    @Label("Statement")
+    String statement;
+
+    @Label("Rows")
+    @Description("Rows read or written by the statement")
+    int rows;
+}
@@ -0,0 +1,172 @@
+package uk.ac.ed.inf;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * class for writing the deliveries and moves of one date in a single transaction on a connection of its own,
+ * the rows written before for the date are deleted when the transaction starts, so planning a date again replaces its journey
+ * and nothing of the date is visible to other connections until the whole journey has been committed,
+ * a transaction that doesn't write the flightpath table (the moves only go to the flight log) leaves the date's moves in it as they are
+ */
+public class DayTransaction implements AutoCloseable {
+
+    private static final String INSERT_FLIGHTPATH =
+            "insert into flightpath(orderNo, fromLongitude, fromLatitude, angle, toLongitude, toLatitude, deliveryDate, moveNo) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_RUNS =
+            "insert into flightpath_runs(orderNo, startLongitude, startLatitude, angle, moves, endLongitude, endLatitude, deliveryDate, runNo) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DELIVERIES =
+            "insert into deliveries(orderNo, deliveredTo, costInPence, deliveryDate) values (?, ?, ?, ?)";
+
+    private final Connection conn;
+    private final Date date;
+    private final PreparedStatement psFlightpath, psDeliveries;
+    // false if the moves aren't written to the flightpath table
+    private final boolean write_flightpath;
+
+    // the number the next move and the next run are inserted with
+    private int move_no = 0, run_no = 0;
+    private boolean committed = false;
+
+    /**
+     * constructor of the class starting the transaction and deleting the rows of the date
+     * @param conn a connection used only by this transaction, it's closed with the transaction
+     * @param date the date of delivery
+     * @param write_flightpath true if the moves are written to the flightpath table, false to leave the date's moves in it untouched
+     * @throws SQLException if there's an error accessing the database
+     */
+    DayTransaction(Connection conn, Date date, boolean write_flightpath) throws SQLException {
+        this.conn = conn;
+        this.date = date;
+        this.write_flightpath = write_flightpath;
+        try {
+            conn.setAutoCommit(false);
+            delete(conn, "delete from deliveries where deliveryDate = ?", date);
+            // the moves of the date are written either as moves or as runs, so the ones written before are deleted from both tables
+            if (write_flightpath) {
+                delete(conn, "delete from flightpath where deliveryDate = ?", date);
+                delete(conn, "delete from flightpath_runs where deliveryDate = ?", date);
+            }
+            psFlightpath = write_flightpath ? conn.prepareStatement(INSERT_FLIGHTPATH) : null;
+            psDeliveries = conn.prepareStatement(INSERT_DELIVERIES);
+        } catch (SQLException err) {
+            conn.close();
+            throw err;
+        }
+    }
+
+    // deletes the rows of a date from a table
+    private static void delete(Connection conn, String sql, Date date) throws SQLException {
+        try (PreparedStatement psDelete = conn.prepareStatement(sql)) {
+            psDelete.setDate(1, date);
+            Database.execute(psDelete, sql);
+        }
+    }
+
+    /**
+     * function to insert moves of the drone into the flightpath table, numbered after the moves inserted before them
+     * @param flightPaths a list of Flightpath objects which provide a detailed record of every move
+     * made by the drone while making the day’s lunch deliveries
+     * @throws SQLException if there's an error accessing the database
+     */
+    public void insert_flightpath(List<Flightpath> flightPaths) throws SQLException {
+        if (flightPaths.isEmpty())
+            return;
+        if (!write_flightpath)
+            throw new IllegalStateException("The transaction of " + date + " doesn't write the flightpath table");
+        for (Flightpath flightpath : flightPaths) {
+            psFlightpath.setString(1, flightpath.getOrderNo());
+            psFlightpath.setDouble(2, flightpath.getFromLongitude());
+            psFlightpath.setDouble(3, flightpath.getFromLatitude());
+            psFlightpath.setInt(4, flightpath.getAngle());
+            psFlightpath.setDouble(5, flightpath.getToLongitude());
+            psFlightpath.setDouble(6, flightpath.getToLatitude());
+            psFlightpath.setDate(7, date);
+            psFlightpath.setInt(8, move_no++);
+            psFlightpath.addBatch();
+        }
+        // sends all the rows to the database in one round trip
+        Database.execute_batch(psFlightpath, "insert into flightpath", flightPaths.size());
+    }
+
+    /**
+     * function to insert the moves of the drone into the flightpath_runs table as runs of moves at the same angle, numbered after the runs inserted before them,
+     * the moves are read back with Database.read_flightpath
+     * @param runs the runs of the moves
+     * @throws SQLException if there's an error accessing the database
+     */
+    public void insert_runs(MoveRuns runs) throws SQLException {
+        if (runs.getRunCount() == 0)
+            return;
+        if (!write_flightpath)
+            throw new IllegalStateException("The transaction of " + date + " doesn't write the flightpath table");
+        try (PreparedStatement psRuns = conn.prepareStatement(INSERT_RUNS)) {
+            for (int r = 0; r < runs.getRunCount(); ++r) {
+                double[] start = runs.getStart(r);
+                double[] exact_end = runs.getExactEnd(r);
+                psRuns.setString(1, runs.getOrderNo(r));
+                psRuns.setDouble(2, start[0]);
+                psRuns.setDouble(3, start[1]);
+                psRuns.setInt(4, runs.getAngle(r));
+                psRuns.setInt(5, runs.getLength(r));
+                if (exact_end == null) {
+                    psRuns.setNull(6, Types.DOUBLE);
+                    psRuns.setNull(7, Types.DOUBLE);
+                } else {
+                    psRuns.setDouble(6, exact_end[0]);
+                    psRuns.setDouble(7, exact_end[1]);
+                }
+                psRuns.setDate(8, date);
+                psRuns.setInt(9, run_no++);
+                psRuns.addBatch();
+            }
+            // sends all the rows to the database in one round trip
+            Database.execute_batch(psRuns, "insert into flightpath_runs", runs.getRunCount());
+        }
+    }
+
+    /**
+     * function to insert deliveries into the deliveries table
+     * @param deliveries a list of lunch deliveries which the drone makes
+     * @throws SQLException if there's an error accessing the database
+     */
+    public void insert_deliveries(List<Deliveries> deliveries) throws SQLException {
+        if (deliveries.isEmpty())
+            return;
+        for (Deliveries delivery : deliveries) {
+            psDeliveries.setString(1, delivery.getOrderNo());
+            psDeliveries.setString(2, delivery.getDeliveredTo());
+            psDeliveries.setInt(3, delivery.getCostInPence());
+            psDeliveries.setDate(4, date);
+            psDeliveries.addBatch();
+        }
+        Database.execute_batch(psDeliveries, "insert into deliveries", deliveries.size());
+    }
+
+    /**
+     * function to commit the deliveries and moves of the date, replacing the ones written before
+     * @throws SQLException if there's an error accessing the database
+     */
+    public void commit() throws SQLException {
+        Metrics.DB_ROUND_TRIPS.increment();
+        conn.commit();
+        committed = true;
+    }
+
+    /**
+     * function to end the transaction and close its connection, the rows of the date are left as they were before the transaction
+     * unless it has been committed
+     * @throws SQLException if there's an error accessing the database
+     */
+    @Override
+    public void close() throws SQLException {
+        try (conn) {
+            if (!committed)
+                conn.rollback();
+        }
+    }
+}
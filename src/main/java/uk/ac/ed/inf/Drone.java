@@ -4,9 +4,11 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.sql.Date;
-import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -18,22 +20,28 @@ public class Drone {
     private final double longitude, latitude;
 
     // longitudes of the drone confinement area
-    private static final double[] CONFINED_LONG = {-3.192473, -3.184319};
+    static final double[] CONFINED_LONG = {-3.192473, -3.184319};
 
     // latitudes of the drone confinement area
-    private static final double[] CONFINED_LAT = {55.942617, 55.946233};
+    static final double[] CONFINED_LAT = {55.942617, 55.946233};
 
     // coordinates of Appleton Tower
     private static final double[] APPLETON_COORDS = {-3.1869, 55.9445};
 
     // distance tolerance(close-to distance) in degrees
-    private static final double DISTANCE_TOLERANCE = 0.00015;
+    static final double DISTANCE_TOLERANCE = 0.00015;
 
     // declaring constant angles used in methods
     private static final int HOVER_ANGLE = -999;
     private static final int MIN_ANGLE = 0;
     private static final int MAX_ANGLE = 350;
 
+    // the dummy order appended to the orders so that the drone returns to Appleton Tower
+    private static final Orders APPLETON_ORDER = new Orders("appleton", Date.valueOf("2001-11-15"), "customer", "appleton", "empty", APPLETON_COORDS, APPLETON_COORDS, 0);
+
+    // the delivery charge in pence added to the total price of every order
+    private static final int DELIVERY_FEE = 50;
+
     // boolean to check if anticlockwise rotation of line intersects any of the no-fly zones
     private boolean check_intersection_return_to_appleton_pos_rot, check_intersection_no_fly_zone_pos_rot;
     // boolean to check if clockwise rotation of line intersects any of the no-fly zones
@@ -50,6 +58,27 @@ public class Drone {
     // represents the total number of moves the drone has made
     private int moves = 0;
 
+    // plans the moves of each leg instead of the rotation sweeps, null if every leg is planned with the rotation sweeps
+    private LegPlanner leg_planner;
+
+    // picks the sequence the shops of each order are visited in, null if they're visited in the order the items were read
+    private PickupSequencer pickup_sequencer;
+
+    // picks the heading of a move whose straight line to the destination crosses a no-fly zone, null for the rotation sweeps
+    private HeadingScorer heading_scorer;
+
+    // tests the moves against the edges of the no-fly zones packed into arrays, null if each edge is made into a Line2D for every test
+    private SegmentKernel segment_kernel;
+
+    // the battery the planner asks before every move, null for a battery from the system properties made for each journey
+    private ConstraintEngine constraint_engine;
+
+    // the moves made since the battery's anchor, retraced if the path back computed from the drone's position doesn't fit the battery,
+    // and the anchor's computed path back, Appleton Tower with no moves before the first path back is computed
+    private List<Flightpath> moves_since_anchor;
+    private List<double[]> anchor_return_path;
+    private List<Flightpath> anchor_return_flightpath;
+
     /**
      * constructor of the class to assign the longitude and latitude values
      *
@@ -61,6 +90,34 @@ public class Drone {
         this.latitude = latitude;
     }
 
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLegPlanner(LegPlanner leg_planner) {
+        this.leg_planner = leg_planner;
+    }
+
+    public void setPickupSequencer(PickupSequencer pickup_sequencer) {
+        this.pickup_sequencer = pickup_sequencer;
+    }
+
+    public void setHeadingScorer(HeadingScorer heading_scorer) {
+        this.heading_scorer = heading_scorer;
+    }
+
+    public void setSegmentKernel(SegmentKernel segment_kernel) {
+        this.segment_kernel = segment_kernel;
+    }
+
+    public void setConstraintEngine(ConstraintEngine constraint_engine) {
+        this.constraint_engine = constraint_engine;
+    }
+
     /**
      * checks if the drones position is within a confined area
      *
@@ -144,6 +201,9 @@ public class Drone {
      * @return a list of coordinates representing the path the drone takes to return to Appleton Tower
      */
     public List<double[]> return_to_Appleton(double[] coords, List<List<List<Double>>> no_fly_zones) {
+        Metrics.RETURN_TO_APPLETON_CALLS.increment();
+        ReturnToAppletonEvent event = new ReturnToAppletonEvent();
+        event.begin();
         // represents a line segment from current drone position to Appleton Tower
         Line2D line_curr_to_appleton;
         Drone appleton = new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1]);
@@ -183,6 +243,7 @@ public class Drone {
 
                 // for loop to rotate the line segment in an anticlockwise direction till it does not intersect with any of the no-fly zones
                 for (int rotation_angle = 0; rotation_angle <= 180; rotation_angle += 20) {
+                    Metrics.ROTATION_SWEEP_ITERATIONS.increment();
                     AffineTransform transform_matrix = getTransformationMatrix(rotation_angle, x_initial, y_initial);
                     x_final = transform_matrix.transform(point, null).getX();
                     y_final = transform_matrix.transform(point, null).getY();
@@ -210,6 +271,7 @@ public class Drone {
                 }
                 // for loop to rotate the line segment in an clockwise direction till it does not intersect with any of the no-fly zones
                 for (int rotation_angle = -10; rotation_angle > -180; rotation_angle -= 20) {
+                    Metrics.ROTATION_SWEEP_ITERATIONS.increment();
                     AffineTransform transform_matrix = getTransformationMatrix(rotation_angle, x_initial, y_initial);
                     x_final = transform_matrix.transform(point, null).getX();
                     y_final = transform_matrix.transform(point, null).getY();
@@ -277,6 +339,11 @@ public class Drone {
         }
         // appends the final move the drone makes
         return_to_appleton_flightpath.add(new Flightpath("appleton", current_pos.longitude, current_pos.latitude, HOVER_ANGLE, current_pos.longitude, current_pos.latitude));
+        event.end();
+        if (event.shouldCommit()) {
+            event.moves = path.size();
+            event.commit();
+        }
         return path;
     }
 
@@ -286,17 +353,29 @@ public class Drone {
     }
 
     /**
-     * function to return a list of all the positions the drone has moved to throughout its journey delivering orders.
-     * @param orders a list of all the orders placed
+     * function to plan the drone's journey delivering orders, every position the drone moves to, every move it makes
+     * and every delivery it completes is published to the sink as soon as it has been planned
+     * @param day_orders a list of all the orders placed, e.g. an ArrayList or the list view of an OrderBook
      * @param no_fly_zones the no-fly zones
-     * @param database a database object
-     * @return a list of all the positions where the drone moves to
-     * @throws SQLException if there's an error accessing the database in one of the method called
+     * @param sink the sink receiving the positions, moves and deliveries of the journey
+     * @throws InterruptedException if the thread is interrupted while waiting for the sink to accept a published value
      */
-    public List<double[]> drone_movement(ArrayList<Orders> orders, List<List<List<Double>>> no_fly_zones, Database database) throws SQLException {
-        // appends 2 dummy orders so that the drone returns to Appleton Tower
-        orders.add(new Orders("appleton", Date.valueOf("2001-11-15"), "customer", "appleton", "empty", APPLETON_COORDS, APPLETON_COORDS, 0));
-        orders.add(new Orders("appleton", Date.valueOf("2001-11-15"), "customer", "appleton", "empty", APPLETON_COORDS, APPLETON_COORDS, 0));
+    public void drone_movement(List<Orders> day_orders, List<List<List<Double>>> no_fly_zones, MoveSink sink) throws InterruptedException {
+        // the items of each order are reordered first if the shops are visited in the sequence with the fewest moves
+        List<Orders> day_sequence = pickup_sequencer == null ? day_orders : pickup_sequencer.sequence_day(day_orders, APPLETON_COORDS);
+        // the orders followed by 2 dummy orders so that the drone returns to Appleton Tower, a view instead of a copy,
+        // so the list passed in is left unchanged and the list view of an OrderBook is read one item at a time
+        List<Orders> orders = new AbstractList<Orders>() {
+            @Override
+            public Orders get(int index) {
+                return index < day_sequence.size() ? day_sequence.get(index) : APPLETON_ORDER;
+            }
+
+            @Override
+            public int size() {
+                return day_sequence.size() + 2;
+            }
+        };
         // represents the previous order placed
         Orders prev_order = null;
         // represents the current position
@@ -309,28 +388,38 @@ public class Drone {
         double angle;
         // rounded angle
         int rounded_angle;
-        // list of positions that the drone moves to
-        List<double[]> positions = new ArrayList<>();
-        positions.add(APPLETON_COORDS);
+        // the drone starts its journey at Appleton Tower with a charged battery
+        sink.publish_position(APPLETON_COORDS);
+        ConstraintEngine battery = constraint_engine != null ? constraint_engine : ConstraintEngine.from_properties();
+        battery.start();
+        Drone appleton = new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1]);
+        moves_since_anchor = new ArrayList<>();
+        anchor_return_path = new ArrayList<>();
+        anchor_return_flightpath = new ArrayList<>();
+        anchor_return_flightpath.add(new Flightpath("appleton", APPLETON_COORDS[0], APPLETON_COORDS[1], HOVER_ANGLE, APPLETON_COORDS[0], APPLETON_COORDS[1]));
 
-        // a list representing the details of the moves the drone makes
-        ArrayList<Flightpath> flightPaths = new ArrayList<>();
+        // represents the details of a move the drone makes
         Flightpath flightPath;
-        // a list representing the deliveries made by the drone
-        ArrayList<Deliveries> deliveries = new ArrayList<>();
-        Deliveries delivery;
+        // maps an order number to the total price of its items, built in a single pass over the orders
+        HashMap<String, Integer> order_cost = new HashMap<>();
+        for (Orders order : orders)
+            order_cost.merge(order.getOrderNo(), order.getItemPrice(), Integer::sum);
+        // true if the destination coordinate is the delivery location of the previous order
+        boolean delivering;
         int i;
         // iterates over the orders placed
         for (i = 0; i < orders.size(); ++i) {
+            delivering = false;
             if (prev_order != null) {
                 if (prev_order.getOrderNo().equals(orders.get(i).getOrderNo()))
                     // if the current and previous order number are same, destination coordinate is the previous orders' shop location
                     coords = prev_order.getShopCoords();
                 else {
-                    if (Arrays.equals(coords, prev_order.getShopCoords()))
+                    if (Arrays.equals(coords, prev_order.getShopCoords())) {
                         // if the current destination equals the previous orders shop coordinates, destination is the previous orders' delivery location
                         coords = prev_order.getDeliverToCoords();
-                    else {
+                        delivering = true;
+                    } else {
                         // else current destination is the previous orders' shop location and the program stays at the current order for one more iteration
                         coords = prev_order.getShopCoords();
                         --i;
@@ -345,18 +434,45 @@ public class Drone {
             Drone destination_coords = new Drone(coords[0], coords[1]);
             // calculates moves between current position and destination coordinate
             int counter = 0;
+            // flight recorder event timing the leg to the destination coordinate
+            LegPlannedEvent leg_event = new LegPlannedEvent();
+            leg_event.begin();
+            // the headings of the moves the leg planner planned for the leg, taken one per move
+            ArrayDeque<Integer> leg_headings = new ArrayDeque<>();
+            if (leg_planner != null && !current_position.closeTo(destination_coords)) {
+                int[] planned = leg_planner.plan_leg(new double[]{current_position.longitude, current_position.latitude}, coords);
+                if (planned != null)
+                    for (int heading : planned)
+                        leg_headings.add(heading);
+            }
 
             // while loop to check whether current position of the drone is close to destination coordinate
             while (!current_position.closeTo(destination_coords)) {
                 ++counter;
+                // the heading of the move if the leg planner planned it, null if the move is found with the rotation sweeps
+                Integer planned_heading = leg_headings.poll();
                 line_curr_to_dest = new Line2D.Double(current_position.longitude, current_position.latitude, coords[0], coords[1]);
-                check_intersection = check_intersection_no_fly_zone(line_curr_to_dest, no_fly_zones);
+                check_intersection = planned_heading == null && check_intersection_no_fly_zone(line_curr_to_dest, no_fly_zones);
                 // angle between the current position and destination coordinate
                 angle = Math.toDegrees(Math.atan2(coords[1] - current_position.latitude, coords[0] - current_position.longitude));
                 // making sure the angle is suitable
                 rounded_angle = getSuitableAngle(angle);
-                // true if line segment intersects with any of the no-fly zones
-                if (check_intersection) {
+                if (planned_heading != null) {
+                    // the leg planner has already checked the move against the no-fly zones and the confinement area
+                    temp = current_position.nextPosition(planned_heading);
+                    String orderNo = prev_order != null ? prev_order.getOrderNo() : orders.get(i).getOrderNo();
+                    flightPath = new Flightpath(orderNo, current_position.longitude, current_position.latitude, planned_heading, temp.longitude, temp.latitude);
+                } else if (check_intersection && heading_scorer != null) {
+                    // every heading is scored in one pass instead of the rotation sweeps
+                    int heading = heading_scorer.best_heading(current_position.longitude, current_position.latitude, coords[0], coords[1]);
+                    // no possible heading found
+                    if (heading < 0)
+                        break;
+                    temp = current_position.nextPosition(heading);
+                    String orderNo = prev_order != null ? prev_order.getOrderNo() : orders.get(i).getOrderNo();
+                    flightPath = new Flightpath(orderNo, current_position.longitude, current_position.latitude, heading, temp.longitude, temp.latitude);
+                } else if (check_intersection) {
+                    // true if line segment intersects with any of the no-fly zones
                     Line2D rotated_line;
                     double x_initial, y_initial, x_final, y_final;
                     int final_rotation;
@@ -370,6 +486,7 @@ public class Drone {
                     Point2D.Double point = new Point2D.Double(line_curr_to_dest.getX2(), line_curr_to_dest.getY2());
                     // for loop to rotate the line segment in an anticlockwise direction till it does not intersect with any of the no-fly zones
                     for (int rotation_angle = 0; rotation_angle <= 180; rotation_angle += 30) {
+                        Metrics.ROTATION_SWEEP_ITERATIONS.increment();
                         AffineTransform transform_matrix = getTransformationMatrix(rotation_angle, x_initial, y_initial);
                         x_final = transform_matrix.transform(point, null).getX();
                         y_final = transform_matrix.transform(point, null).getY();
@@ -400,6 +517,7 @@ public class Drone {
                     }
                     // for loop to rotate the line segment in an clockwise direction till it does not intersect with any of the no-fly zones
                     for (int rotation_angle = -10; rotation_angle > -180; rotation_angle -= 30) {
+                        Metrics.ROTATION_SWEEP_ITERATIONS.increment();
                         AffineTransform transform_matrix = getTransformationMatrix(rotation_angle, x_initial, y_initial);
                         x_final = transform_matrix.transform(point, null).getX();
                         y_final = transform_matrix.transform(point, null).getY();
@@ -468,34 +586,57 @@ public class Drone {
                     temp = current_position.nextPosition(rounded_angle);
                     flightPath = new Flightpath(orderNo, current_position.longitude, current_position.latitude, rounded_angle, temp.longitude, temp.latitude);
                 }
-                // holds the number of moves to go to appleton from the next position in the temporary variable
-                int next_to_appleton = return_to_Appleton(new double[]{temp.longitude, temp.latitude}, no_fly_zones).size() + moves + 2;
-                if (next_to_appleton <= 1500) {
-                    // if the moves <= 1500, current position gets updated to next position
+                // the battery has to cover the move and the moves back to appleton from the next position in the temporary variable,
+                // the moves back are only computed once the battery's bounds on them don't decide
+                boolean allowed;
+                List<double[]> temp_return_path = null;
+                if (battery.allows_move_bounded()) {
+                    allowed = true;
+                    Metrics.RETURN_CHECKS_SKIPPED.increment();
+                } else if (battery.refuses_move_bounded(temp.distanceTo(appleton))) {
+                    allowed = false;
+                    Metrics.RETURN_CHECKS_SKIPPED.increment();
+                } else {
+                    temp_return_path = return_to_Appleton(new double[]{temp.longitude, temp.latitude}, no_fly_zones);
+                    allowed = battery.allows_move(temp_return_path.size());
+                }
+                if (allowed) {
+                    // if the battery allows the move, current position gets updated to next position
                     // flightpath object containing the details of the current move gets appended into a list of Flightpath objects
-                    flightPaths.add(flightPath);
+                    sink.publish_flightpath(flightPath);
                     current_position = temp;
-                    // the current position of the drone gets appended to the list of all positions the drone moves to
-                    positions.add(new double[]{current_position.longitude, current_position.latitude});
+                    // the current position of the drone gets published as one of the positions the drone moves to
+                    sink.publish_position(new double[]{current_position.longitude, current_position.latitude});
                     // incrementing the total number of moves
                     ++moves;
+                    battery.moved();
+                    // the next position becomes the anchor if its path back was computed
+                    if (temp_return_path != null)
+                        anchor(battery, temp_return_path);
+                    else
+                        moves_since_anchor.add(flightPath);
                 } else {
-                    // if the number of moves exceeds 1500, the drone travels to appleton tower from current position
-                    // holds the positions the drone makes to move from current position to Appleton tower
-                    List<double[]> return_to_appleton_pos = return_to_Appleton(new double[]{current_position.longitude, current_position.latitude}, no_fly_zones);
-                    // sets boolean value to true
-                    check_max_moves = true;
-                    // appends the list of positions the drone makes to move to Appleton to the list that holds the positions the drone moves to
-                    positions.addAll(return_to_appleton_pos);
-                    //positions.add(return_to_appleton_pos.get(return_to_appleton_pos.size() - 1));
-                    // list of flightpath objects representing details of moves a drone makes to move to appleton tower gets appended to the list of flightpath objects that represents the details of all the moves the drone makes
-                    flightPaths.addAll(return_to_appleton_flightpath);
-                    // moves gets equated to current number of moves + size of list of positions the drone makes to return to appleton + 1 to hover at Appleton
-                    moves = moves + return_to_appleton_pos.size() + 1;
+                    // if the battery doesn't allow the move, the drone travels to appleton tower from current position
+                    fly_back(current_position, battery, no_fly_zones, sink);
                     // breaks out of the while loop
                     break;
                 }
             }
+            // the drone stops at the destination unless it's back at appleton at the end of the journey, where the battery keeps the hover for,
+            // the battery has to cover the hover and the items picked up there and still the moves back to appleton with the payload after the stop,
+            // else the drone travels to appleton tower from the destination without stopping
+            Orders stop_order = prev_order != null ? prev_order : orders.get(i);
+            if (!check_max_moves && !stop_order.getOrderNo().equals("appleton")
+                    && !allows_stop(battery, current_position, counter > 0, delivering ? 0 : battery.getPayload() + 1, no_fly_zones))
+                fly_back(current_position, battery, no_fly_zones, sink);
+            leg_event.end();
+            if (leg_event.shouldCommit()) {
+                leg_event.orderNo = prev_order != null ? prev_order.getOrderNo() : orders.get(i).getOrderNo();
+                leg_event.destination = check_max_moves ? "appleton" : delivering ? "delivery" : "shop";
+                leg_event.moves = counter;
+                leg_event.totalMoves = moves;
+                leg_event.commit();
+            }
             // if max moves reached, it breaks out of the for loop
             if (check_max_moves) {
                 break;
@@ -511,51 +652,98 @@ public class Drone {
                         orderNo = orders.get(i).getOrderNo();
                     }
                     flightPath = new Flightpath(orderNo, current_position.longitude, current_position.latitude, HOVER_ANGLE, current_position.longitude, current_position.latitude);
-                    // appends flightpath object
-                    flightPaths.add(flightPath);
-                    // appends current position of the drone to the list of positions
-                    positions.add(new double[]{current_position.longitude, current_position.latitude});
+                    // publishes the flightpath object
+                    sink.publish_flightpath(flightPath);
+                    // publishes the current position of the drone
+                    sink.publish_position(new double[]{current_position.longitude, current_position.latitude});
                     ++moves;
+                    battery.hovered();
                 }
+                // the drone carries an item from each shop it stops at until it delivers the order
+                if (delivering)
+                    battery.delivered();
+                else if (!(prev_order != null ? prev_order : orders.get(i)).getOrderNo().equals("appleton"))
+                    battery.picked_up();
+                // the order is complete once the drone hovers at its delivery location, so its delivery is recorded straight away
+                if (delivering && !prev_order.getOrderNo().equals("appleton"))
+                    sink.publish_delivery(new Deliveries(prev_order.getOrderNo(), prev_order.getDeliverTo(), order_cost.get(prev_order.getOrderNo()) + DELIVERY_FEE));
             }
             prev_order = orders.get(i);
         }
-        // calls method to insert list of flightpath objects into flightpath table
-        database.insert_into_flightpath_database(flightPaths);
+    }
 
-        Deliveries delivery_temp = new Deliveries("null", "null", 0);
-        // gets the orderNo of the last delivery made
-        String orderNo = delivery_temp.lastDeliveryMade(flightPaths);
-        // for loop to iterate over each order placed
-        for (i = 0; i < orders.size(); ++i) {
-            int itemPrice;
-            // adding the delivery fee to the item price
-            itemPrice = orders.get(i).getItemPrice() + 50;
-            // if not the last order placeed
-            if (!orderNo.equals(orders.get(i).getOrderNo())) {
-                // while current and the next order number are equal, keep adding the item price of individual items to itemPrice
-                while (orders.get(i).getOrderNo().equals(orders.get(i + 1).getOrderNo())) {
-                    itemPrice += orders.get(i + 1).getItemPrice();
-                    ++i;
-                }
-                // make a Deliveries object storing values of the current order placed
-                delivery = new Deliveries(orders.get(i).getOrderNo(), orders.get(i).getDeliverTo(), itemPrice);
-                // append the object to the list of Deliveries object
-                deliveries.add(delivery);
-            } else {
-                // if last order placed, find the total price of the order, create a Deliveries object and append it to the list of Deliveries object and break out of the loop
-                while (orders.get(i).getOrderNo().equals(orders.get(i + 1).getOrderNo())) {
-                    itemPrice += orders.get(i + 1).getItemPrice();
-                    ++i;
-                }
-                delivery = new Deliveries(orders.get(i).getOrderNo(), orders.get(i).getDeliverTo(), itemPrice);
-                deliveries.add(delivery);
-                break;
+    /**
+     * function to make the drone's position the battery's anchor once its path back to Appleton Tower has been computed
+     * @param battery the battery of the journey
+     * @param return_path the positions of the path back, the moves of the path are the ones return_to_Appleton left in return_to_appleton_flightpath
+     */
+    private void anchor(ConstraintEngine battery, List<double[]> return_path) {
+        battery.anchor(return_path.size());
+        moves_since_anchor.clear();
+        anchor_return_path = return_path;
+        anchor_return_flightpath = return_to_appleton_flightpath;
+    }
+
+    /**
+     * function to check if the battery covers a stop at the drone's position and still the moves back to Appleton Tower after it,
+     * the path back is only computed once the bound on its moves doesn't decide, and the position becomes the anchor if it's computed and fits
+     * @param battery the battery of the journey
+     * @param position the position of the drone
+     * @param hover true if the drone hovers at the stop
+     * @param payload the items the drone carries after the stop
+     * @param no_fly_zones the no-fly zones
+     * @return true if the drone can stop
+     */
+    private boolean allows_stop(ConstraintEngine battery, Drone position, boolean hover, int payload, List<List<List<Double>>> no_fly_zones) {
+        if (battery.allows_stop_bounded(hover, payload)) {
+            Metrics.RETURN_CHECKS_SKIPPED.increment();
+            return true;
+        }
+        List<double[]> return_path = return_to_Appleton(new double[]{position.longitude, position.latitude}, no_fly_zones);
+        if (!battery.allows_stop(hover, payload, return_path.size()))
+            return false;
+        anchor(battery, return_path);
+        return true;
+    }
+
+    /**
+     * function to fly the drone back to Appleton Tower from its position once the battery doesn't allow another move or stop,
+     * the positions and moves of the path back are published to the sink
+     * @param current_position the position of the drone
+     * @param battery the battery of the journey
+     * @param no_fly_zones the no-fly zones
+     * @param sink the sink receiving the positions and moves of the path back
+     * @throws InterruptedException if the thread is interrupted while waiting for the sink to accept a published value
+     */
+    private void fly_back(Drone current_position, ConstraintEngine battery, List<List<List<Double>>> no_fly_zones, MoveSink sink) throws InterruptedException {
+        // holds the positions the drone makes to move from current position to Appleton tower
+        List<double[]> return_to_appleton_pos = return_to_Appleton(new double[]{current_position.longitude, current_position.latitude}, no_fly_zones);
+        List<Flightpath> return_flightpaths = return_to_appleton_flightpath;
+        // if that path doesn't fit the battery, the drone retraces its moves back to the anchor and takes the anchor's path,
+        // which every move and stop since the anchor was only allowed if the battery covered
+        if (!battery.allows_return(return_to_appleton_pos.size())) {
+            return_to_appleton_pos = new ArrayList<>();
+            return_flightpaths = new ArrayList<>();
+            for (int m = moves_since_anchor.size() - 1; m >= 0; --m) {
+                Flightpath move = moves_since_anchor.get(m);
+                return_to_appleton_pos.add(new double[]{move.getFromLongitude(), move.getFromLatitude()});
+                return_flightpaths.add(new Flightpath("appleton", move.getToLongitude(), move.getToLatitude(), (move.getAngle() + 180) % 360, move.getFromLongitude(), move.getFromLatitude()));
             }
+            return_to_appleton_pos.addAll(anchor_return_path);
+            return_flightpaths.addAll(anchor_return_flightpath);
         }
-        // calls method to insert list of deliveries objects into deliveries table
-        database.insert_into_deliveries_database(deliveries);
-        return positions;
+        // sets boolean value to true
+        check_max_moves = true;
+        // publishes the positions the drone moves to on its way to Appleton
+        for (double[] position : return_to_appleton_pos)
+            sink.publish_position(position);
+        // publishes the flightpath objects representing details of moves a drone makes to move to appleton tower
+        for (Flightpath return_flightpath : return_flightpaths)
+            sink.publish_flightpath(return_flightpath);
+        // moves gets equated to current number of moves + size of list of positions the drone makes to return to appleton + 1 to hover at Appleton
+        moves = moves + return_to_appleton_pos.size() + 1;
+        if (!battery.returned(return_to_appleton_pos.size()))
+            System.err.printf("Battery: the path back to Appleton Tower overran the budget of %.1f, %.1f spent%n", battery.getBudget(), battery.getSpent());
     }
 
     /**
@@ -565,8 +753,13 @@ public class Drone {
      * @return true if the line segment intersects with any of the no-fly zones, false otherwise
      */
     public boolean check_intersection_no_fly_zone(Line2D line, List<List<List<Double>>> no_fly_zones) {
+        // the kernel is made from the same no-fly zones the drone is given, so it tests the same edges in the same order
+        if (segment_kernel != null)
+            return segment_kernel.intersects(line.getX1(), line.getY1(), line.getX2(), line.getY2());
         Line2D line_no_fly_zone;
         List<Double> curr_point, next_point, initial_point;
+        // the number of no-fly zone edges the line segment is tested against
+        int edge_tests = 0;
 
         boolean check_intersection = false;
         for (List<List<Double>> no_fly_region : no_fly_zones) {
@@ -579,6 +772,7 @@ public class Drone {
                     next_point = no_fly_region.get(i + 1);
                     line_no_fly_zone = new Line2D.Double(curr_point.get(0), curr_point.get(1), next_point.get(0), next_point.get(1));
                 }
+                ++edge_tests;
                 if (line.intersectsLine(line_no_fly_zone)) {
                     check_intersection = true;
                     break;
@@ -587,6 +781,8 @@ public class Drone {
                 break;
             }
         }
+        Metrics.INTERSECTION_CHECKS.increment();
+        Metrics.EDGE_TESTS.add(edge_tests);
         return check_intersection;
     }
 }
@@ -0,0 +1,291 @@
+package uk.ac.ed.inf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * class for writing the drone's moves to an append-only binary log instead of, or as well as, the flightpath table,
+ * the log is a directory with one segment file per day (YYYY-MM-DD.log) so the moves of every day planned are kept,
+ * next to each segment is a sparse index (YYYY-MM-DD.idx) with one entry per run of moves of the same order
+ *
+ * a segment is a header of the magic number, the format version, the record size, the day and a random id, followed by fixed-size records in the order the moves were made:
+ *      the number of the move in the day, the order number (8 bytes of ASCII, padded with zeros), the coordinates before and after the move, and the angle
+ * an index is a header of the magic number, the index format version, the record count and id of the segment it was written for and the number of entries,
+ * followed by entries of an order number, the number of its first record and its record count,
+ * an index whose record count or id doesn't match the segment (e.g. after a crash between replacing the two files) is ignored and the segment is scanned
+ */
+public class FlightLog implements Closeable {
+
+    // "DRLG" and "DRLI", the first bytes of every segment and index file
+    private static final int SEGMENT_MAGIC = 0x44524C47, INDEX_MAGIC = 0x44524C49;
+
+    // the version of the format, incremented whenever the layout changes, the segments have an id from version 2 on
+    public static final int VERSION = 2;
+    // the version of the index format, which has the record count and id of its segment from version 3 on
+    private static final int INDEX_VERSION = 3;
+
+    // the magic number, version, record size, day (as a number of days since 1970-01-01) and id
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+    // the move number, order number, 4 coordinates and angle
+    static final int RECORD_SIZE = 4 + 8 + 4 * 8 + 4;
+    // the magic number, version, segment record count, segment id and entry count of an index, and the order number, first record and record count of an entry
+    private static final int INDEX_HEADER_SIZE = 4 + 4 + 4 + 8 + 4, INDEX_ENTRY_SIZE = 8 + 4 + 4;
+
+    // the length of an order number
+    private static final int ORDER_NO_LENGTH = 8;
+
+    // the number of records buffered before they are written to the segment
+    private static final int BUFFERED_RECORDS = 1024;
+
+    private final Path segment, index, temporary;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * RECORD_SIZE);
+    // the id of the segment, written to its header and to the header of its index, so an index is only used with the segment it was written for
+    private final long segment_id = ThreadLocalRandom.current().nextLong();
+
+    // the moves appended so far
+    private int records = 0;
+    // the index entries, the order number of the run of moves being appended and the number of its first record
+    private final List<String> index_orders = new ArrayList<>();
+    private final List<int[]> index_runs = new ArrayList<>();
+
+    /**
+     * constructor of the class opening a new segment for a day, the segment replaces the day's segment once it's closed,
+     * so planning a day again replaces its moves while the moves of every other day are kept
+     * @param dir the directory of the log, created if it doesn't exist
+     * @param date the day the moves are made on
+     * @throws IOException if the segment can't be created
+     */
+    public FlightLog(Path dir, LocalDate date) throws IOException {
+        Files.createDirectories(dir);
+        segment = segment(dir, date);
+        index = index(dir, date);
+        temporary = dir.resolve(date + ".log.tmp");
+        channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer.putInt(SEGMENT_MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putLong(date.toEpochDay()).putLong(segment_id);
+    }
+
+    /**
+     * function to append a move to the log
+     * @param flightpath the move
+     * @throws IOException if the buffered records can't be written to the segment
+     */
+    public void append(Flightpath flightpath) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE)
+            flush();
+        String order_no = flightpath.getOrderNo();
+        // a new run starts whenever the order number changes
+        int last = index_runs.size() - 1;
+        if (last >= 0 && index_orders.get(last).equals(order_no))
+            ++index_runs.get(last)[1];
+        else {
+            index_orders.add(order_no);
+            index_runs.add(new int[]{records, 1});
+        }
+        buffer.putInt(records++);
+        put_order_no(buffer, order_no);
+        buffer.putDouble(flightpath.getFromLongitude()).putDouble(flightpath.getFromLatitude())
+                .putDouble(flightpath.getToLongitude()).putDouble(flightpath.getToLatitude())
+                .putInt(flightpath.getAngle());
+    }
+
+    // writes the buffered records to the segment
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * function to write the remaining records and the index and to replace the day's segment with the new one
+     * @throws IOException if the segment or the index can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            flush();
+            channel.force(false);
+        }
+        ByteBuffer entries = ByteBuffer.allocate(INDEX_HEADER_SIZE + INDEX_ENTRY_SIZE * index_runs.size());
+        entries.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(records).putLong(segment_id).putInt(index_runs.size());
+        for (int i = 0; i < index_runs.size(); ++i) {
+            put_order_no(entries, index_orders.get(i));
+            entries.putInt(index_runs.get(i)[0]).putInt(index_runs.get(i)[1]);
+        }
+        Path index_temporary = index.resolveSibling(index.getFileName() + ".tmp");
+        Files.write(index_temporary, entries.array());
+        // a crash between the two moves leaves the new index next to the old segment, find notices from the segment id and scans the segment
+        Files.move(index_temporary, index, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temporary, segment, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * function to close the new segment without replacing the day's segment, used when the journey could not be planned
+     */
+    public void discard() {
+        try (channel) {
+            Files.deleteIfExists(temporary);
+        } catch (IOException err) {
+            err.printStackTrace();
+        }
+    }
+
+    /**
+     * function to get the path of the segment of a day
+     * @param dir the directory of the log
+     * @param date the day
+     * @return the path of the segment, which may not exist
+     */
+    public static Path segment(Path dir, LocalDate date) {
+        return dir.resolve(date + ".log");
+    }
+
+    // the path of the index of a day
+    private static Path index(Path dir, LocalDate date) {
+        return dir.resolve(date + ".idx");
+    }
+
+    /**
+     * function to map the segment of a day and check its header
+     * @param dir the directory of the log
+     * @param date the day
+     * @return the segment positioned at its first record, null if no moves were logged on the day
+     * @throws IOException if the segment can't be read or it's not a segment of the current version
+     */
+    public static ByteBuffer map(Path dir, LocalDate date) throws IOException {
+        Path path = segment(dir, date);
+        if (!Files.exists(path))
+            return null;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC)
+            throw new IOException(path + " is not a flight log segment");
+        if (buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE)
+            throw new IOException(path + " has version " + buffer.getInt(4) + ", expected version " + VERSION);
+        if (buffer.getLong(12) != date.toEpochDay() || (buffer.limit() - HEADER_SIZE) % RECORD_SIZE != 0)
+            throw new IOException(path + " is corrupted");
+        return buffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * function to get the number of records in a mapped segment
+     * @param segment the segment returned by map
+     * @return the number of records
+     */
+    public static int record_count(ByteBuffer segment) {
+        return (segment.limit() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * function to read a record of a mapped segment
+     * @param segment the segment returned by map
+     * @param record the number of the record
+     * @return the move
+     */
+    public static Flightpath read(ByteBuffer segment, int record) {
+        int position = HEADER_SIZE + record * RECORD_SIZE + 4;
+        return new Flightpath(order_no(segment, position),
+                segment.getDouble(position + ORDER_NO_LENGTH), segment.getDouble(position + ORDER_NO_LENGTH + 8),
+                segment.getInt(position + ORDER_NO_LENGTH + 32),
+                segment.getDouble(position + ORDER_NO_LENGTH + 16), segment.getDouble(position + ORDER_NO_LENGTH + 24));
+    }
+
+    /**
+     * function to read the order number of a record of a mapped segment
+     * @param segment the segment returned by map
+     * @param record the number of the record
+     * @return the order number
+     */
+    public static String read_order_no(ByteBuffer segment, int record) {
+        return order_no(segment, HEADER_SIZE + record * RECORD_SIZE + 4);
+    }
+
+    /**
+     * function to get the moves of an order on a day, only the records the sparse index points to are read
+     * @param dir the directory of the log
+     * @param date the day
+     * @param order_no the order number
+     * @return the moves of the order in the order they were made, empty if the order has no moves on the day
+     * @throws IOException if the segment or its index can't be read
+     */
+    public static List<Flightpath> find(Path dir, LocalDate date, String order_no) throws IOException {
+        List<Flightpath> moves = new ArrayList<>();
+        ByteBuffer segment = map(dir, date);
+        if (segment == null)
+            return moves;
+        ByteBuffer entries = read_index(dir, date, segment);
+        if (entries == null) {
+            // without an index that matches the segment every record is read
+            for (int r = 0; r < record_count(segment); ++r)
+                if (read_order_no(segment, r).equals(order_no))
+                    moves.add(read(segment, r));
+            return moves;
+        }
+        int count = entries.getInt(INDEX_HEADER_SIZE - 4);
+        for (int i = 0; i < count; ++i) {
+            int position = INDEX_HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            if (order_no(entries, position).equals(order_no)) {
+                int first = entries.getInt(position + ORDER_NO_LENGTH);
+                int records = entries.getInt(position + ORDER_NO_LENGTH + 4);
+                for (int r = first; r < first + records; ++r)
+                    moves.add(read(segment, r));
+            }
+        }
+        return moves;
+    }
+
+    // reads the index of a day, null if it's missing, of another version or wasn't written for the segment
+    private static ByteBuffer read_index(Path dir, LocalDate date, ByteBuffer segment) throws IOException {
+        Path path = index(dir, date);
+        if (!Files.exists(path))
+            return null;
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (entries.limit() < INDEX_HEADER_SIZE || entries.getInt(0) != INDEX_MAGIC || entries.getInt(4) != INDEX_VERSION) {
+            System.err.println(path + " is not a flight log index of version " + INDEX_VERSION + ", reading the whole segment");
+            return null;
+        }
+        // only the headers are compared, the records are read once they're looked up
+        int count = entries.getInt(INDEX_HEADER_SIZE - 4);
+        if (entries.getInt(8) != record_count(segment) || entries.getLong(12) != segment.getLong(HEADER_SIZE - 8)
+                || entries.limit() != INDEX_HEADER_SIZE + count * INDEX_ENTRY_SIZE) {
+            System.err.println(path + " wasn't written for the segment next to it, reading the whole segment");
+            return null;
+        }
+        return entries;
+    }
+
+    // writes an order number as 8 bytes of ASCII padded with zeros
+    private static void put_order_no(ByteBuffer buffer, String order_no) {
+        byte[] bytes = order_no.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > ORDER_NO_LENGTH)
+            throw new IllegalArgumentException("Order number longer than " + ORDER_NO_LENGTH + " characters: " + order_no);
+        buffer.put(bytes);
+        for (int i = bytes.length; i < ORDER_NO_LENGTH; ++i)
+            buffer.put((byte) 0);
+    }
+
+    // reads an order number written by put_order_no
+    private static String order_no(ByteBuffer buffer, int position) {
+        byte[] bytes = new byte[ORDER_NO_LENGTH];
+        buffer.get(position, bytes);
+        int length = 0;
+        while (length < ORDER_NO_LENGTH && bytes[length] != 0)
+            ++length;
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+}
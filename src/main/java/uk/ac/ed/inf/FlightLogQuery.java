@@ -0,0 +1,67 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * class for querying the flight log, it prints the moves of an order or a summary of every day in a range of dates
+ */
+public class FlightLogQuery {
+
+    // the positions of the fields of a record, after the move number
+    private static final int FROM_LONGITUDE = 12, FROM_LATITUDE = 20, TO_LONGITUDE = 28, TO_LATITUDE = 36;
+
+    /**
+     * main function running the query
+     * @param args command line arguments including the directory of the flight log, the first date (YYYY-MM-DD), optionally the last date
+     *             and optionally an order number to print the moves of instead of the summary of each day
+     * @throws IOException if a segment or index can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args[0]);
+        LocalDate from = LocalDate.parse(args[1]);
+        LocalDate to = args.length > 2 ? LocalDate.parse(args[2]) : from;
+        String order_no = args.length > 3 ? args[3] : null;
+
+        long start = System.nanoTime();
+        long total_moves = 0;
+        int days = 0;
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (order_no != null) {
+                // the sparse index points to the records of the order, the rest of the segment isn't read
+                List<Flightpath> moves = FlightLog.find(dir, date, order_no);
+                for (Flightpath move : moves)
+                    System.out.println(date + "," + move.getOrderNo() + "," + move.getFromLongitude() + "," + move.getFromLatitude() + ","
+                            + move.getAngle() + "," + move.getToLongitude() + "," + move.getToLatitude());
+                total_moves += moves.size();
+                if (!moves.isEmpty())
+                    ++days;
+                continue;
+            }
+            ByteBuffer segment = FlightLog.map(dir, date);
+            if (segment == null)
+                continue;
+            int records = FlightLog.record_count(segment);
+            Set<String> orders = new HashSet<>();
+            double distance = 0;
+            // the fields are read in place from the mapped segment instead of making a Flightpath per record
+            for (int r = 0; r < records; ++r) {
+                int position = FlightLog.HEADER_SIZE + r * FlightLog.RECORD_SIZE;
+                orders.add(FlightLog.read_order_no(segment, r));
+                distance += Math.hypot(segment.getDouble(position + TO_LONGITUDE) - segment.getDouble(position + FROM_LONGITUDE),
+                        segment.getDouble(position + TO_LATITUDE) - segment.getDouble(position + FROM_LATITUDE));
+            }
+            orders.remove("appleton");
+            System.out.printf("%s: %d moves, %d orders, %.5f degrees flown%n", date, records, orders.size(), distance);
+            total_moves += records;
+            ++days;
+        }
+        System.out.printf("%d moves on %d days read in %.2f ms%n", total_moves, days, (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,246 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * class for picking the heading of a move when the straight line to the destination crosses a no-fly zone, instead of the rotation sweeps,
+ * all 36 headings are scored in one pass over arrays of coordinates: for each heading the move has to stay clear of the no-fly zones
+ * and end inside the confinement area, and the line of the same length as the line to the destination, rotated onto the heading, has to be clear,
+ * like the rotated line of the rotation sweeps, of those headings the one whose move ends closest to the destination is picked,
+ * which is the heading with the smallest rotation from the line to the destination
+ *
+ * this class scores the headings one at a time, VectorHeadingScorer scores several at a time with the Vector API
+ * when the JVM is run with --add-modules jdk.incubator.vector
+ */
+public class HeadingScorer {
+
+    // the number of headings the drone can move in, every 10 degrees
+    static final int HEADINGS = 36;
+
+    // true if the Vector API module was added to the JVM, the vector classes can't be loaded without it
+    static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    // the cosine and sine of each heading, computed the way Drone.nextPosition computes them so the moves end at the same positions,
+    // the arrays are padded to a multiple of the vector length with zero-length headings
+    protected final double[] cos, sin;
+
+    // the edges of the no-fly zones, edge e is from (edge_x1[e], edge_y1[e]) to (edge_x2[e], edge_y2[e])
+    protected final double[] edge_x1, edge_y1, edge_x2, edge_y2;
+
+    // the scores of the last pass: true if the move of a heading is allowed and the rotated line is clear,
+    // and the squared distance from the end of the move to the destination
+    protected final boolean[] step_allowed, line_clear;
+    protected final double[] distance;
+
+    // the destination of the moves picked since the drone last started a leg, and the side of the line to the destination they turned to,
+    // 1 for anticlockwise, -1 for clockwise, 0 if no move has turned yet
+    private double side_target_x = Double.NaN, side_target_y = Double.NaN;
+    private int side = 0;
+
+    // the edges close enough to the drone to touch its move and the rotated line in the last pass
+    protected final int[] near_step, near_line;
+
+    /**
+     * constructor of the class
+     * @param no_fly_zones the no-fly zones
+     */
+    public HeadingScorer(List<List<List<Double>>> no_fly_zones) {
+        this(no_fly_zones, 1);
+    }
+
+    /**
+     * constructor of the class padding the arrays of the headings to a multiple of the given length
+     * @param no_fly_zones the no-fly zones
+     * @param lanes the number of headings scored at a time
+     */
+    protected HeadingScorer(List<List<List<Double>>> no_fly_zones, int lanes) {
+        int padded = (HEADINGS + lanes - 1) / lanes * lanes;
+        cos = new double[padded];
+        sin = new double[padded];
+        for (int h = 0; h < HEADINGS; ++h) {
+            cos[h] = Math.cos(Math.toRadians(10 * h));
+            sin[h] = Math.sin(Math.toRadians(10 * h));
+        }
+        step_allowed = new boolean[padded];
+        line_clear = new boolean[padded];
+        distance = new double[padded];
+
+        int count = 0;
+        for (List<List<Double>> zone : no_fly_zones)
+            count += zone.size();
+        edge_x1 = new double[count];
+        edge_y1 = new double[count];
+        edge_x2 = new double[count];
+        edge_y2 = new double[count];
+        near_step = new int[count];
+        near_line = new int[count];
+        int e = 0;
+        // the same edges Drone.check_intersection_no_fly_zone tests, each point of a zone to the next and the last point to the first
+        for (List<List<Double>> zone : no_fly_zones) {
+            for (int i = 0; i < zone.size(); ++i) {
+                List<Double> from = zone.get(i), to = zone.get(i == zone.size() - 1 ? 0 : i + 1);
+                edge_x1[e] = from.get(0);
+                edge_y1[e] = from.get(1);
+                edge_x2[e] = to.get(0);
+                edge_y2[e] = to.get(1);
+                ++e;
+            }
+        }
+    }
+
+    /**
+     * function to make a scorer from the system property drone.sweep
+     * @param no_fly_zones the no-fly zones
+     * @return the scorer, with the Vector API if its module was added to the JVM, null if drone.sweep isn't headings and the rotation sweeps are used
+     */
+    public static HeadingScorer from_properties(List<List<List<Double>>> no_fly_zones) {
+        String mode = System.getProperty("drone.sweep", "rotation");
+        if (!mode.equals("rotation") && !mode.equals("headings"))
+            throw new IllegalArgumentException("Unknown sweep " + mode + ", expected rotation or headings");
+        return mode.equals("rotation") ? null : create(no_fly_zones);
+    }
+
+    /**
+     * function to make the fastest scorer the JVM supports
+     * @param no_fly_zones the no-fly zones
+     * @return the scorer with the Vector API if its module was added to the JVM, else the scorer scoring one heading at a time
+     */
+    public static HeadingScorer create(List<List<List<Double>>> no_fly_zones) {
+        return VECTOR_API ? new VectorHeadingScorer(no_fly_zones) : new HeadingScorer(no_fly_zones);
+    }
+
+    /**
+     * function to pick the heading of the drone's next move
+     * @param x the longitude of the drone
+     * @param y the latitude of the drone
+     * @param target_x the longitude of the destination
+     * @param target_y the latitude of the destination
+     * @return the heading, -1 if no heading's move is allowed with a clear rotated line
+     */
+    public int best_heading(double x, double y, double target_x, double target_y) {
+        score(x, y, target_x, target_y);
+        // the drone keeps going round a no-fly zone on the side it started on, otherwise the closest heading can swap sides
+        // from one move to the next in front of a wall and the drone flies back and forth
+        if (target_x != side_target_x || target_y != side_target_y) {
+            side_target_x = target_x;
+            side_target_y = target_y;
+            side = 0;
+        }
+        int best = -1, best_on_side = -1;
+        for (int h = 0; h < HEADINGS; ++h) {
+            if (!step_allowed[h] || !line_clear[h])
+                continue;
+            if (best < 0 || distance[h] < distance[best])
+                best = h;
+            if (side * rotation(h, x, y, target_x, target_y) >= 0 && (best_on_side < 0 || distance[h] < distance[best_on_side]))
+                best_on_side = h;
+        }
+        if (best_on_side >= 0)
+            best = best_on_side;
+        if (best < 0)
+            return -1;
+        if (side == 0)
+            side = (int) Math.signum(rotation(best, x, y, target_x, target_y));
+        return 10 * best;
+    }
+
+    // above zero if a heading is rotated anticlockwise from the line to the destination, below zero if clockwise
+    private double rotation(int h, double x, double y, double target_x, double target_y) {
+        return (target_x - x) * sin[h] - (target_y - y) * cos[h];
+    }
+
+    /**
+     * function to score every heading from a position, filling step_allowed, line_clear and distance
+     * @param x the longitude of the drone
+     * @param y the latitude of the drone
+     * @param target_x the longitude of the destination
+     * @param target_y the latitude of the destination
+     */
+    protected void score(double x, double y, double target_x, double target_y) {
+        double reach = Math.hypot(target_x - x, target_y - y);
+        int near_step_count = near(x, y, Drone.DISTANCE_TOLERANCE, near_step), near_line_count = near(x, y, reach, near_line);
+        for (int h = 0; h < HEADINGS; ++h) {
+            double step_x = x + Drone.DISTANCE_TOLERANCE * cos[h], step_y = y + Drone.DISTANCE_TOLERANCE * sin[h];
+            double line_x = x + reach * cos[h], line_y = y + reach * sin[h];
+            step_allowed[h] = Drone.CONFINED_LONG[0] < step_x && step_x < Drone.CONFINED_LONG[1]
+                    && Drone.CONFINED_LAT[0] < step_y && step_y < Drone.CONFINED_LAT[1];
+            for (int i = 0; i < near_step_count && step_allowed[h]; ++i) {
+                int e = near_step[i];
+                step_allowed[h] = !Line2D.linesIntersect(x, y, step_x, step_y, edge_x1[e], edge_y1[e], edge_x2[e], edge_y2[e]);
+            }
+            line_clear[h] = true;
+            for (int i = 0; i < near_line_count && line_clear[h]; ++i) {
+                int e = near_line[i];
+                line_clear[h] = !Line2D.linesIntersect(x, y, line_x, line_y, edge_x1[e], edge_y1[e], edge_x2[e], edge_y2[e]);
+            }
+            distance[h] = (step_x - target_x) * (step_x - target_x) + (step_y - target_y) * (step_y - target_y);
+        }
+    }
+
+    /**
+     * function to find the edges whose bounding box is within a distance of a point along both axes, the other edges can't touch a segment of that length from the point
+     * @param x the longitude of the point
+     * @param y the latitude of the point
+     * @param distance the distance
+     * @param edges filled with the indexes of the edges
+     * @return the number of edges found
+     */
+    protected final int near(double x, double y, double distance, int[] edges) {
+        int count = 0;
+        for (int e = 0; e < edge_x1.length; ++e)
+            if (Math.min(edge_x1[e], edge_x2[e]) <= x + distance && Math.max(edge_x1[e], edge_x2[e]) >= x - distance
+                    && Math.min(edge_y1[e], edge_y2[e]) <= y + distance && Math.max(edge_y1[e], edge_y2[e]) >= y - distance)
+                edges[count++] = e;
+        return count;
+    }
+
+    /**
+     * function to compare the scorer with the Vector API against the scorer scoring one heading at a time on random positions in the confinement area,
+     * the two have to pick the same heading for every position, and to time both
+     * @param args the no-fly zones file (default buildings/no-fly-zones.geojson), the number of positions (default 200000) and the seed (default 1)
+     * @throws IOException if the no-fly zones file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path zones_file = Paths.get(args.length > 0 ? args[0] : "buildings/no-fly-zones.geojson");
+        int positions = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        List<List<List<Double>>> no_fly_zones = WebServer.parse_no_fly_zones(Files.readString(zones_file));
+        HeadingScorer scalar = new HeadingScorer(no_fly_zones), fastest = create(no_fly_zones);
+        System.out.println(positions + " positions, " + scalar.edge_x1.length + " no-fly zone edges, "
+                + (VECTOR_API ? "Vector API with " + fastest.cos.length / ((VectorHeadingScorer) fastest).lanes() + " passes of "
+                + ((VectorHeadingScorer) fastest).lanes() + " headings" : "no Vector API, run with --add-modules jdk.incubator.vector"));
+
+        double[][] points = new double[positions][];
+        Random random = new Random(seed);
+        for (int p = 0; p < positions; ++p)
+            points[p] = new double[]{Drone.CONFINED_LONG[0] + random.nextDouble() * (Drone.CONFINED_LONG[1] - Drone.CONFINED_LONG[0]),
+                    Drone.CONFINED_LAT[0] + random.nextDouble() * (Drone.CONFINED_LAT[1] - Drone.CONFINED_LAT[0]),
+                    Drone.CONFINED_LONG[0] + random.nextDouble() * (Drone.CONFINED_LONG[1] - Drone.CONFINED_LONG[0]),
+                    Drone.CONFINED_LAT[0] + random.nextDouble() * (Drone.CONFINED_LAT[1] - Drone.CONFINED_LAT[0])};
+        // the first round warms up the JIT compiler
+        for (int round = 0; round < 3; ++round) {
+            long scalar_nanos = 0, fastest_nanos = 0;
+            int mismatches = 0, blocked = 0;
+            for (double[] point : points) {
+                long start = System.nanoTime();
+                int expected = scalar.best_heading(point[0], point[1], point[2], point[3]);
+                scalar_nanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                int heading = fastest.best_heading(point[0], point[1], point[2], point[3]);
+                fastest_nanos += System.nanoTime() - start;
+                if (heading != expected)
+                    ++mismatches;
+                if (expected < 0)
+                    ++blocked;
+            }
+            System.out.printf("round %d: scalar %.1f ns, %s %.1f ns per position, %d mismatches, %d positions with no heading%n", round,
+                    (double) scalar_nanos / positions, VECTOR_API ? "vector" : "scalar", (double) fastest_nanos / positions, mismatches, blocked);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.ed.inf;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * class for making the HttpClient the web server requests are sent with, configured with the HTTP version, the executor
+ * the client runs its asynchronous work on and the connection pool settings,
+ * the settings are read from system properties by from_properties and can be given explicitly to compare them with WebServerBenchmark
+ */
+public class HttpClientFactory {
+
+    // the JDK's own properties for the connection pool, read once when the first client is made
+    private static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    private final HttpClient.Version version;
+    // the number of threads of the client's executor, 0 for the client's default executor
+    private final int threads;
+    private final Duration connect_timeout;
+
+    /**
+     * constructor of the class
+     * @param version the HTTP version to request, HTTP_2 is tried first and falls back to HTTP/1.1 if the server doesn't upgrade
+     * @param threads the number of threads of a fixed executor for the client, 0 to use the client's default cached executor
+     * @param connect_timeout how long opening a connection to the server may take before the request fails
+     */
+    public HttpClientFactory(HttpClient.Version version, int threads, Duration connect_timeout) {
+        this.version = version;
+        this.threads = threads;
+        this.connect_timeout = connect_timeout;
+    }
+
+    /**
+     * function to make a factory from the system properties drone.http.version (HTTP_1_1 or HTTP_2), drone.http.threads and drone.http.connectTimeout,
+     * and to pass drone.http.poolSize and drone.http.keepAlive on to the JDK's connection pool properties unless those are set already
+     * @return the factory
+     */
+    public static HttpClientFactory from_properties() {
+        pool_hints(Integer.getInteger("drone.http.poolSize", 0), Long.getLong("drone.http.keepAlive", 0));
+        return new HttpClientFactory(HttpClient.Version.valueOf(System.getProperty("drone.http.version", "HTTP_2")),
+                Integer.getInteger("drone.http.threads", 0),
+                Duration.ofMillis(Long.getLong("drone.http.connectTimeout", 2000)));
+    }
+
+    /**
+     * function to set the size and the idle timeout of the JDK's HTTP connection pool, they only take effect if set before the first client is made
+     * and are shared by every client of the JVM
+     * @param pool_size the maximum number of idle connections kept open, 0 to leave the JDK's setting (unlimited)
+     * @param keep_alive_seconds how long an idle connection is kept open, 0 to leave the JDK's setting (20 minutes)
+     */
+    public static void pool_hints(int pool_size, long keep_alive_seconds) {
+        if (pool_size > 0 && System.getProperty(POOL_SIZE_PROPERTY) == null)
+            System.setProperty(POOL_SIZE_PROPERTY, Integer.toString(pool_size));
+        if (keep_alive_seconds > 0 && System.getProperty(KEEP_ALIVE_PROPERTY) == null)
+            System.setProperty(KEEP_ALIVE_PROPERTY, Long.toString(keep_alive_seconds));
+    }
+
+    /**
+     * function to make a client with the factory's settings
+     * @return the client
+     */
+    public HttpClient create() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connect_timeout);
+        if (threads > 0) {
+            // daemon threads so the client doesn't keep the application running once it's done
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "http-client");
+                thread.setDaemon(true);
+                return thread;
+            });
+            builder.executor(executor);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return version + ", " + (threads > 0 ? threads + " threads" : "default executor");
+    }
+}
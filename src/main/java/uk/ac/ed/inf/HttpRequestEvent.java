@@ -0,0 +1,32 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * flight recorder event for a request sent to the web server
+ */
+@Name("uk.ac.ed.inf.HttpRequest")
+@Label("Web Server Request")
+@Category({"Drone Delivery", "I/O"})
+@Description("Request sent to the web server")
+public class HttpRequestEvent extends Event {
+
+    @Label("URL")
+    String url;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Response Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Attempt")
+    @Description("0 for the first attempt, counting up for each retry")
+    int attempt;
+}
@@ -0,0 +1,129 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class for tailing a JSONL file of orders, each line is an order as written by the main method of this class, e.g.
+ * {"orderNo":"1ad5f1ff","customer":"s2314355","deliverTo":"pest.round.peanut","items":["Hummus, falafel and spicy tomato French country roll"]},
+ * every poll reads the complete lines appended since the last one, a line still being written is left for the next poll
+ */
+public class JsonlOrderSource implements OrderSource {
+
+    // an order as it's written on a line of the file
+    private static class Line {
+        String orderNo;
+        String customer;
+        String deliverTo;
+        List<String> items = new ArrayList<>();
+    }
+
+    private final Gson gson = new Gson();
+    private final Path file;
+    private final Date date;
+    // the offset in the file up to which every line has been read
+    private long offset = 0;
+    private RandomAccessFile reader;
+
+    /**
+     * constructor of the class, the file doesn't have to exist yet
+     * @param file the JSONL file orders are appended to
+     * @param date the delivery date of the orders
+     */
+    public JsonlOrderSource(Path file, Date date) {
+        this.file = file;
+        this.date = date;
+    }
+
+    @Override
+    public List<Orders> poll() throws IOException {
+        List<Orders> orders = new ArrayList<>();
+        if (reader == null) {
+            if (!Files.exists(file))
+                return orders;
+            reader = new RandomAccessFile(file.toFile(), "r");
+        }
+        long length = reader.length();
+        if (length <= offset)
+            return orders;
+        byte[] appended = new byte[(int) (length - offset)];
+        reader.seek(offset);
+        reader.readFully(appended);
+        int start = 0;
+        for (int end = 0; end < appended.length; ++end) {
+            if (appended[end] != '\n')
+                continue;
+            String text = new String(appended, start, end - start, StandardCharsets.UTF_8).trim();
+            start = end + 1;
+            if (text.isEmpty())
+                continue;
+            Line line;
+            try {
+                line = gson.fromJson(text, Line.class);
+            } catch (JsonSyntaxException err) {
+                line = null;
+            }
+            // a malformed line is skipped so it doesn't hold up the orders after it
+            if (line == null || line.orderNo == null || line.deliverTo == null || line.items == null || line.items.isEmpty()) {
+                System.err.println("Order stream: skipping malformed line " + text);
+                continue;
+            }
+            for (String item : line.items)
+                orders.add(new Orders(line.orderNo, date, line.customer, line.deliverTo, item, null, null, 0));
+        }
+        // the bytes after the last newline are a line still being written
+        offset += start;
+        return orders;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null)
+            reader.close();
+    }
+
+    /**
+     * function to replay the orders of a date from the database into a JSONL file one order at a time, to feed the stream of drone.stream=jsonl:&lt;file&gt;
+     * @param args the date (YYYY-MM-DD), the database port, the JSONL file and the milliseconds between two orders (default 500)
+     * @throws SQLException if there's an error accessing the database
+     * @throws IOException if there's an error writing the file
+     * @throws InterruptedException if the thread is interrupted between two orders
+     */
+    public static void main(String[] args) throws SQLException, IOException, InterruptedException {
+        long interval_millis = args.length > 3 ? Long.parseLong(args[3]) : 500;
+        Database database = new Database("localhost", args[1], null, args[0]);
+        // the items of each order on one line, the orders in the order the query returns them
+        Map<String, Line> lines = new LinkedHashMap<>();
+        for (Orders order : database.read_orders(args[0])) {
+            Line line = lines.computeIfAbsent(order.getOrderNo(), o -> new Line());
+            line.orderNo = order.getOrderNo();
+            line.customer = order.getCustomer();
+            line.deliverTo = order.getDeliverTo();
+            line.items.add(order.getItem());
+        }
+        database.close();
+        Gson gson = new Gson();
+        // the file is appended to, so a stream already tailing it sees each order as it's written
+        try (FileWriter writer = new FileWriter(args[2], StandardCharsets.UTF_8, true)) {
+            for (Line line : lines.values()) {
+                writer.write(gson.toJson(line) + "\n");
+                writer.flush();
+                System.out.println("Order stream: wrote order " + line.orderNo);
+                Thread.sleep(interval_millis);
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * class for finding the moves of the drone between two points on the lattice of positions it can reach, i.e., moves of a fixed length at multiples of 10 degrees,
+ * the search is A* over jump points: from a point the drone flies straight along each heading until the move after would be blocked
+ * or until it's as close to the destination as that heading gets, and only those points are added to the open list,
+ * which prunes the many orders of the same moves that reach the same point, the way jump point search does on a grid
+ *
+ * away from the no-fly zones only the headings within 90 degrees of the heading the drone arrived with are followed, as turning back can't shorten the path,
+ * at a point next to a no-fly zone or the edge of the confinement area every heading is followed,
+ * and from every point with a clear straight line to the destination the drone tries to fly straight there
+ */
+public class LatticeSearch {
+
+    // the length of a move of the drone
+    private static final double STEP = Drone.DISTANCE_TOLERANCE;
+
+    // the number of headings the drone can move in, every 10 degrees
+    private static final int HEADINGS = 36;
+
+    // the size of the cells points are merged in, two points closer than this are taken to be the same point
+    private static final double MERGE_CELL = STEP / 2;
+
+    // how close the two searches of the bidirectional search have to come, the joined path ends this close to the destination
+    private static final double MEET_DISTANCE = 0.9 * STEP;
+
+    // the most moves of a straight jump, longer than the confinement area is wide
+    private static final int MAX_JUMP = 80;
+
+    // the most points the search on exact positions expands before it gives up
+    public static final int MAX_EXACT_EXPANDED = 50_000;
+
+    // the number of points expanded and added to the open list by the last search
+    private int expanded, generated;
+
+    private final ObstacleIndex obstacles;
+
+    /**
+     * constructor of the class
+     * @param obstacles the index of the no-fly zones
+     */
+    public LatticeSearch(ObstacleIndex obstacles) {
+        this.obstacles = obstacles;
+    }
+
+    public int getExpanded() {
+        return expanded;
+    }
+
+    public int getGenerated() {
+        return generated;
+    }
+
+    /**
+     * class holding a point of the search and the moves from its parent to it
+     */
+    private static class Node implements Comparable<Node> {
+        final Drone position;
+        final Node parent;
+        // the headings of the moves from the parent to the point
+        final int[] moves;
+        // the number of moves from the start, and that plus the estimate of the moves to the destination
+        final int g;
+        final double f;
+        // the heading the drone arrived with, and true if the point is next to an obstacle so every heading has to be followed from it
+        final int heading;
+        final boolean forced;
+
+        Node(Drone position, Node parent, int[] moves, double h, int heading, boolean forced) {
+            this.position = position;
+            this.parent = parent;
+            this.moves = moves;
+            this.g = (parent == null ? 0 : parent.g) + moves.length;
+            this.f = g + h;
+            this.heading = heading;
+            this.forced = forced;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            // of two points with the same estimate the one further along is expanded first, which finds the destination with fewer expansions
+            return f != other.f ? Double.compare(f, other.f) : Integer.compare(other.g, g);
+        }
+    }
+
+    /**
+     * function to find the moves from one point to a point close to another (within the length of a move) with the jump point search
+     * @param from the coordinates the drone starts at
+     * @param to the coordinates of the destination
+     * @return the heading of each move, null if there is no path
+     */
+    public int[] find_path(double[] from, double[] to) {
+        return search(from, to, true, true);
+    }
+
+    /**
+     * function to find the moves from one point to a point close to another with A* expanding every single move from every point,
+     * with points merged in cells the same way as the jump point search, used to measure the jump point search against
+     * @param from the coordinates the drone starts at
+     * @param to the coordinates of the destination
+     * @return the heading of each move, null if there is no path
+     */
+    public int[] find_path_naive(double[] from, double[] to) {
+        return search(from, to, false, true);
+    }
+
+    /**
+     * function to find the moves from one point to a point close to another with plain A* on the exact positions,
+     * points are only the same if their coordinates are equal, which moves in a different order seldom give because of rounding,
+     * so the search gives up after MAX_EXACT_EXPANDED points
+     * @param from the coordinates the drone starts at
+     * @param to the coordinates of the destination
+     * @return the heading of each move, null if there is no path or the search gave up
+     */
+    public int[] find_path_exact(double[] from, double[] to) {
+        return search(from, to, false, false);
+    }
+
+    // runs A* with jump points or with single moves, with the points merged in cells or only if they're equal
+    private int[] search(double[] from, double[] to, boolean jump, boolean merge) {
+        expanded = generated = 0;
+        Drone goal = new Drone(to[0], to[1]);
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        // the fewest moves any point of each cell (or each point) has been reached with
+        HashMap<Object, Integer> best_g = new HashMap<>();
+        Node start = new Node(new Drone(from[0], from[1]), null, new int[0], estimate(new Drone(from[0], from[1]), goal), -1, true);
+        open.add(start);
+        best_g.put(key(start.position, merge), 0);
+        while (!open.isEmpty()) {
+            Node node = open.poll();
+            if (node.position.closeTo(goal))
+                return path(node);
+            Integer g = best_g.get(key(node.position, merge));
+            if (g != null && g < node.g)
+                continue;
+            if (!merge && expanded == MAX_EXACT_EXPANDED)
+                return null;
+            ++expanded;
+            List<Node> successors = jump ? jump_successors(node, goal) : single_successors(node, goal);
+            for (Node successor : successors) {
+                Object key = key(successor.position, merge);
+                Integer known = best_g.get(key);
+                if (known != null && known <= successor.g)
+                    continue;
+                best_g.put(key, successor.g);
+                open.add(successor);
+                ++generated;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * function to find the moves from one point to a point close to another with a bidirectional A* over single moves,
+     * one search expands from the start towards the destination and the other from the destination back towards the start, always the one with fewer open points,
+     * until a point of one comes within MEET_DISTANCE of a point of the other, the moves of the backward search are then flown forward from the meeting point,
+     * which ends within a move of the destination, and the first joined path none of whose moves is blocked is taken, so the path is near-optimal rather than optimal
+     * @param from the coordinates the drone starts at
+     * @param to the coordinates of the destination
+     * @return the heading of each move, null if there is no path
+     */
+    public int[] find_path_bidirectional(double[] from, double[] to) {
+        expanded = generated = 0;
+        Drone start = new Drone(from[0], from[1]), goal = new Drone(to[0], to[1]);
+        if (start.closeTo(goal))
+            return new int[0];
+        Frontier forward = new Frontier(start, goal, false), backward = new Frontier(goal, start, true);
+        while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+            Frontier side = forward.open.size() <= backward.open.size() ? forward : backward;
+            Frontier other = side == forward ? backward : forward;
+            Node node = side.open.poll();
+            Integer g = side.best_g.get(key(node.position, true));
+            if (g != null && g < node.g)
+                continue;
+            ++expanded;
+            for (int h = 0; h < HEADINGS; ++h) {
+                int heading = 10 * h;
+                Node successor;
+                if (!side.backward) {
+                    Drone next = node.position.nextPosition(heading);
+                    if (!obstacles.allows(node.position, next))
+                        continue;
+                    successor = new Node(next, node, new int[]{heading}, estimate(next, side.target), heading, true);
+                } else {
+                    // the point the drone moves to the node from at this heading
+                    Drone previous = node.position.nextPosition((heading + 180) % 360);
+                    if (!previous.isConfined() || !obstacles.allows(previous, node.position))
+                        continue;
+                    successor = new Node(previous, node, new int[]{heading}, estimate(previous, side.target), heading, true);
+                }
+                if (!side.add(successor))
+                    continue;
+                ++generated;
+                Node meeting = other.near(successor.position);
+                if (meeting != null) {
+                    int[] joined = side.backward ? join(start, goal, meeting, successor) : join(start, goal, successor, meeting);
+                    // the first path joined is taken, waiting for a shorter one costs far more expansions than it saves moves
+                    if (joined != null)
+                        return joined;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * function to join the path of the forward search to a point with the path of the backward search from a point close to it
+     * @param start the point the drone starts at
+     * @param goal the destination
+     * @param forward the point of the forward search
+     * @param backward the point of the backward search
+     * @return the headings of the moves, null if one of the moves is blocked or the path doesn't end close to the destination
+     */
+    private int[] join(Drone start, Drone goal, Node forward, Node backward) {
+        int[] to_meeting = path(forward);
+        int[] moves = Arrays.copyOf(to_meeting, to_meeting.length + backward.g);
+        int i = to_meeting.length;
+        // the backward search's moves lead from each point to its parent, so they're flown from the meeting point up to the destination
+        for (Node n = backward; n.parent != null; n = n.parent)
+            moves[i++] = n.moves[0];
+        Drone position = start;
+        for (int heading : moves) {
+            Drone next = position.nextPosition(heading);
+            if (!obstacles.allows(position, next))
+                return null;
+            position = next;
+        }
+        return position.closeTo(goal) ? moves : null;
+    }
+
+    /**
+     * class holding one of the two searches of the bidirectional search
+     */
+    private static class Frontier {
+        final PriorityQueue<Node> open = new PriorityQueue<>();
+        // the fewest moves any point of each cell has been reached with, and that point
+        final HashMap<Object, Integer> best_g = new HashMap<>();
+        final HashMap<Object, Node> best_node = new HashMap<>();
+        // the point the search heads for
+        final Drone target;
+        // true for the search from the destination
+        final boolean backward;
+
+        Frontier(Drone origin, Drone target, boolean backward) {
+            this.target = target;
+            this.backward = backward;
+            add(new Node(origin, null, new int[0], estimate(origin, target), -1, true));
+        }
+
+        // adds a point to the open list unless its cell has been reached with as few moves
+        boolean add(Node node) {
+            Object key = key(node.position, true);
+            Integer known = best_g.get(key);
+            if (known != null && known <= node.g)
+                return false;
+            best_g.put(key, node.g);
+            best_node.put(key, node);
+            open.add(node);
+            return true;
+        }
+
+        // the point of this search closest to a position, if it's within half a move of it
+        Node near(Drone position) {
+            long x = (long) Math.floor(position.getLongitude() / MERGE_CELL), y = (long) Math.floor(position.getLatitude() / MERGE_CELL);
+            Node nearest = null;
+            double nearest_distance = MEET_DISTANCE;
+            for (long dx = -1; dx <= 1; ++dx) {
+                for (long dy = -1; dy <= 1; ++dy) {
+                    Node node = best_node.get(((x + dx) << 32) ^ ((y + dy) & 0xffffffffL));
+                    if (node != null && node.position.distanceTo(position) < nearest_distance) {
+                        nearest = node;
+                        nearest_distance = node.position.distanceTo(position);
+                    }
+                }
+            }
+            return nearest;
+        }
+    }
+
+    // the points one move from a point
+    private List<Node> single_successors(Node node, Drone goal) {
+        List<Node> successors = new ArrayList<>(HEADINGS);
+        for (int h = 0; h < HEADINGS; ++h) {
+            Drone next = node.position.nextPosition(10 * h);
+            if (obstacles.allows(node.position, next))
+                successors.add(new Node(next, node, new int[]{10 * h}, estimate(next, goal), 10 * h, true));
+        }
+        return successors;
+    }
+
+    // the jump points reached from a point
+    private List<Node> jump_successors(Node node, Drone goal) {
+        List<Node> successors = new ArrayList<>();
+        int[] straight = fly_straight(node.position, goal);
+        if (straight != null)
+            successors.add(new Node(goal_position(node.position, straight), node, straight, 0, -1, true));
+        for (int h = 0; h < HEADINGS; ++h) {
+            int heading = 10 * h;
+            // away from obstacles, turning back more than 90 degrees is never shorter than having turned earlier
+            if (!node.forced && angle_between(heading, node.heading) > 90)
+                continue;
+            Drone position = node.position, closest = null;
+            int steps = 0, closest_steps = 0;
+            double closest_distance = node.position.distanceTo(goal);
+            boolean blocked = false;
+            while (steps < MAX_JUMP) {
+                Drone next = position.nextPosition(heading);
+                if (!obstacles.allows(position, next)) {
+                    blocked = true;
+                    break;
+                }
+                position = next;
+                ++steps;
+                double distance = position.distanceTo(goal);
+                if (distance < closest_distance) {
+                    closest_distance = distance;
+                    closest = position;
+                    closest_steps = steps;
+                }
+            }
+            if (closest != null)
+                successors.add(new Node(closest, node, repeat(heading, closest_steps), estimate(closest, goal), heading, false));
+            // the point next to the obstacle, where the drone may have to turn to get round it
+            if (blocked && steps > 0 && steps != closest_steps)
+                successors.add(new Node(position, node, repeat(heading, steps), estimate(position, goal), heading, true));
+        }
+        return successors;
+    }
+
+    /**
+     * function to fly straight to the destination the way the drone movement algorithm does when nothing is in the way,
+     * i.e., each move at the multiple of 10 degrees nearest to the direction of the destination
+     * @param from the point the drone starts at
+     * @param goal the destination
+     * @return the headings of the moves, null if the line to the destination or one of the moves is blocked
+     */
+    private int[] fly_straight(Drone from, Drone goal) {
+        if (obstacles.intersects(from.getLongitude(), from.getLatitude(), goal.getLongitude(), goal.getLatitude()))
+            return null;
+        List<Integer> headings = new ArrayList<>();
+        Drone position = from;
+        // the moves needed if every move went straight to the destination, with room for the rounding of the headings
+        int limit = (int) (2 * from.distanceTo(goal) / STEP) + 4;
+        while (!position.closeTo(goal)) {
+            if (headings.size() > limit)
+                return null;
+            double angle = Math.toDegrees(Math.atan2(goal.getLatitude() - position.getLatitude(), goal.getLongitude() - position.getLongitude()));
+            int heading = position.getSuitableAngle(angle);
+            Drone next = position.nextPosition(heading);
+            if (!obstacles.allows(position, next))
+                return null;
+            headings.add(heading);
+            position = next;
+        }
+        int[] moves = new int[headings.size()];
+        for (int i = 0; i < moves.length; ++i)
+            moves[i] = headings.get(i);
+        return moves;
+    }
+
+    // the position reached by a sequence of moves
+    private static Drone goal_position(Drone from, int[] moves) {
+        Drone position = from;
+        for (int heading : moves)
+            position = position.nextPosition(heading);
+        return position;
+    }
+
+    // the fewest moves that can take the drone from a point to within a move of the destination
+    private static double estimate(Drone position, Drone goal) {
+        return Math.max(0, Math.ceil(position.distanceTo(goal) / STEP - 1));
+    }
+
+    // the difference between two headings in degrees, from 0 to 180
+    private static int angle_between(int a, int b) {
+        int difference = Math.abs(a - b) % 360;
+        return difference > 180 ? 360 - difference : difference;
+    }
+
+    // the key of the cell a point is merged in, or of the point itself
+    private static Object key(Drone position, boolean merge) {
+        if (!merge)
+            return new Point2D.Double(position.getLongitude(), position.getLatitude());
+        long x = (long) Math.floor(position.getLongitude() / MERGE_CELL), y = (long) Math.floor(position.getLatitude() / MERGE_CELL);
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    // a heading repeated for the moves of a jump
+    private static int[] repeat(int heading, int count) {
+        int[] moves = new int[count];
+        Arrays.fill(moves, heading);
+        return moves;
+    }
+
+    // the headings of the moves from the start to a point
+    private static int[] path(Node node) {
+        List<int[]> segments = new ArrayList<>();
+        int length = 0;
+        for (Node n = node; n != null; n = n.parent) {
+            segments.add(n.moves);
+            length += n.moves.length;
+        }
+        int[] moves = new int[length];
+        int i = 0;
+        for (int s = segments.size() - 1; s >= 0; --s)
+            for (int heading : segments.get(s))
+                moves[i++] = heading;
+        return moves;
+    }
+
+    /**
+     * main function comparing the jump point search and the bidirectional search with plain A* on every pair of the points in the testing directory,
+     * i.e., Appleton Tower, the pickup locations and the delivery locations
+     * @param args command line arguments, optionally the no-fly zones file (buildings/no-fly-zones.geojson by default),
+     *             the testing directory (testing by default) and the number of rounds (5 by default, the first one warms up the JIT and isn't reported)
+     * @throws IOException if a file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path zones_file = Paths.get(args.length > 0 ? args[0] : "buildings/no-fly-zones.geojson");
+        Path testing = Paths.get(args.length > 1 ? args[1] : "testing");
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        ObstacleIndex obstacles = new ObstacleIndex(WebServer.parse_no_fly_zones(Files.readString(zones_file)));
+        List<double[]> points = new ArrayList<>();
+        for (String name : new String[]{"appleton-tower.geojson", "pickup-locations.geojson", "delivery-locations.geojson"})
+            for (Feature feature : FeatureCollection.fromJson(Files.readString(testing.resolve(name))).features()) {
+                Point point = (Point) feature.geometry();
+                points.add(new double[]{point.longitude(), point.latitude()});
+            }
+        System.out.println(points.size() + " points, " + obstacles.getEdgeCount() + " no-fly zone edges");
+
+        LatticeSearch search = new LatticeSearch(obstacles);
+        for (int round = 0; round < rounds; ++round) {
+            long jump_nanos = 0, naive_nanos = 0, exact_nanos = 0, jump_expanded = 0, naive_expanded = 0, exact_expanded = 0, jump_moves = 0, naive_moves = 0;
+            long bidirectional_nanos = 0, bidirectional_expanded = 0, bidirectional_moves = 0;
+            int pairs = 0, failed = 0, worse = 0, exact_gave_up = 0;
+            for (double[] from : points) {
+                for (double[] to : points) {
+                    if (from == to)
+                        continue;
+                    long start = System.nanoTime();
+                    int[] jump = search.find_path(from, to);
+                    jump_nanos += System.nanoTime() - start;
+                    jump_expanded += search.getExpanded();
+                    start = System.nanoTime();
+                    int[] naive = search.find_path_naive(from, to);
+                    naive_nanos += System.nanoTime() - start;
+                    naive_expanded += search.getExpanded();
+                    start = System.nanoTime();
+                    int[] bidirectional = search.find_path_bidirectional(from, to);
+                    bidirectional_nanos += System.nanoTime() - start;
+                    bidirectional_expanded += search.getExpanded();
+                    // the search on exact positions is only run once, it's too slow to repeat
+                    if (round == rounds - 1) {
+                        start = System.nanoTime();
+                        if (search.find_path_exact(from, to) == null)
+                            ++exact_gave_up;
+                        exact_nanos += System.nanoTime() - start;
+                        exact_expanded += search.getExpanded();
+                    }
+                    if (jump == null || naive == null || bidirectional == null) {
+                        ++failed;
+                        continue;
+                    }
+                    ++pairs;
+                    jump_moves += jump.length;
+                    naive_moves += naive.length;
+                    bidirectional_moves += bidirectional.length;
+                    if (jump.length > naive.length)
+                        ++worse;
+                }
+            }
+            if (round == 0)
+                continue;
+            System.out.printf("round %d: %d pairs (%d without a path), jump points %.2f ms %d expanded %d moves, A* on cells %.2f ms %d expanded %d moves, "
+                            + "%.1fx faster, %d pairs longer, %.2f%% more moves%n",
+                    round, pairs, failed, jump_nanos / 1e6, jump_expanded, jump_moves, naive_nanos / 1e6, naive_expanded, naive_moves,
+                    (double) naive_nanos / jump_nanos, worse, 100.0 * (jump_moves - naive_moves) / naive_moves);
+            System.out.printf("         bidirectional A* %.2f ms %d expanded %d moves, %.1fx faster than A* on cells, %.2f%% more moves%n",
+                    bidirectional_nanos / 1e6, bidirectional_expanded, bidirectional_moves, (double) naive_nanos / bidirectional_nanos,
+                    100.0 * (bidirectional_moves - naive_moves) / naive_moves);
+            if (round == rounds - 1)
+                System.out.printf("A* on exact positions: %.2f ms %d expanded, gave up on %d of %d pairs after %d points, %.0fx the time of the jump point search%n",
+                        exact_nanos / 1e6, exact_expanded, exact_gave_up, pairs + failed, MAX_EXACT_EXPANDED, (double) exact_nanos / jump_nanos);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * flight recorder event for a leg of the drone's journey, i.e., the moves from one destination to the next one
+ */
+@Name("uk.ac.ed.inf.LegPlanned")
+@Label("Leg Planned")
+@Category({"Drone Delivery", "Planner"})
+@Description("Planning of the moves between two destinations of the drone")
+public class LegPlannedEvent extends Event {
+
+    @Label("Order Number")
+    String orderNo;
+
+    @Label("Destination")
+    @Description("Shop, delivery or appleton")
+    String destination;
+
+    @Label("Moves")
+    int moves;
+
+    @Label("Total Moves")
+    @Description("Moves made by the drone at the end of the leg")
+    int totalMoves;
+}
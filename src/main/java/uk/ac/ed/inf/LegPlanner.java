@@ -0,0 +1,17 @@
+package uk.ac.ed.inf;
+
+/**
+ * interface for planning the moves of a leg of the drone's journey, i.e., from where the drone is to a shop, a delivery location or Appleton Tower,
+ * instead of the rotation sweeps of the drone movement algorithm
+ */
+public interface LegPlanner {
+
+    /**
+     * function to plan the moves of a leg
+     * @param from the coordinates the drone starts the leg at
+     * @param to the coordinates of the destination of the leg
+     * @return the heading of each move, the last move ending within a move of the destination,
+     * null to leave the leg to the rotation sweeps of the drone movement algorithm
+     */
+    int[] plan_leg(double[] from, double[] to);
+}
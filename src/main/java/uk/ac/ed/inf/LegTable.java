@@ -0,0 +1,301 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * class for the moves between every pair of the shops and Appleton Tower, planned once for the no-fly zones and shops they were built for,
+ * the legs between these points are flown every day, so they're replayed from the table and only the legs to and from the delivery locations are planned while the day is planned
+ *
+ * the moves of each pair are the shortest of the paths found by the jump point search, A* over single moves and the bidirectional A*,
+ * the table is saved to a file starting with a header of the magic number, the format version, a CRC32C checksum of everything after the header and a fingerprint of the no-fly zones and shops,
+ * followed by the number of points, the coordinates of each point, and for every pair of points the number of moves (-1 if there's no path) and the heading of each move in tens of degrees
+ */
+public class LegTable implements LegPlanner {
+
+    // "DRLT", the first bytes of every leg table file
+    private static final int MAGIC = 0x44524C54;
+
+    // the version of the format, incremented whenever the layout or the way the moves are found changes so older tables are rebuilt
+    public static final int VERSION = 1;
+
+    // the magic number, version, checksum and fingerprint
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    // the coordinates of Appleton Tower, the first point of every table
+    private static final double[] APPLETON_COORDS = {-3.1869, 55.9445};
+
+    private final long fingerprint;
+    // the points, and the headings of the moves from each point to each other point, null if there's no path
+    private final double[][] points;
+    private final int[][][] moves;
+
+    // checks the replayed moves, as a leg doesn't start exactly at the point its moves were planned from
+    private final ObstacleIndex obstacles;
+    // plans the legs that aren't in the table, null for the rotation sweeps
+    private final LegPlanner fallback;
+
+    private LegTable(long fingerprint, double[][] points, int[][][] moves, ObstacleIndex obstacles, LegPlanner fallback) {
+        this.fingerprint = fingerprint;
+        this.points = points;
+        this.moves = moves;
+        this.obstacles = obstacles;
+        this.fallback = fallback;
+    }
+
+    /**
+     * function to plan the moves between every pair of Appleton Tower and the shops
+     * @param no_fly_zones the no-fly zones
+     * @param shops the coordinates of the shops
+     * @param fallback plans the legs that aren't in the table, null for the rotation sweeps
+     * @return the table
+     */
+    public static LegTable build(List<List<List<Double>>> no_fly_zones, List<double[]> shops, LegPlanner fallback) {
+        ObstacleIndex obstacles = new ObstacleIndex(no_fly_zones);
+        LatticeSearch search = new LatticeSearch(obstacles);
+        double[][] points = points(shops);
+        int[][][] moves = new int[points.length][points.length][];
+        for (int i = 0; i < points.length; ++i) {
+            for (int j = 0; j < points.length; ++j) {
+                if (i == j)
+                    continue;
+                int[] best = null;
+                for (int[] path : new int[][]{search.find_path(points[i], points[j]), search.find_path_naive(points[i], points[j]),
+                        search.find_path_bidirectional(points[i], points[j])})
+                    if (path != null && (best == null || path.length < best.length))
+                        best = path;
+                moves[i][j] = best;
+            }
+        }
+        return new LegTable(fingerprint(no_fly_zones, shops), points, moves, obstacles, fallback);
+    }
+
+    /**
+     * function to read a table saved with save
+     * @param file the file
+     * @param no_fly_zones the no-fly zones
+     * @param fallback plans the legs that aren't in the table, null for the rotation sweeps
+     * @return the table
+     * @throws IOException if the file can't be read, has another version or its checksum doesn't match
+     */
+    public static LegTable load(Path file, List<List<List<Double>>> no_fly_zones, LegPlanner fallback) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a leg table");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException(file + " has version " + version + ", expected version " + VERSION);
+        if (buffer.getLong() != checksum(buffer))
+            throw new IOException(file + " is corrupted, its checksum doesn't match");
+        try {
+            long fingerprint = buffer.getLong();
+            double[][] points = new double[buffer.getInt()][];
+            for (int i = 0; i < points.length; ++i)
+                points[i] = new double[]{buffer.getDouble(), buffer.getDouble()};
+            int[][][] moves = new int[points.length][points.length][];
+            for (int i = 0; i < points.length; ++i) {
+                for (int j = 0; j < points.length; ++j) {
+                    if (i == j)
+                        continue;
+                    int count = buffer.getInt();
+                    if (count < 0)
+                        continue;
+                    moves[i][j] = new int[count];
+                    for (int m = 0; m < count; ++m)
+                        moves[i][j][m] = 10 * buffer.get();
+                }
+            }
+            if (buffer.hasRemaining())
+                throw new IOException(file + " is corrupted");
+            return new LegTable(fingerprint, points, moves, new ObstacleIndex(no_fly_zones), fallback);
+        } catch (RuntimeException err) {
+            throw new IOException(file + " is corrupted", err);
+        }
+    }
+
+    /**
+     * function to save the table, it's written to a temporary file first so a table is never left half written
+     * @param file the file
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        int size = HEADER_SIZE + 4 + 16 * points.length;
+        for (int[][] from : moves)
+            for (int[] path : from)
+                size += 4 + (path == null ? 0 : path.length);
+        // the diagonal isn't written
+        size -= 4 * points.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.position(HEADER_SIZE).putInt(points.length);
+        for (double[] point : points)
+            buffer.putDouble(point[0]).putDouble(point[1]);
+        for (int i = 0; i < points.length; ++i) {
+            for (int j = 0; j < points.length; ++j) {
+                if (i == j)
+                    continue;
+                buffer.putInt(moves[i][j] == null ? -1 : moves[i][j].length);
+                if (moves[i][j] != null)
+                    for (int heading : moves[i][j])
+                        buffer.put((byte) (heading / 10));
+            }
+        }
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, checksum(buffer)).putLong(16, fingerprint);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, buffer.array());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * function to get the table named by the system property drone.legtable, the table is rebuilt and saved again
+     * if the file doesn't exist, can't be read, or was built for other no-fly zones or shops
+     * @param no_fly_zones the no-fly zones
+     * @param shops the coordinates of the shops
+     * @param fallback plans the legs that aren't in the table, null for the rotation sweeps
+     * @return the table, null if the property isn't set
+     */
+    public static LegTable from_properties(List<List<List<Double>>> no_fly_zones, List<double[]> shops, LegPlanner fallback) {
+        String file = System.getProperty("drone.legtable");
+        if (file == null)
+            return null;
+        Path path = Paths.get(file);
+        long start = System.nanoTime();
+        if (Files.exists(path)) {
+            try {
+                LegTable table = load(path, no_fly_zones, fallback);
+                if (table.fingerprint == fingerprint(no_fly_zones, shops)) {
+                    Metrics.stage_time("legTable", start);
+                    return table;
+                }
+                System.out.println("Leg table " + file + " was built for other no-fly zones or shops, rebuilding it");
+            } catch (IOException err) {
+                System.err.println("Unable to use the leg table, rebuilding it: " + err.getMessage());
+            }
+        }
+        LegTable table = build(no_fly_zones, shops, fallback);
+        try {
+            table.save(path);
+        } catch (IOException err) {
+            System.err.println("Unable to save the leg table: " + err.getMessage());
+        }
+        Metrics.stage_time("legTable", start);
+        System.out.printf("Leg table of %d points built in %.2f ms%n", table.points.length, (System.nanoTime() - start) / 1e6);
+        return table;
+    }
+
+    /**
+     * function to get a fingerprint of the data a table is built from, a CRC32C of the coordinates of the no-fly zones and the shops
+     * @param no_fly_zones the no-fly zones
+     * @param shops the coordinates of the shops
+     * @return the fingerprint
+     */
+    public static long fingerprint(List<List<List<Double>>> no_fly_zones, List<double[]> shops) {
+        int count = 0;
+        for (List<List<Double>> zone : no_fly_zones)
+            count += 1 + 2 * zone.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8 * (count + 2 * shops.size()) + 8);
+        for (List<List<Double>> zone : no_fly_zones) {
+            // the number of points keeps two zones from hashing like one
+            buffer.putDouble(zone.size());
+            for (List<Double> point : zone)
+                buffer.putDouble(point.get(0)).putDouble(point.get(1));
+        }
+        for (double[] shop : shops)
+            buffer.putDouble(shop[0]).putDouble(shop[1]);
+        buffer.putLong(Double.doubleToLongBits(Drone.DISTANCE_TOLERANCE));
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array());
+        return crc.getValue();
+    }
+
+    // the CRC32C of everything after the header
+    private static long checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(HEADER_SIZE).limit(buffer.capacity()));
+        return crc.getValue();
+    }
+
+    // Appleton Tower followed by the shops
+    private static double[][] points(List<double[]> shops) {
+        double[][] points = new double[shops.size() + 1][];
+        points[0] = APPLETON_COORDS;
+        for (int s = 0; s < shops.size(); ++s)
+            points[s + 1] = shops.get(s);
+        return points;
+    }
+
+    // the point a position is within a move of, -1 if it isn't close to any
+    private int point_near(double[] position) {
+        Drone drone = new Drone(position[0], position[1]);
+        for (int p = 0; p < points.length; ++p)
+            if (drone.closeTo(new Drone(points[p][0], points[p][1])))
+                return p;
+        return -1;
+    }
+
+    // the point at exactly the coordinates of a destination, -1 if there's none
+    private int point_at(double[] destination) {
+        for (int p = 0; p < points.length; ++p)
+            if (points[p][0] == destination[0] && points[p][1] == destination[1])
+                return p;
+        return -1;
+    }
+
+    /**
+     * function to get the number of moves between two points of the table
+     * @param from the coordinates of the start of the leg
+     * @param to the coordinates of the destination of the leg
+     * @return the number of moves, -1 if either point isn't in the table or there's no path between them
+     */
+    public int getMoveCount(double[] from, double[] to) {
+        int i = point_at(from), j = point_at(to);
+        if (i < 0 || j < 0 || i == j || moves[i][j] == null)
+            return -1;
+        return moves[i][j].length;
+    }
+
+    /**
+     * function to replay the moves of a leg between two points of the table, the moves are flown from where the drone is,
+     * which is within a move of the point they were planned from, so they're checked again, if the last move doesn't end close to the destination
+     * the rest of the leg is searched from where it ends, and if a move is blocked the whole leg is searched from where the drone is instead,
+     * the rotation sweeps are left with as little as possible as they can cut through a no-fly zone next to the drone
+     * @param from the coordinates the drone starts the leg at
+     * @param to the coordinates of the destination of the leg
+     * @return the moves, or the moves the fallback plans if the leg isn't in the table
+     */
+    @Override
+    public int[] plan_leg(double[] from, double[] to) {
+        int i = point_near(from), j = point_at(to);
+        if (i < 0 || j < 0 || i == j || moves[i][j] == null)
+            return fallback == null ? null : fallback.plan_leg(from, to);
+        int[] path = moves[i][j];
+        Drone position = new Drone(from[0], from[1]);
+        int m = 0;
+        for (; m < path.length; ++m) {
+            Drone next = position.nextPosition(path[m]);
+            if (!obstacles.allows(position, next))
+                break;
+            position = next;
+        }
+        if (m == path.length) {
+            Metrics.LEG_TABLE_HITS.increment();
+            if (position.closeTo(new Drone(to[0], to[1])))
+                return path;
+            // the last moves are off by as much as the start is, the few moves left are searched from where the replay ends
+            int[] rest = new LatticeSearch(obstacles).find_path(new double[]{position.getLongitude(), position.getLatitude()}, to);
+            if (rest != null) {
+                int[] joined = Arrays.copyOf(path, path.length + rest.length);
+                System.arraycopy(rest, 0, joined, path.length, rest.length);
+                return joined;
+            }
+        }
+        int[] searched = new LatticeSearch(obstacles).find_path(from, to);
+        return searched != null ? searched : Arrays.copyOf(path, m);
+    }
+}
@@ -0,0 +1,273 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.GsonBuilder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * class for counting the work the application does and timing its stages,
+ * the counters can be updated from any thread, dumped as JSON at the end of a run and read over JMX while the application runs
+ */
+public class Metrics implements MetricsMBean {
+
+    // the name the metrics are registered with on the platform MBean server
+    private static final String OBJECT_NAME = "uk.ac.ed.inf:type=Metrics";
+
+    // the number of times a line segment was checked against the no-fly zones, and the number of no-fly zone edges it was tested against
+    public static final LongAdder INTERSECTION_CHECKS = new LongAdder();
+    public static final LongAdder EDGE_TESTS = new LongAdder();
+
+    // the number of rotations tried while searching for a move around a no-fly zone
+    public static final LongAdder ROTATION_SWEEP_ITERATIONS = new LongAdder();
+
+    // the number of times the path back to Appleton Tower was computed
+    public static final LongAdder RETURN_TO_APPLETON_CALLS = new LongAdder();
+
+    // the number of moves the battery allowed or refused from its bounds on the moves back to Appleton Tower, without computing the path back
+    public static final LongAdder RETURN_CHECKS_SKIPPED = new LongAdder();
+
+    // the number of plans the anytime planner made during its local search, and the number of them which were better than the plans before them
+    public static final LongAdder PLANNER_EVALUATIONS = new LongAdder();
+    public static final LongAdder PLANNER_IMPROVEMENTS = new LongAdder();
+
+    // the number of legs planned by a leg planner's search, and the number of points the searches expanded
+    public static final LongAdder LEG_SEARCHES = new LongAdder();
+    public static final LongAdder LEG_SEARCH_EXPANSIONS = new LongAdder();
+
+    // the number of legs replayed from the leg table
+    public static final LongAdder LEG_TABLE_HITS = new LongAdder();
+
+    // the number of orders whose shops are visited in another sequence than their items were read in
+    public static final LongAdder PICKUPS_REORDERED = new LongAdder();
+
+    // the number of orders of the order stream whose delivery has been planned
+    public static final LongAdder ORDERS_STREAMED = new LongAdder();
+
+    // the number of requests sent to the web server, and the number of lookups answered without one
+    public static final LongAdder HTTP_REQUESTS = new LongAdder();
+    public static final LongAdder CACHE_HITS = new LongAdder();
+
+    // the number of statements and metadata queries sent to the database
+    public static final LongAdder DB_ROUND_TRIPS = new LongAdder();
+
+    // the total wall time of each stage in nanoseconds
+    private static final Map<String, LongAdder> STAGE_NANOS = new ConcurrentHashMap<>();
+
+    // the wall clock time in milliseconds the application's main function was entered, 0 if it hasn't been recorded
+    private static volatile long main_start_millis = 0;
+
+    // the requests sent to each endpoint of the web server (words, menus, buildings)
+    private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+    /**
+     * class counting the requests sent to one endpoint of the web server
+     */
+    private static class Endpoint {
+        // attempts sent, attempts that failed or got a status other than 200, attempts that were retried, and requests answered by another thread's attempt
+        final LongAdder requests = new LongAdder(), errors = new LongAdder(), retries = new LongAdder(), coalesced = new LongAdder();
+        // the total and the longest time an attempt took in nanoseconds
+        final LongAdder nanos = new LongAdder();
+        final LongAccumulator max_nanos = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * function to record that the application's main function was entered, so the snapshot can tell the time the JVM took to start up,
+     * the start time of the JVM is only read once the snapshot is taken so the management classes aren't loaded during startup
+     */
+    public static void main_started() {
+        main_start_millis = System.currentTimeMillis();
+    }
+
+    /**
+     * function to add the time a stage took to its total
+     * @param stage the name of the stage
+     * @param start the value of System.nanoTime() when the stage started
+     */
+    public static void stage_time(String stage, long start) {
+        STAGE_NANOS.computeIfAbsent(stage, s -> new LongAdder()).add(System.nanoTime() - start);
+    }
+
+    /**
+     * function to count an attempt of a request to the web server
+     * @param endpoint the endpoint the request was sent to
+     * @param start the value of System.nanoTime() when the attempt was sent
+     * @param failed true if the attempt failed or got a status code other than 200
+     */
+    public static void http_request(String endpoint, long start, boolean failed) {
+        long nanos = System.nanoTime() - start;
+        Endpoint counters = ENDPOINTS.computeIfAbsent(endpoint, e -> new Endpoint());
+        counters.requests.increment();
+        counters.nanos.add(nanos);
+        counters.max_nanos.accumulate(nanos);
+        if (failed)
+            counters.errors.increment();
+    }
+
+    /**
+     * function to count a request to the web server that is sent again after it failed
+     * @param endpoint the endpoint the request was sent to
+     */
+    public static void http_retry(String endpoint) {
+        ENDPOINTS.computeIfAbsent(endpoint, e -> new Endpoint()).retries.increment();
+    }
+
+    /**
+     * function to count a request to the web server answered by the response to the same request sent by another thread
+     * @param endpoint the endpoint the request was for
+     */
+    public static void http_coalesced(String endpoint) {
+        ENDPOINTS.computeIfAbsent(endpoint, e -> new Endpoint()).coalesced.increment();
+    }
+
+    /**
+     * function to get the current value of every counter and the wall time of every stage in milliseconds
+     * @return a map from the name of each metric to its value
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("intersectionChecks", INTERSECTION_CHECKS.sum());
+        snapshot.put("edgeTests", EDGE_TESTS.sum());
+        snapshot.put("rotationSweepIterations", ROTATION_SWEEP_ITERATIONS.sum());
+        snapshot.put("returnToAppletonCalls", RETURN_TO_APPLETON_CALLS.sum());
+        snapshot.put("returnChecksSkipped", RETURN_CHECKS_SKIPPED.sum());
+        snapshot.put("plannerEvaluations", PLANNER_EVALUATIONS.sum());
+        snapshot.put("plannerImprovements", PLANNER_IMPROVEMENTS.sum());
+        snapshot.put("legSearches", LEG_SEARCHES.sum());
+        snapshot.put("legSearchExpansions", LEG_SEARCH_EXPANSIONS.sum());
+        snapshot.put("legTableHits", LEG_TABLE_HITS.sum());
+        snapshot.put("pickupsReordered", PICKUPS_REORDERED.sum());
+        snapshot.put("ordersStreamed", ORDERS_STREAMED.sum());
+        snapshot.put("httpRequests", HTTP_REQUESTS.sum());
+        snapshot.put("cacheHits", CACHE_HITS.sum());
+        snapshot.put("dbRoundTrips", DB_ROUND_TRIPS.sum());
+        // the classes loaded since the JVM started, whether they were parsed from the jars or mapped from a class data sharing archive
+        snapshot.put("classesLoaded", ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+        Map<String, Double> stages = new TreeMap<>();
+        STAGE_NANOS.forEach((stage, nanos) -> stages.put(stage, nanos.sum() / 1e6));
+        // the time from the JVM starting to the main function being entered, with millisecond precision
+        if (main_start_millis != 0)
+            stages.put("jvmStartup", (double) (main_start_millis - ManagementFactory.getRuntimeMXBean().getStartTime()));
+        snapshot.put("stageMillis", stages);
+        Map<String, Map<String, Object>> endpoints = new TreeMap<>();
+        ENDPOINTS.forEach((endpoint, counters) -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            long requests = counters.requests.sum();
+            values.put("requests", requests);
+            values.put("errors", counters.errors.sum());
+            values.put("retries", counters.retries.sum());
+            values.put("coalesced", counters.coalesced.sum());
+            values.put("meanMillis", requests == 0 ? 0 : counters.nanos.sum() / 1e6 / requests);
+            values.put("maxMillis", counters.max_nanos.get() / 1e6);
+            endpoints.put(endpoint, values);
+        });
+        snapshot.put("http", endpoints);
+        return snapshot;
+    }
+
+    /**
+     * function to get the snapshot of the metrics as a JSON string
+     * @return a JSON string
+     */
+    public static String to_json() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(snapshot());
+    }
+
+    /**
+     * function to register the metrics on the platform MBean server so they can be read with JMX clients such as jconsole
+     */
+    public static void register_mbean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName(OBJECT_NAME));
+        } catch (JMException err) {
+            System.err.println("Unable to register the metrics MBean: " + err.getMessage());
+        }
+    }
+
+    @Override
+    public long getIntersectionChecks() {
+        return INTERSECTION_CHECKS.sum();
+    }
+
+    @Override
+    public long getEdgeTests() {
+        return EDGE_TESTS.sum();
+    }
+
+    @Override
+    public long getRotationSweepIterations() {
+        return ROTATION_SWEEP_ITERATIONS.sum();
+    }
+
+    @Override
+    public long getReturnToAppletonCalls() {
+        return RETURN_TO_APPLETON_CALLS.sum();
+    }
+
+    @Override
+    public long getReturnChecksSkipped() {
+        return RETURN_CHECKS_SKIPPED.sum();
+    }
+
+    @Override
+    public long getPlannerEvaluations() {
+        return PLANNER_EVALUATIONS.sum();
+    }
+
+    @Override
+    public long getPlannerImprovements() {
+        return PLANNER_IMPROVEMENTS.sum();
+    }
+
+    @Override
+    public long getLegSearches() {
+        return LEG_SEARCHES.sum();
+    }
+
+    @Override
+    public long getLegSearchExpansions() {
+        return LEG_SEARCH_EXPANSIONS.sum();
+    }
+
+    @Override
+    public long getLegTableHits() {
+        return LEG_TABLE_HITS.sum();
+    }
+
+    @Override
+    public long getPickupsReordered() {
+        return PICKUPS_REORDERED.sum();
+    }
+
+    @Override
+    public long getOrdersStreamed() {
+        return ORDERS_STREAMED.sum();
+    }
+
+    @Override
+    public long getHttpRequests() {
+        return HTTP_REQUESTS.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getDbRoundTrips() {
+        return DB_ROUND_TRIPS.sum();
+    }
+
+    @Override
+    public String getSnapshot() {
+        return to_json();
+    }
+}
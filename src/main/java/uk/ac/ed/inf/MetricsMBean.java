@@ -0,0 +1,43 @@
+package uk.ac.ed.inf;
+
+/**
+ * interface of the management bean exposing the planner's metrics over JMX
+ */
+public interface MetricsMBean {
+
+    long getIntersectionChecks();
+
+    long getEdgeTests();
+
+    long getRotationSweepIterations();
+
+    long getReturnToAppletonCalls();
+
+    long getReturnChecksSkipped();
+
+    long getPlannerEvaluations();
+
+    long getPlannerImprovements();
+
+    long getLegSearches();
+
+    long getLegSearchExpansions();
+
+    long getLegTableHits();
+
+    long getPickupsReordered();
+
+    long getOrdersStreamed();
+
+    long getHttpRequests();
+
+    long getCacheHits();
+
+    long getDbRoundTrips();
+
+    /**
+     * function to get every counter and stage time as a JSON object
+     * @return a JSON string
+     */
+    String getSnapshot();
+}
@@ -0,0 +1,445 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * class for holding the drone's moves as runs of consecutive moves of the same order made at the same angle, most of a day's moves are long straight runs
+ * so a run is stored as its first position, its angle and its number of moves instead of one Flightpath per move,
+ * a move is only added to a run if the drone's next position computed from the end of the run gives exactly the position the move ends at,
+ * so expanding the runs gives back exactly the moves that were added
+ */
+public class MoveRuns {
+
+    // the initial length of the columns, they double in length whenever they are full
+    private static final int INITIAL_CAPACITY = 64;
+
+    // the largest sine of the angle between two moves which are taken to be in the same direction
+    private static final double DIRECTION_TOLERANCE = 1e-6;
+
+    // the order numbers of the runs, the order number of consecutive runs is often the same so it's only stored when it changes
+    private final ArrayList<String> order_nos = new ArrayList<>();
+    // the index in order_nos of the order number of each run
+    private int[] order = new int[INITIAL_CAPACITY];
+    // the position the first move of each run starts at
+    private double[] start_long = new double[INITIAL_CAPACITY], start_lat = new double[INITIAL_CAPACITY];
+    // the angle and number of moves of each run
+    private int[] angle = new int[INITIAL_CAPACITY], length = new int[INITIAL_CAPACITY];
+    // the number of the first move of each run, the moves of run r are first_move[r] to first_move[r + 1] - 1
+    private int[] first_move = new int[INITIAL_CAPACITY + 1];
+    // the ends of the runs made of a single move whose end can't be computed from its start and angle, by run
+    private final RunEnds exact_end = new RunEnds();
+
+    // the position the last run ends at
+    private Drone end;
+
+    private int runs = 0, moves = 0;
+
+    /**
+     * function to make the runs of a list of moves
+     * @param flightPaths the moves in the order they were made
+     * @return the runs holding the moves
+     */
+    public static MoveRuns of(List<Flightpath> flightPaths) {
+        MoveRuns runs = new MoveRuns();
+        for (Flightpath flightpath : flightPaths)
+            runs.add(flightpath);
+        return runs;
+    }
+
+    /**
+     * function to add a move, it extends the last run if it continues it exactly and starts a new run otherwise
+     * @param flightpath the move
+     */
+    public void add(Flightpath flightpath) {
+        double from_long = flightpath.getFromLongitude(), from_lat = flightpath.getFromLatitude();
+        Drone from = new Drone(from_long, from_lat);
+        Drone to = from.nextPosition(flightpath.getAngle());
+        // a move whose end can't be computed from its start and angle can't be part of a run
+        boolean computable = to.getLongitude() == flightpath.getToLongitude() && to.getLatitude() == flightpath.getToLatitude();
+        // a run ending at a stored exact end is a single move, so a move continuing it from there starts a new run
+        boolean exact = exact_end.size() > 0 && exact_end.run(exact_end.size() - 1) == runs - 1;
+        if (runs > 0 && computable && !exact && angle[runs - 1] == flightpath.getAngle() && order_nos.get(order[runs - 1]).equals(flightpath.getOrderNo())
+                && end.getLongitude() == from_long && end.getLatitude() == from_lat)
+            ++length[runs - 1];
+        else {
+            start_run(flightpath.getOrderNo(), from_long, from_lat, flightpath.getAngle(), 1);
+            if (!computable) {
+                // the move is kept as a run of its own that ends where the move says, and no other move is added to it
+                to = new Drone(flightpath.getToLongitude(), flightpath.getToLatitude());
+                exact_end.add(runs - 1, to);
+            }
+        }
+        ++moves;
+        first_move[runs] = moves;
+        end = to;
+    }
+
+    /**
+     * function to add a run as it was stored, e.g. read back from the flightpath_runs table
+     * @param orderNo the order number of the run
+     * @param start_long the longitude the first move of the run starts at
+     * @param start_lat the latitude the first move of the run starts at
+     * @param angle the angle of the moves of the run
+     * @param length the number of moves of the run
+     * @param exact_end the position the run ends at if it's a single move whose end can't be computed from its start and angle, null otherwise
+     */
+    public void add_run(String orderNo, double start_long, double start_lat, int angle, int length, double[] exact_end) {
+        start_run(orderNo, start_long, start_lat, angle, length);
+        moves += length;
+        first_move[runs] = moves;
+        if (exact_end != null)
+            this.exact_end.add(runs - 1, new Drone(exact_end[0], exact_end[1]));
+        double[] last = getEnd(runs - 1);
+        end = new Drone(last[0], last[1]);
+    }
+
+    // appends a run starting at the next move, the number of moves is left to the caller
+    private void start_run(String orderNo, double start_long, double start_lat, int angle, int length) {
+        if (runs == order.length) {
+            int capacity = 2 * runs;
+            order = Arrays.copyOf(order, capacity);
+            this.start_long = Arrays.copyOf(this.start_long, capacity);
+            this.start_lat = Arrays.copyOf(this.start_lat, capacity);
+            this.angle = Arrays.copyOf(this.angle, capacity);
+            this.length = Arrays.copyOf(this.length, capacity);
+            first_move = Arrays.copyOf(first_move, capacity + 1);
+        }
+        if (runs == 0 || !order_nos.get(order[runs - 1]).equals(orderNo))
+            order_nos.add(orderNo);
+        order[runs] = order_nos.size() - 1;
+        this.start_long[runs] = start_long;
+        this.start_lat[runs] = start_lat;
+        this.angle[runs] = angle;
+        this.length[runs] = length;
+        first_move[runs] = moves;
+        ++runs;
+    }
+
+    public int getRunCount() {
+        return runs;
+    }
+
+    public int getMoveCount() {
+        return moves;
+    }
+
+    public String getOrderNo(int run) {
+        return order_nos.get(order[run]);
+    }
+
+    public int getAngle(int run) {
+        return angle[run];
+    }
+
+    public int getLength(int run) {
+        return length[run];
+    }
+
+    public int getFirstMove(int run) {
+        return first_move[run];
+    }
+
+    /**
+     * function to get the position the first move of a run starts at
+     * @param run the index of the run
+     * @return the longitude and latitude
+     */
+    public double[] getStart(int run) {
+        return new double[]{start_long[run], start_lat[run]};
+    }
+
+    /**
+     * function to get the end of a run stored because it can't be computed from the run's start and angle
+     * @param run the index of the run
+     * @return the longitude and latitude, null if the end is computed
+     */
+    public double[] getExactEnd(int run) {
+        Drone position = exact_end.get(run);
+        return position == null ? null : new double[]{position.getLongitude(), position.getLatitude()};
+    }
+
+    /**
+     * function to get the position the last move of a run ends at
+     * @param run the index of the run
+     * @return the longitude and latitude
+     */
+    public double[] getEnd(int run) {
+        Drone position = exact_end.get(run);
+        if (position == null) {
+            position = new Drone(start_long[run], start_lat[run]);
+            for (int m = 0; m < length[run]; ++m)
+                position = position.nextPosition(angle[run]);
+        }
+        return new double[]{position.getLongitude(), position.getLatitude()};
+    }
+
+    /**
+     * function to get the positions of a LineString of the moves with the collinear points dropped,
+     * the position the first run starts at followed by the positions where the drone turns and the position the last run ends at,
+     * the runs the drone hovers in add no positions
+     * @return the positions
+     */
+    public List<double[]> getTurningPoints() {
+        List<double[]> points = new ArrayList<>(runs + 1);
+        if (runs == 0)
+            return points;
+        points.add(getStart(0));
+        for (int r = 0; r < runs; ++r) {
+            double[] point = getEnd(r);
+            double[] last = points.get(points.size() - 1);
+            if (point[0] == last[0] && point[1] == last[1])
+                continue;
+            // consecutive runs of different orders can be in the same direction
+            if (points.size() > 1 && continues_run(points.get(points.size() - 2), last, point))
+                points.set(points.size() - 1, point);
+            else
+                points.add(point);
+        }
+        return points;
+    }
+
+    /**
+     * function to check if a move from a position continues a straight run, the rounding of the positions of a run makes its moves differ in direction
+     * by far less than the tolerance while moves at different angles differ by at least 10 degrees
+     * @param from the position the run starts at
+     * @param to the position the run ends at
+     * @param next the position the drone moves to next
+     * @return true if the drone moves on in the direction of the run
+     */
+    public static boolean continues_run(double[] from, double[] to, double[] next) {
+        double run_long = to[0] - from[0], run_lat = to[1] - from[1];
+        double move_long = next[0] - to[0], move_lat = next[1] - to[1];
+        double cross = run_long * move_lat - run_lat * move_long;
+        double dot = run_long * move_long + run_lat * move_lat;
+        return dot > 0 && Math.abs(cross) <= DIRECTION_TOLERANCE * Math.hypot(run_long, run_lat) * Math.hypot(move_long, move_lat);
+    }
+
+    /**
+     * function to get a read-only list of the moves, the Flightpath objects are made when they are read,
+     * reading the list in order with its iterator takes constant time per move, reading a move by index takes time proportional to the length of its run
+     * @return a list view of the moves
+     */
+    public List<Flightpath> as_list() {
+        return new MoveList();
+    }
+
+    /**
+     * function to get the size of the runs written with write
+     * @return the number of bytes
+     */
+    public int getEncodedSize() {
+        int size = 4 + 4 + 4;
+        for (String order_no : order_nos)
+            size += 2 + order_no.getBytes(StandardCharsets.UTF_8).length;
+        return size + runs * (4 + 8 + 8 + 4 + 4) + exact_end.size() * (4 + 8 + 8);
+    }
+
+    /**
+     * function to write the runs to a buffer: the numbers of order numbers, runs and exactly stored ends, the order numbers,
+     * the order number, start, angle and length of each run, and the run and end of each exactly stored end
+     * @param buffer the buffer with at least getEncodedSize bytes remaining
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(order_nos.size()).putInt(runs).putInt(exact_end.size());
+        for (String order_no : order_nos) {
+            byte[] bytes = order_no.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        for (int r = 0; r < runs; ++r)
+            buffer.putInt(order[r]).putDouble(start_long[r]).putDouble(start_lat[r]).putInt(angle[r]).putInt(length[r]);
+        for (int e = 0; e < exact_end.size(); ++e)
+            buffer.putInt(exact_end.run(e)).putDouble(exact_end.position(e).getLongitude()).putDouble(exact_end.position(e).getLatitude());
+    }
+
+    /**
+     * function to read runs written with write
+     * @param buffer the buffer positioned at the runs
+     * @return the runs
+     */
+    public static MoveRuns read(ByteBuffer buffer) {
+        MoveRuns runs = new MoveRuns();
+        int order_count = buffer.getInt(), run_count = buffer.getInt(), end_count = buffer.getInt();
+        for (int o = 0; o < order_count; ++o) {
+            byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            runs.order_nos.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        runs.order = new int[run_count];
+        runs.start_long = new double[run_count];
+        runs.start_lat = new double[run_count];
+        runs.angle = new int[run_count];
+        runs.length = new int[run_count];
+        runs.first_move = new int[run_count + 1];
+        for (int r = 0; r < run_count; ++r) {
+            runs.order[r] = buffer.getInt();
+            runs.start_long[r] = buffer.getDouble();
+            runs.start_lat[r] = buffer.getDouble();
+            runs.angle[r] = buffer.getInt();
+            runs.length[r] = buffer.getInt();
+            runs.first_move[r] = runs.moves;
+            runs.moves += runs.length[r];
+        }
+        runs.first_move[run_count] = runs.moves;
+        runs.runs = run_count;
+        for (int e = 0; e < end_count; ++e)
+            runs.exact_end.add(buffer.getInt(), new Drone(buffer.getDouble(), buffer.getDouble()));
+        if (run_count > 0) {
+            double[] last = runs.getEnd(run_count - 1);
+            runs.end = new Drone(last[0], last[1]);
+        }
+        return runs;
+    }
+
+    /**
+     * main function checking that the runs of each logged day in a range give back exactly the day's moves,
+     * and printing the number of runs, the size of the encoded runs and the number of positions of the compact LineString
+     * @param args command line arguments including the directory of the flight log, the first date (YYYY-MM-DD) and optionally the last date
+     * @throws IOException if a segment can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args[0]);
+        LocalDate from = LocalDate.parse(args[1]);
+        LocalDate to = args.length > 2 ? LocalDate.parse(args[2]) : from;
+        long log_bytes = 0, run_bytes = 0;
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            ByteBuffer segment = FlightLog.map(dir, date);
+            if (segment == null)
+                continue;
+            List<Flightpath> moves = new ArrayList<>();
+            for (int r = 0; r < FlightLog.record_count(segment); ++r)
+                moves.add(FlightLog.read(segment, r));
+
+            long start = System.nanoTime();
+            MoveRuns runs = of(moves);
+            ByteBuffer encoded = ByteBuffer.allocate(runs.getEncodedSize());
+            runs.write(encoded);
+            long encode_nanos = System.nanoTime() - start;
+            List<Flightpath> expanded = read(encoded.flip()).as_list();
+
+            int mismatches = 0;
+            Iterator<Flightpath> move = moves.iterator();
+            for (Flightpath flightpath : expanded)
+                if (!same_move(move.next(), flightpath))
+                    ++mismatches;
+            if (expanded.size() != moves.size() || mismatches > 0)
+                System.err.println(date + ": " + mismatches + " of " + moves.size() + " moves differ after expanding the runs");
+            System.out.printf("%s: %d moves in %d runs, %d bytes of runs for %d bytes of log, %d LineString positions, encoded in %.2f ms%n",
+                    date, moves.size(), runs.getRunCount(), encoded.limit(), segment.limit(), runs.getTurningPoints().size(), encode_nanos / 1e6);
+            log_bytes += segment.limit();
+            run_bytes += encoded.limit();
+        }
+        if (log_bytes > 0)
+            System.out.printf("runs take %.1f%% of the log%n", 100.0 * run_bytes / log_bytes);
+    }
+
+    // checks that two moves have the same order number, angle and coordinates
+    private static boolean same_move(Flightpath a, Flightpath b) {
+        return a.getOrderNo().equals(b.getOrderNo()) && a.getAngle() == b.getAngle()
+                && a.getFromLongitude().equals(b.getFromLongitude()) && a.getFromLatitude().equals(b.getFromLatitude())
+                && a.getToLongitude().equals(b.getToLongitude()) && a.getToLatitude().equals(b.getToLatitude());
+    }
+
+    // the index of the run holding a move
+    private int run_of(int move) {
+        int r = Arrays.binarySearch(first_move, 0, runs + 1, move);
+        // for a move in the middle of a run the search returns the insertion point, which is after the run
+        return r >= 0 ? r : -r - 2;
+    }
+
+    // makes the Flightpath of a move of a run which starts at the given position
+    private Flightpath move(int run, Drone from) {
+        Drone to = exact_end.get(run);
+        if (to == null)
+            to = from.nextPosition(angle[run]);
+        return new Flightpath(getOrderNo(run), from.getLongitude(), from.getLatitude(), angle[run], to.getLongitude(), to.getLatitude());
+    }
+
+    // the list view of the moves returned by as_list
+    private class MoveList extends AbstractList<Flightpath> implements RandomAccess {
+        @Override
+        public Flightpath get(int index) {
+            if (index < 0 || index >= moves)
+                throw new IndexOutOfBoundsException("Move " + index + " of " + moves);
+            int run = run_of(index);
+            Drone from = new Drone(start_long[run], start_lat[run]);
+            for (int m = first_move[run]; m < index; ++m)
+                from = from.nextPosition(angle[run]);
+            return move(run, from);
+        }
+
+        @Override
+        public int size() {
+            return moves;
+        }
+
+        @Override
+        public Iterator<Flightpath> iterator() {
+            return new Iterator<>() {
+                private int run = 0, move = 0;
+                private Drone from = runs == 0 ? null : new Drone(start_long[0], start_lat[0]);
+
+                @Override
+                public boolean hasNext() {
+                    return move < moves;
+                }
+
+                @Override
+                public Flightpath next() {
+                    if (move >= moves)
+                        throw new NoSuchElementException();
+                    if (move == first_move[run + 1]) {
+                        ++run;
+                        from = new Drone(start_long[run], start_lat[run]);
+                    }
+                    Flightpath flightpath = move(run, from);
+                    from = from.nextPosition(angle[run]);
+                    ++move;
+                    return flightpath;
+                }
+            };
+        }
+    }
+
+    /**
+     * class holding the exactly stored ends of runs, in order of run
+     */
+    private static class RunEnds {
+        private final ArrayList<Integer> runs = new ArrayList<>();
+        private final ArrayList<Drone> positions = new ArrayList<>();
+
+        void add(int run, Drone position) {
+            runs.add(run);
+            positions.add(position);
+        }
+
+        Drone get(int run) {
+            int e = Collections.binarySearch(runs, run);
+            return e < 0 ? null : positions.get(e);
+        }
+
+        int size() {
+            return runs.size();
+        }
+
+        int run(int e) {
+            return runs.get(e);
+        }
+
+        Drone position(int e) {
+            return positions.get(e);
+        }
+    }
+}
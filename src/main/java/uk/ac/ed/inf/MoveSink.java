@@ -0,0 +1,29 @@
+package uk.ac.ed.inf;
+
+/**
+ * interface for receiving the output of the drone movement algorithm while it is being planned, i.e.,
+ * the positions the drone moves to, the details of every move it makes and the deliveries it completes
+ */
+public interface MoveSink {
+
+    /**
+     * function to receive a position the drone has moved to
+     * @param position the (Longitude, Latitude) coordinate of the drone
+     * @throws InterruptedException if the thread is interrupted while waiting for the position to be accepted
+     */
+    void publish_position(double[] position) throws InterruptedException;
+
+    /**
+     * function to receive the details of a move the drone has made
+     * @param flightpath a Flightpath object representing the move
+     * @throws InterruptedException if the thread is interrupted while waiting for the move to be accepted
+     */
+    void publish_flightpath(Flightpath flightpath) throws InterruptedException;
+
+    /**
+     * function to receive a delivery the drone has completed
+     * @param delivery a Deliveries object representing the delivery
+     * @throws InterruptedException if the thread is interrupted while waiting for the delivery to be accepted
+     */
+    void publish_delivery(Deliveries delivery) throws InterruptedException;
+}
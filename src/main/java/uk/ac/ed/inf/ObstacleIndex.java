@@ -0,0 +1,160 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * class for checking line segments against the edges of the no-fly zones without testing every edge,
+ * the edges are packed into one array of coordinates and a uniform grid over the no-fly zones lists the edges passing through each cell,
+ * so a segment is only tested against the edges of the cells its bounding box covers
+ *
+ * the edges are the same ones Drone.check_intersection_no_fly_zone tests, i.e., each point of a zone to the next and the last point to the first,
+ * and they're tested with the same Line2D test, so both give the same answer for every segment
+ */
+public class ObstacleIndex {
+
+    // the default length of the sides of a cell, about 4 moves of the drone
+    public static final double DEFAULT_CELL_SIZE = 0.0006;
+
+    // the coordinates of the edges, edge e is from (edges[4e], edges[4e + 1]) to (edges[4e + 2], edges[4e + 3])
+    private final double[] edges;
+    // the bounds of the grid and the length of the sides of its cells
+    private final double min_long, min_lat, cell_size;
+    private final int columns, rows;
+    // the edges of each cell, the edges of cell c are cell_edges[cell_start[c]] to cell_edges[cell_start[c + 1] - 1]
+    private final int[] cell_start, cell_edges;
+
+    /**
+     * constructor of the class building the index with cells of the default size
+     * @param no_fly_zones the no-fly zones
+     */
+    public ObstacleIndex(List<List<List<Double>>> no_fly_zones) {
+        this(no_fly_zones, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * constructor of the class building the index
+     * @param no_fly_zones the no-fly zones
+     * @param cell_size the length of the sides of a cell in degrees
+     */
+    public ObstacleIndex(List<List<List<Double>>> no_fly_zones, double cell_size) {
+        int count = 0;
+        for (List<List<Double>> zone : no_fly_zones)
+            count += zone.size();
+        edges = new double[4 * count];
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        int e = 0;
+        for (List<List<Double>> zone : no_fly_zones) {
+            for (int i = 0; i < zone.size(); ++i) {
+                List<Double> from = zone.get(i), to = zone.get(i == zone.size() - 1 ? 0 : i + 1);
+                edges[4 * e] = from.get(0);
+                edges[4 * e + 1] = from.get(1);
+                edges[4 * e + 2] = to.get(0);
+                edges[4 * e + 3] = to.get(1);
+                bounds[0] = Math.min(bounds[0], from.get(0));
+                bounds[1] = Math.min(bounds[1], from.get(1));
+                bounds[2] = Math.max(bounds[2], from.get(0));
+                bounds[3] = Math.max(bounds[3], from.get(1));
+                ++e;
+            }
+        }
+        this.cell_size = cell_size;
+        if (count == 0) {
+            min_long = min_lat = 0;
+            columns = rows = 0;
+            cell_start = new int[1];
+            cell_edges = new int[0];
+            return;
+        }
+        min_long = bounds[0];
+        min_lat = bounds[1];
+        columns = (int) ((bounds[2] - min_long) / cell_size) + 1;
+        rows = (int) ((bounds[3] - min_lat) / cell_size) + 1;
+
+        // counts the edges of each cell, then fills the cells in a second pass so the lists are packed into one array
+        int[] cell_count = new int[columns * rows];
+        for (e = 0; e < count; ++e)
+            for (int cell : cells_of(e))
+                ++cell_count[cell];
+        cell_start = new int[columns * rows + 1];
+        for (int c = 0; c < columns * rows; ++c)
+            cell_start[c + 1] = cell_start[c] + cell_count[c];
+        cell_edges = new int[cell_start[columns * rows]];
+        int[] filled = Arrays.copyOf(cell_start, columns * rows);
+        for (e = 0; e < count; ++e)
+            for (int cell : cells_of(e))
+                cell_edges[filled[cell]++] = e;
+    }
+
+    // the cells covered by the bounding box of an edge
+    private int[] cells_of(int e) {
+        int first_column = column(Math.min(edges[4 * e], edges[4 * e + 2])), last_column = column(Math.max(edges[4 * e], edges[4 * e + 2]));
+        int first_row = row(Math.min(edges[4 * e + 1], edges[4 * e + 3])), last_row = row(Math.max(edges[4 * e + 1], edges[4 * e + 3]));
+        int[] cells = new int[(last_column - first_column + 1) * (last_row - first_row + 1)];
+        int i = 0;
+        for (int r = first_row; r <= last_row; ++r)
+            for (int c = first_column; c <= last_column; ++c)
+                cells[i++] = r * columns + c;
+        return cells;
+    }
+
+    // the column of a longitude, clamped to the grid
+    private int column(double longitude) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((longitude - min_long) / cell_size)));
+    }
+
+    // the row of a latitude, clamped to the grid
+    private int row(double latitude) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((latitude - min_lat) / cell_size)));
+    }
+
+    /**
+     * function to get the number of edges of the no-fly zones
+     * @return the number of edges
+     */
+    public int getEdgeCount() {
+        return edges.length / 4;
+    }
+
+    /**
+     * function to check if a line segment intersects with any of the no-fly zones,
+     * an edge passing through several cells of the segment's bounding box can be tested more than once
+     * @param x1 the longitude of the start of the segment
+     * @param y1 the latitude of the start of the segment
+     * @param x2 the longitude of the end of the segment
+     * @param y2 the latitude of the end of the segment
+     * @return true if the segment intersects with an edge of a no-fly zone
+     */
+    public boolean intersects(double x1, double y1, double x2, double y2) {
+        if (columns == 0)
+            return false;
+        double max_long = min_long + columns * cell_size, max_lat = min_lat + rows * cell_size;
+        // a segment outside the grid can't touch an edge
+        if (Math.max(x1, x2) < min_long || Math.min(x1, x2) > max_long || Math.max(y1, y2) < min_lat || Math.min(y1, y2) > max_lat)
+            return false;
+        int first_column = column(Math.min(x1, x2)), last_column = column(Math.max(x1, x2));
+        int first_row = row(Math.min(y1, y2)), last_row = row(Math.max(y1, y2));
+        for (int r = first_row; r <= last_row; ++r) {
+            for (int c = first_column; c <= last_column; ++c) {
+                int cell = r * columns + c;
+                for (int i = cell_start[cell]; i < cell_start[cell + 1]; ++i) {
+                    int e = 4 * cell_edges[i];
+                    if (Line2D.linesIntersect(x1, y1, x2, y2, edges[e], edges[e + 1], edges[e + 2], edges[e + 3]))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * function to check if the drone can make a move, i.e., the move doesn't cross a no-fly zone and ends inside the confinement area
+     * @param from the position before the move
+     * @param to the position after the move
+     * @return true if the move is allowed
+     */
+    public boolean allows(Drone from, Drone to) {
+        return to.isConfined() && !intersects(from.getLongitude(), from.getLatitude(), to.getLongitude(), to.getLatitude());
+    }
+}
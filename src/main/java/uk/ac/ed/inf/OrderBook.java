@@ -0,0 +1,250 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Point2D;
+import java.sql.Date;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * class for holding a large number of orders compactly, in columns of primitive values instead of one Orders object per item,
+ * every distinct string (order number, customer, What3Words, item), date and location is stored once and referred to by its index,
+ * and the items of an order are stored next to each other so an order is represented by an offset into the item columns
+ */
+public class OrderBook {
+
+    // the initial length of the columns, they double in length whenever they are full
+    private static final int INITIAL_CAPACITY = 64;
+
+    // the dictionary of distinct strings, and the index of each string in it
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> string_ids = new HashMap<>();
+
+    // the dictionary of distinct delivery dates
+    private final ArrayList<Date> dates = new ArrayList<>();
+    private final HashMap<Date, Integer> date_ids = new HashMap<>();
+
+    // the dictionary of distinct locations (shops and delivery locations), stored as longitude and latitude columns
+    private double[] location_long = new double[INITIAL_CAPACITY], location_lat = new double[INITIAL_CAPACITY];
+    // one coordinate array per location, shared by every Orders object the list view hands out for that location
+    private final ArrayList<double[]> location_coords = new ArrayList<>();
+    private final HashMap<Point2D.Double, Integer> location_ids = new HashMap<>();
+
+    // the order columns, one entry per order
+    private int[] order_no = new int[INITIAL_CAPACITY], customer = new int[INITIAL_CAPACITY], deliver_to = new int[INITIAL_CAPACITY];
+    private int[] deliver_to_location = new int[INITIAL_CAPACITY], delivery_date = new int[INITIAL_CAPACITY];
+    // the index of the first item of each order, the items of order o are item_start[o] to item_start[o + 1] - 1
+    private int[] item_start = new int[INITIAL_CAPACITY + 1];
+
+    // the item columns, one entry per item
+    private int[] item = new int[INITIAL_CAPACITY], shop_location = new int[INITIAL_CAPACITY], item_price = new int[INITIAL_CAPACITY];
+    // the order each item belongs to
+    private int[] item_order = new int[INITIAL_CAPACITY];
+
+    private int orders = 0, items = 0;
+
+    /**
+     * function to make an OrderBook holding the given orders, items of the same order have to be next to each other in the list
+     * @param orders a list of orders placed
+     * @return an OrderBook holding the orders in the same order
+     */
+    public static OrderBook of(List<Orders> orders) {
+        OrderBook book = new OrderBook();
+        for (Orders order : orders)
+            book.add(order.getOrderNo(), order.getDeliveryDate(), order.getCustomer(), order.getDeliverTo(), order.getItem(),
+                    order.getDeliverToCoords(), order.getShopCoords(), order.getItemPrice());
+        return book;
+    }
+
+    /**
+     * function to add an item of an order, the item starts a new order unless it has the same order number as the item added before it
+     * @param orderNo the order number
+     * @param deliveryDate the date the order was placed on
+     * @param customer the student ID
+     * @param deliverTo the What3Words location to deliver to
+     * @param item the food item
+     * @param deliverToCoords the coordinates of the delivery location
+     * @param shopCoords the coordinates of the shop
+     * @param itemPrice the price of the food item
+     */
+    public void add(String orderNo, Date deliveryDate, String customer, String deliverTo, String item, double[] deliverToCoords, double[] shopCoords, int itemPrice) {
+        int order_id = string_id(orderNo);
+        if (orders == 0 || this.order_no[orders - 1] != order_id) {
+            if (orders == this.order_no.length) {
+                int capacity = 2 * orders;
+                this.order_no = Arrays.copyOf(this.order_no, capacity);
+                this.customer = Arrays.copyOf(this.customer, capacity);
+                this.deliver_to = Arrays.copyOf(this.deliver_to, capacity);
+                this.deliver_to_location = Arrays.copyOf(this.deliver_to_location, capacity);
+                this.delivery_date = Arrays.copyOf(this.delivery_date, capacity);
+                this.item_start = Arrays.copyOf(this.item_start, capacity + 1);
+            }
+            this.order_no[orders] = order_id;
+            this.customer[orders] = string_id(customer);
+            this.deliver_to[orders] = string_id(deliverTo);
+            this.deliver_to_location[orders] = location_id(deliverToCoords);
+            this.delivery_date[orders] = date_id(deliveryDate);
+            this.item_start[orders] = items;
+            ++orders;
+        }
+        if (items == this.item.length) {
+            int capacity = 2 * items;
+            this.item = Arrays.copyOf(this.item, capacity);
+            this.shop_location = Arrays.copyOf(this.shop_location, capacity);
+            this.item_price = Arrays.copyOf(this.item_price, capacity);
+            this.item_order = Arrays.copyOf(this.item_order, capacity);
+        }
+        this.item[items] = string_id(item);
+        this.shop_location[items] = location_id(shopCoords);
+        this.item_price[items] = itemPrice;
+        this.item_order[items] = orders - 1;
+        ++items;
+        this.item_start[orders] = items;
+    }
+
+    // returns the index of a string in the dictionary, adding it if it's not there yet
+    private int string_id(String string) {
+        Integer id = string_ids.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            string_ids.put(string, id);
+        }
+        return id;
+    }
+
+    // returns the index of a date in the dictionary, adding it if it's not there yet
+    private int date_id(Date date) {
+        Integer id = date_ids.get(date);
+        if (id == null) {
+            id = dates.size();
+            dates.add(date);
+            date_ids.put(date, id);
+        }
+        return id;
+    }
+
+    // returns the index of a location in the dictionary, adding it if it's not there yet
+    private int location_id(double[] coords) {
+        Point2D.Double key = new Point2D.Double(coords[0], coords[1]);
+        Integer id = location_ids.get(key);
+        if (id == null) {
+            id = location_coords.size();
+            if (id == location_long.length) {
+                location_long = Arrays.copyOf(location_long, 2 * id);
+                location_lat = Arrays.copyOf(location_lat, 2 * id);
+            }
+            location_long[id] = coords[0];
+            location_lat[id] = coords[1];
+            location_coords.add(new double[]{coords[0], coords[1]});
+            location_ids.put(key, id);
+        }
+        return id;
+    }
+
+    public int getOrderCount() {
+        return orders;
+    }
+
+    public int getItemCount() {
+        return items;
+    }
+
+    public int getLocationCount() {
+        return location_coords.size();
+    }
+
+    public int getItemStart(int order) {
+        return item_start[order];
+    }
+
+    public int getItemEnd(int order) {
+        return item_start[order + 1];
+    }
+
+    public String getOrderNo(int order) {
+        return strings.get(order_no[order]);
+    }
+
+    public String getCustomer(int order) {
+        return strings.get(customer[order]);
+    }
+
+    public String getDeliverTo(int order) {
+        return strings.get(deliver_to[order]);
+    }
+
+    public Date getDeliveryDate(int order) {
+        return dates.get(delivery_date[order]);
+    }
+
+    public int getDeliverToLocation(int order) {
+        return deliver_to_location[order];
+    }
+
+    public int getItemOrder(int item) {
+        return item_order[item];
+    }
+
+    public String getItem(int item) {
+        return strings.get(this.item[item]);
+    }
+
+    public int getItemPrice(int item) {
+        return item_price[item];
+    }
+
+    public int getShopLocation(int item) {
+        return shop_location[item];
+    }
+
+    public double getLongitude(int location) {
+        return location_long[location];
+    }
+
+    public double getLatitude(int location) {
+        return location_lat[location];
+    }
+
+    /**
+     * function to get the total price of the items of an order
+     * @param order the index of the order
+     * @return the sum of the item prices of the order
+     */
+    public int getOrderPrice(int order) {
+        int price = 0;
+        for (int i = item_start[order]; i < item_start[order + 1]; ++i)
+            price += item_price[i];
+        return price;
+    }
+
+    /**
+     * function to get a read-only list of the items as Orders objects, one per item just like the list returned by getOrdersTable,
+     * the objects are made when they are read and share their strings and coordinate arrays with the OrderBook,
+     * so the list can be passed to the drone movement algorithm without keeping an object per item alive
+     * @return a list view of the items
+     */
+    public List<Orders> as_list() {
+        return new ItemList();
+    }
+
+    // the list view of the items returned by as_list
+    private class ItemList extends AbstractList<Orders> implements RandomAccess {
+        @Override
+        public Orders get(int index) {
+            if (index < 0 || index >= items)
+                throw new IndexOutOfBoundsException("Item " + index + " of " + items);
+            int order = item_order[index];
+            return new Orders(getOrderNo(order), getDeliveryDate(order), getCustomer(order), getDeliverTo(order), getItem(index),
+                    location_coords.get(deliver_to_location[order]), location_coords.get(shop_location[index]), item_price[index]);
+        }
+
+        @Override
+        public int size() {
+            return items;
+        }
+    }
+}
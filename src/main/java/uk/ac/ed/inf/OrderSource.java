@@ -0,0 +1,42 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * interface for a stream of orders placed during the day, polled by the StreamDispatcher,
+ * each poll returns the orders that have arrived since the last one, one Orders object per item like the rows of getOrdersTable
+ */
+public interface OrderSource extends AutoCloseable {
+
+    /**
+     * function to get the orders that arrived since the last poll, the coordinates and prices of the orders are not set
+     * @return the items of the new orders, the items of an order next to each other, empty if no order arrived
+     * @throws SQLException if there's an error accessing the database
+     * @throws IOException if there's an error reading the stream
+     */
+    List<Orders> poll() throws SQLException, IOException;
+
+    @Override
+    void close() throws SQLException, IOException;
+
+    /**
+     * function to make a source from the system property drone.stream, jsonl:&lt;file&gt; to tail a JSONL file or db to poll the orders table
+     * @param database the database the orders table is polled from
+     * @param date the delivery date of the orders
+     * @return the source, null if drone.stream isn't set and the orders of the day are read at once
+     */
+    static OrderSource from_properties(Database database, Date date) {
+        String stream = System.getProperty("drone.stream");
+        if (stream == null)
+            return null;
+        if (stream.startsWith("jsonl:"))
+            return new JsonlOrderSource(Paths.get(stream.substring("jsonl:".length())), date);
+        if (stream.equals("db"))
+            return new DatabaseOrderSource(database, date);
+        throw new IllegalArgumentException("Unknown order stream " + stream + ", expected jsonl:<file> or db");
+    }
+}
@@ -0,0 +1,114 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * class for loading the orders of a range of dates with a single query,
+ * the rows are streamed in order of delivery date and the orders of each date are handed over as soon as all of its rows have been read,
+ * so only one day of orders is held in memory at a time, and it's handed over as an OrderBook so it's held in columns while it's planned
+ */
+public class OrdersLoader {
+
+    // statement to get the orders placed between two dates, ordered by date so the rows of one date arrive together
+    private static final String ORDERS_RANGE_QUERY =
+            "select o1.orderNo, o1.deliveryDate, o1.customer, o1.deliverTo, o2.item from orders o1, orderDetails o2 " +
+                    "where o1.deliveryDate between ? and ? and o1.orderNo = o2.orderNo order by o1.deliveryDate, o1.orderNo";
+
+    // the number of rows fetched from the database in one round trip
+    private static final int FETCH_SIZE = 200;
+
+    /**
+     * interface for receiving the orders of one date
+     */
+    public interface DayHandler {
+        /**
+         * function to receive the orders of one date
+         * @param date the delivery date
+         * @param orders the orders placed on the date, resolved and sorted like the ones returned by getOrdersTable, its list view is read by the drone movement algorithm
+         * @throws SQLException if there's an error accessing the database
+         * @throws IOException if there's an error writing the output of the date
+         * @throws InterruptedException if the thread is interrupted while handling the orders
+         */
+        void handle(Date date, OrderBook orders) throws SQLException, IOException, InterruptedException;
+    }
+
+    private final Database database;
+
+    /**
+     * constructor of the class
+     * @param database the database the orders are read from, also used to resolve the locations of each date
+     */
+    public OrdersLoader(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * function to read the orders placed between two dates and hand over the orders of each date in turn
+     * @param from the first date of the range (YYYY-MM-DD)
+     * @param to the last date of the range (YYYY-MM-DD)
+     * @param handler the handler receiving the orders of each date
+     * @return the number of dates that had orders
+     * @throws SQLException if there's an error accessing the database
+     * @throws IOException if the handler fails to write the output of a date
+     * @throws InterruptedException if the thread is interrupted while the handler runs
+     */
+    public int load(String from, String to, DayHandler handler) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        // the time spent in the handler, which is not part of the query time reported
+        long handling = 0;
+        int rows = 0, dates = 0;
+        // the rows are streamed on a connection of their own
+        try (Connection conn = DriverManager.getConnection(database.getJdbcString());
+             PreparedStatement psRangeQuery = conn.prepareStatement(ORDERS_RANGE_QUERY)) {
+            psRangeQuery.setDate(1, Date.valueOf(from));
+            psRangeQuery.setDate(2, Date.valueOf(to));
+            psRangeQuery.setFetchSize(FETCH_SIZE);
+            Metrics.DB_ROUND_TRIPS.increment();
+            DatabaseStatementEvent event = new DatabaseStatementEvent();
+            event.begin();
+            ResultSet range = psRangeQuery.executeQuery();
+            // only the execution of the query is recorded, the rows are read while the dates are handed over
+            Database.commit(event, ORDERS_RANGE_QUERY, -1);
+            try (ResultSet rs = range) {
+                Date date = null;
+                ArrayList<Orders> orders = new ArrayList<>();
+                while (rs.next()) {
+                    Date deliveryDate = rs.getDate(2);
+                    // the first row of a new date means every row of the previous date has been read
+                    if (date != null && !date.equals(deliveryDate)) {
+                        handling += hand_over(date, orders, handler);
+                        ++dates;
+                        orders = new ArrayList<>();
+                    }
+                    date = deliveryDate;
+                    orders.add(new Orders(rs.getString(1), deliveryDate, rs.getString(3), rs.getString(4), rs.getString(5), null, null, 0));
+                    ++rows;
+                }
+                if (date != null) {
+                    handling += hand_over(date, orders, handler);
+                    ++dates;
+                }
+            }
+        }
+        System.out.printf("Orders range query for %s to %s: %d rows on %d dates in %.2f ms%n", from, to, rows, dates, (System.nanoTime() - start - handling) / 1e6);
+        return dates;
+    }
+
+    // resolves and sorts the orders of a date and hands them to the handler as an OrderBook, returns the time it took in nanoseconds
+    private long hand_over(Date date, ArrayList<Orders> orders, DayHandler handler) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        database.resolve_orders(orders);
+        OrderBook book = OrderBook.of(Database.sort_orders(orders));
+        // the Orders objects of the rows aren't needed once they're in the book
+        orders.clear();
+        handler.handle(date, book);
+        return System.nanoTime() - start;
+    }
+}
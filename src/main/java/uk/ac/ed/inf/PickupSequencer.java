@@ -0,0 +1,186 @@
+package uk.ac.ed.inf;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * class for picking the sequence the drone visits the shops of an order in, the drone movement algorithm visits a shop per item in the order the items were read,
+ * so the items are reordered before the journey is planned: the items of the same shop are put next to each other, so each shop is visited once,
+ * and the shops are put in the sequence with the fewest moves from where the drone starts the order, via every shop, to the delivery location
+ *
+ * the moves between two shops are taken from the leg table if there is one, the legs from the drone's position and to the delivery location
+ * are found with the jump point search, and the moves of each leg are remembered as the same legs come up again and again
+ */
+public class PickupSequencer {
+
+    // the most shops of an order whose every sequence is tried, orders have at most two shops in practice
+    private static final int MAX_PERMUTED_SHOPS = 5;
+
+    private final LatticeSearch search;
+    // the moves between the shops and Appleton Tower, null if the legs between shops are searched as well
+    private final LegTable leg_table;
+    // the moves of the legs already found, keyed by the coordinates of both ends
+    private final Map<List<Double>, Integer> leg_moves = new HashMap<>();
+
+    /**
+     * constructor of the class
+     * @param no_fly_zones the no-fly zones
+     * @param leg_table the moves between the shops and Appleton Tower, null if the legs between shops are searched as well
+     */
+    public PickupSequencer(List<List<List<Double>>> no_fly_zones, LegTable leg_table) {
+        this.search = new LatticeSearch(new ObstacleIndex(no_fly_zones));
+        this.leg_table = leg_table;
+    }
+
+    /**
+     * function to make a sequencer from the system property drone.pickups
+     * @param no_fly_zones the no-fly zones
+     * @param leg_table the moves between the shops and Appleton Tower, null if there's no leg table
+     * @return the sequencer, null if drone.pickups isn't sequence and the shops are visited in the order the items were read
+     */
+    public static PickupSequencer from_properties(List<List<List<Double>>> no_fly_zones, LegTable leg_table) {
+        String mode = System.getProperty("drone.pickups", "placed");
+        if (!mode.equals("placed") && !mode.equals("sequence"))
+            throw new IllegalArgumentException("Unknown pickup order " + mode + ", expected placed or sequence");
+        return mode.equals("sequence") ? new PickupSequencer(no_fly_zones, leg_table) : null;
+    }
+
+    /**
+     * function to reorder the items of every order of a day, the orders stay in the same sequence,
+     * the items are read one order at a time and the reordered list is a view of the list passed in, e.g. the list view of an OrderBook
+     * @param day_orders a list of all the orders, the items of an order have to be next to each other
+     * @param start the coordinates the drone starts the day at
+     * @return a list view of the items reordered
+     */
+    public List<Orders> sequence_day(List<Orders> day_orders, double[] start) {
+        // the index in day_orders of every item of the reordered list
+        int[] sequenced = new int[day_orders.size()];
+        int first = 0;
+        double[] position = start;
+        for (int i = 1; i <= day_orders.size(); ++i) {
+            if (i < day_orders.size() && day_orders.get(i).getOrderNo().equals(day_orders.get(first).getOrderNo()))
+                continue;
+            // the items of the order are only held while it's sequenced, a list view hands out a new object on every read
+            List<Orders> items = new ArrayList<>(day_orders.subList(first, i));
+            List<Orders> order = sequence(items, position);
+            boolean[] placed = new boolean[items.size()];
+            for (int k = 0; k < order.size(); ++k) {
+                int item = 0;
+                while (placed[item] || items.get(item) != order.get(k))
+                    ++item;
+                placed[item] = true;
+                sequenced[first + k] = first + item;
+            }
+            // the drone starts the next order where it delivered this one
+            position = items.get(0).getDeliverToCoords();
+            first = i;
+        }
+        return new AbstractList<Orders>() {
+            @Override
+            public Orders get(int index) {
+                return day_orders.get(sequenced[index]);
+            }
+
+            @Override
+            public int size() {
+                return sequenced.length;
+            }
+        };
+    }
+
+    /**
+     * function to reorder the items of an order so its shops are visited in the sequence with the fewest moves
+     * @param items the items of the order
+     * @param start the coordinates the drone starts the order at
+     * @return the items reordered, the items of a shop stay in the order they were read
+     */
+    public List<Orders> sequence(List<Orders> items, double[] start) {
+        // the items of each shop, the shops in the order their first item was read
+        List<List<Orders>> shops = new ArrayList<>();
+        for (Orders item : items) {
+            List<Orders> shop = null;
+            for (List<Orders> candidate : shops)
+                if (Arrays.equals(candidate.get(0).getShopCoords(), item.getShopCoords()))
+                    shop = candidate;
+            if (shop == null)
+                shops.add(shop = new ArrayList<>());
+            shop.add(item);
+        }
+
+        int[] best = new int[shops.size()];
+        for (int s = 0; s < best.length; ++s)
+            best[s] = s;
+        if (shops.size() > 1 && shops.size() <= MAX_PERMUTED_SHOPS) {
+            double[] deliver_to = items.get(0).getDeliverToCoords();
+            int[] best_moves = {moves(shops, best, start, deliver_to)};
+            permute(shops, best.clone(), 0, start, deliver_to, best, best_moves);
+        }
+
+        List<Orders> sequenced = new ArrayList<>(items.size());
+        for (int s : best)
+            sequenced.addAll(shops.get(s));
+        if (!sequenced.equals(items))
+            Metrics.PICKUPS_REORDERED.increment();
+        return sequenced;
+    }
+
+    // tries every sequence of the shops from position k onwards, keeping the first sequence with the fewest moves
+    private void permute(List<List<Orders>> shops, int[] sequence, int k, double[] start, double[] deliver_to, int[] best, int[] best_moves) {
+        if (k == sequence.length) {
+            int moves = moves(shops, sequence, start, deliver_to);
+            if (moves < best_moves[0]) {
+                best_moves[0] = moves;
+                System.arraycopy(sequence, 0, best, 0, sequence.length);
+            }
+            return;
+        }
+        for (int s = k; s < sequence.length; ++s) {
+            swap(sequence, k, s);
+            permute(shops, sequence, k + 1, start, deliver_to, best, best_moves);
+            swap(sequence, k, s);
+        }
+    }
+
+    private static void swap(int[] sequence, int i, int j) {
+        int temp = sequence[i];
+        sequence[i] = sequence[j];
+        sequence[j] = temp;
+    }
+
+    // the moves from the start via the shops in the given sequence to the delivery location
+    private int moves(List<List<Orders>> shops, int[] sequence, double[] start, double[] deliver_to) {
+        int moves = 0;
+        double[] from = start;
+        for (int s : sequence) {
+            double[] shop = shops.get(s).get(0).getShopCoords();
+            moves += leg_moves(from, shop);
+            from = shop;
+        }
+        return moves + leg_moves(from, deliver_to);
+    }
+
+    /**
+     * function to get the number of moves of a leg, from the leg table if both ends are in it, else from the jump point search,
+     * a leg the search finds no path for is estimated by its straight-line distance
+     * @param from the coordinates of the start of the leg
+     * @param to the coordinates of the destination of the leg
+     * @return the number of moves
+     */
+    private int leg_moves(double[] from, double[] to) {
+        if (leg_table != null) {
+            int moves = leg_table.getMoveCount(from, to);
+            if (moves >= 0)
+                return moves;
+        }
+        return leg_moves.computeIfAbsent(List.of(from[0], from[1], to[0], to[1]), key -> {
+            int[] path = search.find_path(from, to);
+            if (path != null)
+                return path.length;
+            return (int) Math.ceil(Math.hypot(to[0] - from[0], to[1] - from[1]) / Drone.DISTANCE_TOLERANCE);
+        });
+    }
+}
@@ -0,0 +1,268 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class for persisting and exporting the drone's journey while it is still being planned,
+ * the drone movement algorithm publishes to bounded queues which are drained by a database writer stage
+ * and a geoJSON writer stage running on separate threads, so the planner has to wait whenever one of the stages falls behind
+ */
+public class Pipeline implements MoveSink {
+
+    // the number of values each queue holds before the planner has to wait for a stage to catch up
+    private static final int QUEUE_CAPACITY = 512;
+
+    // the number of flightpath rows inserted into the database in one batch
+    private static final int BATCH_SIZE = 100;
+
+    // how long the planner waits on a full queue before checking if the stage draining it has stopped
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    // values marking the end of the positions and the end of the database records
+    private static final double[] END_OF_POSITIONS = new double[0];
+    private static final Object END_OF_RECORDS = new Object();
+
+    // the positions the drone moves to, drained by the geoJSON writer stage
+    private final BlockingQueue<double[]> positions = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // the Flightpath and Deliveries objects, drained by the database writer stage
+    private final BlockingQueue<Object> records = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    // true to write the moves only to the flight log and not to the flightpath table
+    private static final boolean FLIGHT_LOG_ONLY = Boolean.getBoolean("drone.flightlog.only");
+    // true to write the moves to the flightpath_runs table as runs of moves at the same angle instead of one flightpath row per move
+    private static final boolean FLIGHTPATH_RUNS = Boolean.getBoolean("drone.flightpath.runs");
+    // true to leave out of the LineString the positions in the middle of a straight run of moves and the repeated positions of hovering
+    private static final boolean COMPACT_GEOJSON = Boolean.getBoolean("drone.geojson.compact");
+
+    private final Database database;
+    // the date of delivery the journey is written for
+    private final Date date;
+    private final File geojson_file;
+    // the log the moves are appended to, null if they're only inserted into the flightpath table
+    private final FlightLog flight_log;
+
+    // the threads running the two stages
+    private final ExecutorService stages = Executors.newFixedThreadPool(2);
+    private final Future<Void> database_stage, geojson_stage;
+
+    /**
+     * constructor of the class which starts the database writer and geoJSON writer stages
+     * @param database the database the flightpath and deliveries are inserted into
+     * @param date the date of delivery, the rows written before for the date are replaced
+     * @param geojson_file the file the geoJSON LineString of the drone's positions is written to
+     * @param flight_log the flight log the moves are appended to as well as (or with drone.flightlog.only instead of) the flightpath table, null for none
+     */
+    public Pipeline(Database database, Date date, File geojson_file, FlightLog flight_log) {
+        this.database = database;
+        this.date = date;
+        this.geojson_file = geojson_file;
+        this.flight_log = flight_log;
+        database_stage = stages.submit(this::write_database);
+        geojson_stage = stages.submit(this::write_geojson);
+    }
+
+    @Override
+    public void publish_position(double[] position) throws InterruptedException {
+        put(positions, position, geojson_stage);
+    }
+
+    @Override
+    public void publish_flightpath(Flightpath flightpath) throws InterruptedException {
+        put(records, flightpath, database_stage);
+    }
+
+    @Override
+    public void publish_delivery(Deliveries delivery) throws InterruptedException {
+        put(records, delivery, database_stage);
+    }
+
+    /**
+     * function to signal that the journey has been planned and wait for both stages to finish writing
+     * @throws SQLException if the database writer stage failed
+     * @throws IOException if the geoJSON writer stage failed
+     * @throws InterruptedException if the thread is interrupted while waiting for the stages
+     */
+    public void finish() throws SQLException, IOException, InterruptedException {
+        try {
+            put(positions, END_OF_POSITIONS, geojson_stage);
+            put(records, END_OF_RECORDS, database_stage);
+            await(database_stage);
+            await(geojson_stage);
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    /**
+     * function to stop both stages without waiting for them to finish writing, used when the journey could not be planned
+     */
+    public void abort() {
+        stages.shutdownNow();
+    }
+
+    /**
+     * function to add a value to a queue, waiting while the queue is full as long as the stage draining it is still running
+     */
+    private <T> void put(BlockingQueue<T> queue, T value, Future<Void> stage) throws InterruptedException {
+        while (!queue.offer(value, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (stage.isDone())
+                throw new IllegalStateException("A pipeline stage stopped before the journey was planned", failure(stage));
+        }
+    }
+
+    // waits for a stage to finish and rethrows the exception it failed with
+    private void await(Future<Void> stage) throws SQLException, IOException, InterruptedException {
+        Throwable cause = failure(stage);
+        if (cause instanceof SQLException)
+            throw (SQLException) cause;
+        if (cause instanceof IOException)
+            throw (IOException) cause;
+        if (cause != null)
+            throw new IllegalStateException(cause);
+    }
+
+    // waits for a stage to finish and returns the exception it failed with, null if it succeeded
+    private Throwable failure(Future<Void> stage) throws InterruptedException {
+        try {
+            stage.get();
+            return null;
+        } catch (ExecutionException err) {
+            return err.getCause();
+        }
+    }
+
+    /**
+     * the database writer stage, inserts the flightpath rows in batches (or the runs of the moves once the journey is complete) and each delivery
+     * as soon as it arrives in one transaction committed once the whole journey has been written, and appends the moves to the flight log if there is one
+     */
+    private Void write_database() throws SQLException, IOException, InterruptedException {
+        boolean write_table = flight_log == null || !FLIGHT_LOG_ONLY;
+        List<Flightpath> batch = new ArrayList<>(BATCH_SIZE);
+        // with drone.flightpath.runs the moves are gathered into runs and inserted once the journey is complete, a run can go on until the last move
+        MoveRuns runs = write_table && FLIGHTPATH_RUNS ? new MoveRuns() : null;
+        Object record;
+        long start = System.nanoTime();
+        try (DayTransaction transaction = database.begin_day(date, write_table)) {
+            Metrics.stage_time("databaseWriter", start);
+            while ((record = records.take()) != END_OF_RECORDS) {
+                if (record instanceof Flightpath) {
+                    start = System.nanoTime();
+                    if (flight_log != null) {
+                        flight_log.append((Flightpath) record);
+                        Metrics.stage_time("flightLogWriter", start);
+                    }
+                    if (runs != null)
+                        runs.add((Flightpath) record);
+                    else if (write_table) {
+                        batch.add((Flightpath) record);
+                        if (batch.size() == BATCH_SIZE) {
+                            start = System.nanoTime();
+                            transaction.insert_flightpath(batch);
+                            Metrics.stage_time("databaseWriter", start);
+                            batch.clear();
+                        }
+                    }
+                } else {
+                    start = System.nanoTime();
+                    transaction.insert_deliveries(List.of((Deliveries) record));
+                    Metrics.stage_time("databaseWriter", start);
+                }
+            }
+            start = System.nanoTime();
+            transaction.insert_flightpath(batch);
+            if (runs != null)
+                transaction.insert_runs(runs);
+            transaction.commit();
+            Metrics.stage_time("databaseWriter", start);
+            if (flight_log != null) {
+                start = System.nanoTime();
+                flight_log.close();
+                Metrics.stage_time("flightLogWriter", start);
+            }
+        } catch (SQLException | IOException | InterruptedException | RuntimeException err) {
+            // the day's previous segment is kept if the journey wasn't written completely
+            if (flight_log != null)
+                flight_log.discard();
+            throw err;
+        }
+        return null;
+    }
+
+    /**
+     * the geoJSON writer stage, streams the positions into a FeatureCollection holding a single LineString feature,
+     * written to a temporary file which only replaces the geoJSON file once all the positions are written
+     */
+    private Void write_geojson() throws IOException, InterruptedException {
+        System.out.println("Writing geoJSON string to file");
+        System.out.println("-----------------------");
+        Path file = geojson_file.toPath();
+        // an aborted or failed journey leaves the previous geoJSON file as it was instead of a truncated one
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            write_line_string(temporary);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | InterruptedException | RuntimeException err) {
+            Files.deleteIfExists(temporary);
+            throw err;
+        }
+        return null;
+    }
+
+    // writes the FeatureCollection to a file as the positions are taken from the queue, until the end of the positions
+    private void write_line_string(Path file) throws IOException, InterruptedException {
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(file.toFile())))) {
+            writer.beginObject().name("type").value("FeatureCollection");
+            writer.name("features").beginArray();
+            writer.beginObject().name("type").value("Feature");
+            writer.name("geometry").beginObject().name("type").value("LineString");
+            writer.name("coordinates").beginArray();
+            double[] position;
+            // with drone.geojson.compact, the last position written and the position held back until it's known whether the run continues past it
+            double[] written = null, held = null;
+            while ((position = positions.take()) != END_OF_POSITIONS) {
+                long start = System.nanoTime();
+                if (!COMPACT_GEOJSON)
+                    write_position(writer, position);
+                else if (held == null)
+                    held = position;
+                else if (position[0] != held[0] || position[1] != held[1]) {
+                    // the held position is only written if the drone turns there
+                    if (written == null || !MoveRuns.continues_run(written, held, position))
+                        write_position(writer, written = held);
+                    held = position;
+                }
+                Metrics.stage_time("geojsonWriter", start);
+            }
+            if (held != null && held != written)
+                write_position(writer, held);
+            writer.endArray().endObject();
+            writer.name("properties").beginObject().endObject();
+            writer.endObject().endArray().endObject();
+        }
+    }
+
+    // writes a position, the coordinates are trimmed the same way the Mapbox serializer does
+    private static void write_position(JsonWriter writer, double[] position) throws IOException {
+        writer.beginArray().value(GeoJsonUtils.trim(position[0])).value(GeoJsonUtils.trim(position[1])).endArray();
+    }
+}
@@ -0,0 +1,353 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * class for the reference data the web server serves (the no-fly zones, the menus and the What3Words details files) compiled into a single binary file,
+ * the file is memory-mapped when it's loaded and looked up in place, so the planner doesn't have to fetch the reference data over HTTP on every run
+ *
+ * the file starts with a header of the magic number, the format version, a CRC32C checksum of everything after the header and a fingerprint of the
+ * files it was compiled from, followed by three sections:
+ *      the no-fly zones: the number of zones and points, the index of the first point of each zone, and the longitude and latitude columns of the points
+ *      the What3Words table: the number of words, then sorted by word the offset of each word in the string pool, and its longitude and latitude
+ *      the menu index: the number of items, then sorted by item the offset of each item and of its shop's What3Words in the string pool, and its price
+ * and the string pool holding each string as its length in bytes followed by its UTF-8 bytes
+ */
+public class ReferenceSnapshot {
+
+    // "DRNS", the first bytes of every snapshot file
+    private static final int MAGIC = 0x44524E53;
+
+    // the version of the format, incremented whenever the layout changes so files written in an older layout are rejected
+    public static final int VERSION = 1;
+
+    // the magic number, version, checksum and fingerprint
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    // the files the snapshot is compiled from, relative to the root of the web server
+    private static final String NO_FLY_ZONES = "buildings/no-fly-zones.geojson";
+    private static final String MENUS = "menus/menus.json";
+    private static final String WORDS = "words";
+    private static final String DETAILS = "details.json";
+
+    private final ByteBuffer buffer;
+    private final long fingerprint;
+
+    // the positions of the sections in the buffer
+    private final int zone_count, point_count, zone_start, point_long, point_lat;
+    private final int word_count, word_string, word_long, word_lat;
+    private final int item_count, item_string, item_shop, item_price;
+
+    // reads the positions of the sections from a buffer that has been checked already
+    private ReferenceSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.fingerprint = buffer.getLong(16);
+        int position = HEADER_SIZE;
+        zone_count = buffer.getInt(position);
+        point_count = buffer.getInt(position + 4);
+        zone_start = position + 8;
+        point_long = zone_start + 4 * (zone_count + 1);
+        point_lat = point_long + 8 * point_count;
+        position = point_lat + 8 * point_count;
+        word_count = buffer.getInt(position);
+        word_string = position + 4;
+        word_long = word_string + 4 * word_count;
+        word_lat = word_long + 8 * word_count;
+        position = word_lat + 8 * word_count;
+        item_count = buffer.getInt(position);
+        item_string = position + 4;
+        item_shop = item_string + 4 * item_count;
+        item_price = item_shop + 4 * item_count;
+    }
+
+    /**
+     * main function compiling the reference data into a snapshot file
+     * @param args command line arguments including the directory the web server serves its files from and the snapshot file to write
+     * @throws IOException if the reference data can't be read or the snapshot can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : ".");
+        Path file = Paths.get(args.length > 1 ? args[1] : "reference.snapshot");
+        long start = System.nanoTime();
+        build(root, file);
+        System.out.printf("Reference snapshot %s written in %.2f ms (%d bytes, fingerprint %016x)%n",
+                file, (System.nanoTime() - start) / 1e6, Files.size(file), fingerprint(root));
+    }
+
+    /**
+     * function to compile the reference data into a snapshot file
+     * @param root the directory the web server serves its files from, holding the buildings, menus and words directories
+     * @param file the snapshot file to write
+     * @throws IOException if the reference data can't be read or the snapshot can't be written
+     */
+    public static void build(Path root, Path file) throws IOException {
+        List<List<List<Double>>> zones = WebServer.parse_no_fly_zones(Files.readString(root.resolve(NO_FLY_ZONES)));
+
+        // the What3Words of every details file, sorted so they can be binary searched
+        TreeMap<String, double[]> words = new TreeMap<>();
+        for (Path details : details_files(root)) {
+            Path dir = root.resolve(WORDS).relativize(details.getParent());
+            String what3words = dir.getName(0) + "." + dir.getName(1) + "." + dir.getName(2);
+            words.put(what3words, WebServer.parse_coords(Files.readString(details), what3words));
+        }
+
+        // the shop selling each item, the first shop listing it if there are several, like getPriceLocation does
+        TreeMap<String, Shops> item_shops = new TreeMap<>();
+        TreeMap<String, Integer> item_prices = new TreeMap<>();
+        for (Shops shop : WebServer.parse_menus(Files.readString(root.resolve(MENUS))))
+            for (MenuItems item : shop.getMenu())
+                if (!item_shops.containsKey(item.getItem())) {
+                    item_shops.put(item.getItem(), shop);
+                    item_prices.put(item.getItem(), item.getPence());
+                }
+
+        // the string pool, each distinct string is stored once
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        int pool_size = 0;
+        List<String> strings = new ArrayList<>(words.keySet());
+        strings.addAll(item_shops.keySet());
+        for (Shops shop : item_shops.values())
+            strings.add(shop.getLocation());
+        for (String string : strings)
+            if (!pool.containsKey(string)) {
+                pool.put(string, pool_size);
+                pool_size += 2 + string.getBytes(StandardCharsets.UTF_8).length;
+            }
+
+        int point_count = zones.stream().mapToInt(List::size).sum();
+        int size = HEADER_SIZE
+                + 8 + 4 * (zones.size() + 1) + 16 * point_count
+                + 4 + 20 * words.size()
+                + 4 + 12 * item_shops.size()
+                + pool_size;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.position(HEADER_SIZE);
+
+        buffer.putInt(zones.size()).putInt(point_count);
+        int first = 0;
+        for (List<List<Double>> zone : zones) {
+            buffer.putInt(first);
+            first += zone.size();
+        }
+        buffer.putInt(first);
+        for (List<List<Double>> zone : zones)
+            for (List<Double> point : zone)
+                buffer.putDouble(point.get(0));
+        for (List<List<Double>> zone : zones)
+            for (List<Double> point : zone)
+                buffer.putDouble(point.get(1));
+
+        buffer.putInt(words.size());
+        for (String word : words.keySet())
+            buffer.putInt(pool.get(word));
+        for (double[] coords : words.values())
+            buffer.putDouble(coords[0]);
+        for (double[] coords : words.values())
+            buffer.putDouble(coords[1]);
+
+        buffer.putInt(item_shops.size());
+        for (String item : item_shops.keySet())
+            buffer.putInt(pool.get(item));
+        for (Shops shop : item_shops.values())
+            buffer.putInt(pool.get(shop.getLocation()));
+        for (int price : item_prices.values())
+            buffer.putInt(price);
+
+        int pool_start = buffer.position();
+        for (String string : pool.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        // the string offsets are relative to the pool, which is the rest of the file
+        if (pool_start != size - pool_size)
+            throw new IllegalStateException("Snapshot layout mismatch");
+
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, checksum(buffer)).putLong(16, fingerprint(root));
+        buffer.rewind();
+        // written to a temporary file first so a running planner never maps a half written snapshot
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * function to map a snapshot file and check it has the current version and is not corrupted
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file can't be read, has another version or its checksum doesn't match
+     */
+    public static ReferenceSnapshot load(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException(file + " is not a reference snapshot");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC)
+            throw new IOException(file + " is not a reference snapshot");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException(file + " has version " + buffer.getInt(4) + ", expected version " + VERSION);
+        if (buffer.getLong(8) != checksum(buffer))
+            throw new IOException(file + " is corrupted, its checksum doesn't match");
+        return new ReferenceSnapshot(buffer);
+    }
+
+    /**
+     * function to load the snapshot named by the system property drone.snapshot, if the property drone.snapshot.source names the directory the
+     * reference data is served from, the snapshot is only used if it was compiled from the files that are there now
+     * @return the snapshot, null if the property isn't set or the snapshot can't be used, in which case the reference data is fetched from the web server
+     */
+    public static ReferenceSnapshot load_from_properties() {
+        String file = System.getProperty("drone.snapshot");
+        if (file == null)
+            return null;
+        long start = System.nanoTime();
+        try {
+            ReferenceSnapshot snapshot = load(Paths.get(file));
+            String source = System.getProperty("drone.snapshot.source");
+            if (source != null && snapshot.getFingerprint() != fingerprint(Paths.get(source))) {
+                System.err.println("Reference snapshot " + file + " is stale, rebuild it from " + source + " with uk.ac.ed.inf.ReferenceSnapshot");
+                return null;
+            }
+            Metrics.stage_time("snapshot", start);
+            System.out.printf("Reference snapshot %s loaded in %.2f ms%n", file, (System.nanoTime() - start) / 1e6);
+            return snapshot;
+        } catch (IOException err) {
+            System.err.println("Unable to use the reference snapshot, fetching the reference data from the web server: " + err.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * function to get a fingerprint of the reference data, a CRC32C of the path and contents of every file the snapshot is compiled from
+     * @param root the directory the web server serves its files from
+     * @return the fingerprint
+     * @throws IOException if the reference data can't be read
+     */
+    public static long fingerprint(Path root) throws IOException {
+        List<Path> files = new ArrayList<>(details_files(root));
+        files.add(root.resolve(NO_FLY_ZONES));
+        files.add(root.resolve(MENUS));
+        files.sort(null);
+        CRC32C crc = new CRC32C();
+        for (Path path : files) {
+            crc.update(root.relativize(path).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+            crc.update(Files.readAllBytes(path));
+        }
+        return crc.getValue();
+    }
+
+    // every details.json file below the words directory, sorted by path
+    private static List<Path> details_files(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root.resolve(WORDS))) {
+            return files.filter(path -> path.getFileName().toString().equals(DETAILS)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    // the CRC32C of everything after the header
+    private static long checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(HEADER_SIZE).limit(buffer.capacity()));
+        return crc.getValue();
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * function to get the no-fly zones in the same form as get_no_fly_zones returns them
+     * @return a list of all the no-fly zones represented as list of points which is further represented as list of coordinates
+     */
+    public List<List<List<Double>>> getNoFlyZones() {
+        List<List<List<Double>>> zones = new ArrayList<>(zone_count);
+        for (int z = 0; z < zone_count; ++z) {
+            List<List<Double>> zone = new ArrayList<>();
+            for (int p = buffer.getInt(zone_start + 4 * z); p < buffer.getInt(zone_start + 4 * (z + 1)); ++p)
+                zone.add(Arrays.asList(buffer.getDouble(point_long + 8 * p), buffer.getDouble(point_lat + 8 * p)));
+            zones.add(zone);
+        }
+        return zones;
+    }
+
+    /**
+     * function to get the coordinates of a What3Words location
+     * @param what3words a What3Words string
+     * @return the coordinates, null if the snapshot doesn't have the location
+     */
+    public double[] getCoords(String what3words) {
+        int w = search(word_string, word_count, what3words);
+        return w < 0 ? null : new double[]{buffer.getDouble(word_long + 8 * w), buffer.getDouble(word_lat + 8 * w)};
+    }
+
+    /**
+     * function to get the price of an item and the What3Words location of the shop selling it
+     * @param item the food item
+     * @return an object containing the price of the item and the location of the shop, null if no shop in the snapshot sells the item
+     */
+    public ItemPriceShopLocation getPriceLocation(String item) {
+        int i = search(item_string, item_count, item);
+        if (i < 0)
+            return null;
+        ItemPriceShopLocation object = new ItemPriceShopLocation();
+        object.setPrice(buffer.getInt(item_price + 4 * i));
+        object.setLocation(string(buffer.getInt(item_shop + 4 * i)));
+        return object;
+    }
+
+    /**
+     * function to get the What3Words locations of the shops, i.e., of every shop selling an item
+     * @return the distinct locations, sorted
+     */
+    public List<String> getShopLocations() {
+        TreeMap<String, Boolean> shops = new TreeMap<>();
+        for (int i = 0; i < item_count; ++i)
+            shops.put(string(buffer.getInt(item_shop + 4 * i)), true);
+        return new ArrayList<>(shops.keySet());
+    }
+
+    // binary searches a sorted column of string offsets, returns the index of the string or -1 if it's not there
+    private int search(int column, int count, String key) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = string(buffer.getInt(column + 4 * middle)).compareTo(key);
+            if (compare == 0)
+                return middle;
+            if (compare < 0)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return -1;
+    }
+
+    // decodes the string at an offset of the string pool
+    private String string(int offset) {
+        int position = item_price + 4 * item_count + offset;
+        byte[] bytes = new byte[buffer.getShort(position)];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,20 @@
+package uk.ac.ed.inf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * flight recorder event for a computation of the path from a position back to Appleton Tower
+ */
+@Name("uk.ac.ed.inf.ReturnToAppleton")
+@Label("Return To Appleton")
+@Category({"Drone Delivery", "Planner"})
+@Description("Computation of the moves the drone needs to return to Appleton Tower")
+public class ReturnToAppletonEvent extends Event {
+
+    @Label("Moves")
+    int moves;
+}
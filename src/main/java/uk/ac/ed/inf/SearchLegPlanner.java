@@ -0,0 +1,68 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+
+/**
+ * class for planning legs with the searches of LatticeSearch, the search is picked for each leg:
+ *      jump          the jump point search for every leg
+ *      astar         A* over single moves for every leg
+ *      bidirectional the bidirectional A* for every leg
+ *      auto          the bidirectional A* for the legs whose straight line crosses a no-fly zone, the rotation sweeps for the rest
+ * a leg the search finds no path for is left to the rotation sweeps
+ */
+public class SearchLegPlanner implements LegPlanner {
+
+    private final LatticeSearch search;
+    private final ObstacleIndex obstacles;
+    private final String mode;
+
+    /**
+     * constructor of the class
+     * @param no_fly_zones the no-fly zones
+     * @param mode jump, astar, bidirectional or auto
+     */
+    public SearchLegPlanner(List<List<List<Double>>> no_fly_zones, String mode) {
+        if (!List.of("jump", "astar", "bidirectional", "auto").contains(mode))
+            throw new IllegalArgumentException("Unknown leg planner " + mode + ", expected sweep, jump, astar, bidirectional or auto");
+        this.obstacles = new ObstacleIndex(no_fly_zones);
+        this.search = new LatticeSearch(obstacles);
+        this.mode = mode;
+    }
+
+    /**
+     * function to make a leg planner from the system property drone.legplanner
+     * @param no_fly_zones the no-fly zones
+     * @return the leg planner, null if drone.legplanner is sweep or isn't set and every leg is planned with the rotation sweeps
+     */
+    public static LegPlanner from_properties(List<List<List<Double>>> no_fly_zones) {
+        String mode = System.getProperty("drone.legplanner", "sweep");
+        return mode.equals("sweep") ? null : new SearchLegPlanner(no_fly_zones, mode);
+    }
+
+    @Override
+    public int[] plan_leg(double[] from, double[] to) {
+        String leg_mode = mode;
+        if (mode.equals("auto")) {
+            // a leg in the open is flown straight by the rotation sweeps, searching only pays off around the no-fly zones
+            if (!obstacles.intersects(from[0], from[1], to[0], to[1]))
+                return null;
+            leg_mode = "bidirectional";
+        }
+        long start = System.nanoTime();
+        int[] moves;
+        switch (leg_mode) {
+            case "jump":
+                moves = search.find_path(from, to);
+                break;
+            case "astar":
+                moves = search.find_path_naive(from, to);
+                break;
+            default:
+                moves = search.find_path_bidirectional(from, to);
+        }
+        Metrics.LEG_SEARCHES.increment();
+        Metrics.LEG_SEARCH_EXPANSIONS.add(search.getExpanded());
+        Metrics.stage_time("legSearch", start);
+        return moves;
+    }
+}
@@ -0,0 +1,197 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * class for testing a line segment against every edge of the no-fly zones, the inner loop of Drone.check_intersection_no_fly_zone
+ * over the coordinates of the edges packed into arrays instead of the lists of points of each zone,
+ * this class tests one edge at a time with Line2D.linesIntersect, VectorSegmentKernel tests several edges at a time with the Vector API
+ *
+ * the kernel is picked by the number of edges: below drone.vector.minEdges edges the vector kernel doesn't make up for setting up its vectors
+ */
+public class SegmentKernel {
+
+    // the default number of edges from which the vector kernel is used, measured with the main method of this class
+    public static final int DEFAULT_VECTOR_MIN_EDGES = 256;
+
+    // the number of steps of the grid the random segments and no-fly zones of the main method and the tests are snapped to
+    static final int GRID = 40;
+
+    // the edges of the no-fly zones, edge e is from (edge_x1[e], edge_y1[e]) to (edge_x2[e], edge_y2[e]),
+    // the arrays can be padded with copies of the first edge up to a multiple of the vector length, which can't change the result
+    protected final double[] edge_x1, edge_y1, edge_x2, edge_y2;
+    protected final int edge_count;
+
+    /**
+     * constructor of the class
+     * @param no_fly_zones the no-fly zones
+     */
+    public SegmentKernel(List<List<List<Double>>> no_fly_zones) {
+        this(no_fly_zones, 1);
+    }
+
+    /**
+     * constructor of the class padding the arrays of the edges to a multiple of the given length
+     * @param no_fly_zones the no-fly zones
+     * @param lanes the number of edges tested at a time
+     */
+    protected SegmentKernel(List<List<List<Double>>> no_fly_zones, int lanes) {
+        int count = 0;
+        for (List<List<Double>> zone : no_fly_zones)
+            count += zone.size();
+        edge_count = count;
+        int padded = count == 0 ? 0 : (count + lanes - 1) / lanes * lanes;
+        edge_x1 = new double[padded];
+        edge_y1 = new double[padded];
+        edge_x2 = new double[padded];
+        edge_y2 = new double[padded];
+        int e = 0;
+        // the same edges Drone.check_intersection_no_fly_zone tests, each point of a zone to the next and the last point to the first
+        for (List<List<Double>> zone : no_fly_zones) {
+            for (int i = 0; i < zone.size(); ++i) {
+                List<Double> from = zone.get(i), to = zone.get(i == zone.size() - 1 ? 0 : i + 1);
+                edge_x1[e] = from.get(0);
+                edge_y1[e] = from.get(1);
+                edge_x2[e] = to.get(0);
+                edge_y2[e] = to.get(1);
+                ++e;
+            }
+        }
+        for (; e < padded; ++e) {
+            edge_x1[e] = edge_x1[0];
+            edge_y1[e] = edge_y1[0];
+            edge_x2[e] = edge_x2[0];
+            edge_y2[e] = edge_y2[0];
+        }
+    }
+
+    /**
+     * function to make the kernel for the no-fly zones, the vector kernel if the Vector API module was added to the JVM
+     * and there are at least as many edges as the system property drone.vector.minEdges (default DEFAULT_VECTOR_MIN_EDGES)
+     * @param no_fly_zones the no-fly zones
+     * @return the kernel
+     */
+    public static SegmentKernel create(List<List<List<Double>>> no_fly_zones) {
+        int count = 0;
+        for (List<List<Double>> zone : no_fly_zones)
+            count += zone.size();
+        if (HeadingScorer.VECTOR_API && count >= Integer.getInteger("drone.vector.minEdges", DEFAULT_VECTOR_MIN_EDGES))
+            return new VectorSegmentKernel(no_fly_zones);
+        return new SegmentKernel(no_fly_zones);
+    }
+
+    public int getEdgeCount() {
+        return edge_count;
+    }
+
+    /**
+     * function to find the first edge a line segment intersects
+     * @param x1 the longitude of the start of the segment
+     * @param y1 the latitude of the start of the segment
+     * @param x2 the longitude of the end of the segment
+     * @param y2 the latitude of the end of the segment
+     * @return the index of the edge, -1 if the segment intersects none
+     */
+    public int first_intersecting(double x1, double y1, double x2, double y2) {
+        for (int e = 0; e < edge_count; ++e)
+            if (Line2D.linesIntersect(x1, y1, x2, y2, edge_x1[e], edge_y1[e], edge_x2[e], edge_y2[e]))
+                return e;
+        return -1;
+    }
+
+    /**
+     * function to check if a line segment intersects with any of the edges, counting the check and the edges up to the first intersecting one in the metrics
+     * @param x1 the longitude of the start of the segment
+     * @param y1 the latitude of the start of the segment
+     * @param x2 the longitude of the end of the segment
+     * @param y2 the latitude of the end of the segment
+     * @return true if the segment intersects with an edge of a no-fly zone
+     */
+    public final boolean intersects(double x1, double y1, double x2, double y2) {
+        int e = first_intersecting(x1, y1, x2, y2);
+        Metrics.INTERSECTION_CHECKS.increment();
+        Metrics.EDGE_TESTS.add(e < 0 ? edge_count : e + 1);
+        return e >= 0;
+    }
+
+    /**
+     * function to validate the vector kernel against Line2D.linesIntersect on random segments and random no-fly zones of increasing size,
+     * and to time both kernels to find the number of edges from which the vector kernel is faster,
+     * the coordinates are snapped to a coarse grid so segments touching at an end or lying on the same line, the cases Line2D handles specially, come up often
+     * @param args the number of segments per zone map (default 20000) and the seed (default 1)
+     * @throws IOException if the no-fly zones file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        int segments = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        if (!HeadingScorer.VECTOR_API) {
+            System.out.println("no Vector API, run with --add-modules jdk.incubator.vector");
+            return;
+        }
+        Random random = new Random(seed);
+        List<List<List<List<Double>>>> maps = new ArrayList<>();
+        if (Files.exists(Paths.get("buildings/no-fly-zones.geojson")))
+            maps.add(WebServer.parse_no_fly_zones(Files.readString(Paths.get("buildings/no-fly-zones.geojson"))));
+        for (int edges = 16; edges <= 4096; edges *= 4)
+            maps.add(random_zones(random, edges));
+
+        for (List<List<List<Double>>> no_fly_zones : maps) {
+            SegmentKernel scalar = new SegmentKernel(no_fly_zones), vector = new VectorSegmentKernel(no_fly_zones);
+            double[][] queries = new double[segments][];
+            for (int s = 0; s < segments; ++s) {
+                // segments a few grid steps long, like the moves and the short legs of the drone
+                int column = random.nextInt(GRID + 1), row = random.nextInt(GRID + 1);
+                queries[s] = new double[]{grid(column, Drone.CONFINED_LONG), grid(row, Drone.CONFINED_LAT),
+                        grid(column + random.nextInt(7) - 3, Drone.CONFINED_LONG), grid(row + random.nextInt(7) - 3, Drone.CONFINED_LAT)};
+            }
+            int mismatches = 0, hits = 0;
+            long scalar_nanos = 0, vector_nanos = 0;
+            // the first rounds warm up the JIT compiler, only the last is timed
+            for (int round = 0; round < 5; ++round) {
+                scalar_nanos = vector_nanos = 0;
+                mismatches = hits = 0;
+                for (double[] q : queries) {
+                    long start = System.nanoTime();
+                    boolean expected = false;
+                    for (int e = 0; e < scalar.edge_count && !expected; ++e)
+                        expected = Line2D.linesIntersect(q[0], q[1], q[2], q[3], scalar.edge_x1[e], scalar.edge_y1[e], scalar.edge_x2[e], scalar.edge_y2[e]);
+                    scalar_nanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    boolean found = vector.first_intersecting(q[0], q[1], q[2], q[3]) >= 0;
+                    vector_nanos += System.nanoTime() - start;
+                    if (found != expected)
+                        ++mismatches;
+                    if (expected)
+                        ++hits;
+                }
+            }
+            System.out.printf("%5d edges: %d segments, %d intersect, %d mismatches, Line2D %.1f ns, vector %.1f ns per segment%n", scalar.edge_count,
+                    segments, hits, mismatches, (double) scalar_nanos / segments, (double) vector_nanos / segments);
+        }
+    }
+
+    // the coordinate of a line of a grid over the confinement area
+    static double grid(int line, double[] bounds) {
+        return bounds[0] + line * (bounds[1] - bounds[0]) / GRID;
+    }
+
+    // random triangles and quadrilaterals on the grid with the given number of edges in total
+    static List<List<List<Double>>> random_zones(Random random, int edges) {
+        List<List<List<Double>>> zones = new ArrayList<>();
+        while (edges > 0) {
+            int points = Math.min(edges, 3 + random.nextInt(2));
+            List<List<Double>> zone = new ArrayList<>();
+            for (int p = 0; p < points; ++p)
+                zone.add(List.of(grid(random.nextInt(GRID + 1), Drone.CONFINED_LONG), grid(random.nextInt(GRID + 1), Drone.CONFINED_LAT)));
+            zones.add(zone);
+            edges -= points;
+        }
+        return zones;
+    }
+}
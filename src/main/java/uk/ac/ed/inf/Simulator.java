@@ -0,0 +1,259 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * class for what-if simulations over the historical orders, every date of a range is planned again under each scenario,
+ * e.g. another no-fly zone map, another battery budget or more drones, and the deliveries, value, moves and planner CPU time of the scenarios are compared
+ *
+ * the orders of the range are read with one query and resolved once, then every (scenario, date) pair is planned on a thread of a pool,
+ * nothing is written to the database or to files, the journeys are only counted
+ */
+public class Simulator {
+
+    // the coordinates of Appleton Tower, where every drone begins and ends its journey
+    private static final double[] APPLETON_COORDS = {-3.1869, 55.9445};
+
+    /**
+     * class for the parameters of a scenario, written name[:key=value,...] with the keys zones (a geoJSON file of no-fly zones, default the web server's),
+     * budget (the battery budget, default drone.battery.budget) and fleet (the number of drones, default 1), e.g. bigbattery:budget=2000,fleet=2
+     */
+    static class Scenario {
+        final String name;
+        final String zones_file;
+        final Double budget;
+        final int fleet;
+        // the no-fly zones and the kernel testing the moves against them, shared by the threads since neither changes
+        List<List<List<Double>>> no_fly_zones;
+        SegmentKernel segment_kernel;
+
+        Scenario(String name, String zones_file, Double budget, int fleet) {
+            if (fleet < 1)
+                throw new IllegalArgumentException("The fleet of scenario " + name + " needs at least one drone");
+            this.name = name;
+            this.zones_file = zones_file;
+            this.budget = budget;
+            this.fleet = fleet;
+        }
+
+        /**
+         * function to parse a scenario
+         * @param spec the scenario, name[:key=value,...]
+         * @return the scenario
+         */
+        static Scenario parse(String spec) {
+            int colon = spec.indexOf(':');
+            String name = colon < 0 ? spec : spec.substring(0, colon);
+            String zones_file = null;
+            Double budget = null;
+            int fleet = 1;
+            if (colon >= 0) {
+                for (String parameter : spec.substring(colon + 1).split(",")) {
+                    String[] key_value = parameter.split("=", 2);
+                    if (key_value.length != 2)
+                        throw new IllegalArgumentException("Expected key=value in scenario " + spec + ", got " + parameter);
+                    switch (key_value[0]) {
+                        case "zones":
+                            zones_file = key_value[1];
+                            break;
+                        case "budget":
+                            budget = Double.parseDouble(key_value[1]);
+                            break;
+                        case "fleet":
+                            fleet = Integer.parseInt(key_value[1]);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown scenario parameter " + key_value[0] + ", expected zones, budget or fleet");
+                    }
+                }
+            }
+            return new Scenario(name, zones_file, budget, fleet);
+        }
+    }
+
+    // the totals of a scenario over a date, or over every date once they're added up
+    static class Result {
+        int dates, orders, deliveries, moves, unfinished;
+        long value, cpu_nanos;
+
+        void add(Result other) {
+            dates += other.dates;
+            orders += other.orders;
+            deliveries += other.deliveries;
+            moves += other.moves;
+            unfinished += other.unfinished;
+            value += other.value;
+            cpu_nanos += other.cpu_nanos;
+        }
+    }
+
+    // counts the moves and deliveries of a journey and keeps the last position, instead of writing them anywhere
+    private static class CountingSink implements MoveSink {
+        int moves, deliveries;
+        long value;
+        double[] last_position;
+
+        @Override
+        public void publish_position(double[] position) {
+            last_position = position;
+        }
+
+        @Override
+        public void publish_flightpath(Flightpath flightpath) {
+            ++moves;
+        }
+
+        @Override
+        public void publish_delivery(Deliveries delivery) {
+            ++deliveries;
+            value += delivery.getCostInPence();
+        }
+    }
+
+    /**
+     * function to plan the orders of a date under a scenario, with the orders split between the drones of the fleet,
+     * the orders are dealt out in the sequence they were sorted in, so each drone gets orders of about the same value
+     * @param scenario the scenario
+     * @param orders the orders of the date, sorted in descending order of their total price
+     * @return the totals of the date
+     * @throws InterruptedException if the thread is interrupted while planning
+     */
+    static Result simulate_day(Scenario scenario, List<Orders> orders) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<List<Orders>> drone_orders = new ArrayList<>();
+        for (int d = 0; d < scenario.fleet; ++d)
+            drone_orders.add(new ArrayList<>());
+        int next = -1;
+        Result result = new Result();
+        result.dates = 1;
+        for (int i = 0; i < orders.size(); ++i) {
+            // the items of an order stay with the same drone
+            if (i == 0 || !orders.get(i).getOrderNo().equals(orders.get(i - 1).getOrderNo())) {
+                next = (next + 1) % scenario.fleet;
+                ++result.orders;
+            }
+            drone_orders.get(next).add(orders.get(i));
+        }
+        long start = threads.getCurrentThreadCpuTime();
+        for (List<Orders> journey : drone_orders) {
+            if (journey.isEmpty())
+                continue;
+            Drone drone = new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1]);
+            // the planner options of the system properties hold state of their own, so every journey gets its own
+            drone.setLegPlanner(SearchLegPlanner.from_properties(scenario.no_fly_zones));
+            drone.setPickupSequencer(PickupSequencer.from_properties(scenario.no_fly_zones, null));
+            drone.setHeadingScorer(HeadingScorer.from_properties(scenario.no_fly_zones));
+            drone.setSegmentKernel(scenario.segment_kernel);
+            ConstraintEngine battery = ConstraintEngine.from_properties();
+            drone.setConstraintEngine(scenario.budget == null ? battery : battery.with_budget(scenario.budget));
+            CountingSink sink = new CountingSink();
+            drone.drone_movement(journey, scenario.no_fly_zones, sink);
+            result.moves += sink.moves;
+            result.deliveries += sink.deliveries;
+            result.value += sink.value;
+            // a journey that didn't get back to Appleton Tower, e.g. when the no-fly zones of the scenario trap the drone
+            if (sink.last_position == null || !new Drone(sink.last_position[0], sink.last_position[1]).closeTo(new Drone(APPLETON_COORDS[0], APPLETON_COORDS[1])))
+                ++result.unfinished;
+        }
+        result.cpu_nanos = threads.getCurrentThreadCpuTime() - start;
+        return result;
+    }
+
+    /**
+     * function to simulate the dates of a range under the scenarios and print the comparison report, the first scenario is the one the others are compared with
+     * @param args the first and last date (YYYY-MM-DD), the web server and database port, then one or more scenarios (name[:key=value,...]),
+     *             the threads of the pool are set with the system property drone.sim.threads (default the number of processors)
+     * @throws SQLException if there's an error accessing the database
+     * @throws IOException if a no-fly zones file can't be read or the orders can't be resolved
+     * @throws InterruptedException if the thread is interrupted while waiting for the simulations
+     * @throws ExecutionException if a simulation failed
+     */
+    public static void main(String[] args) throws SQLException, IOException, InterruptedException, ExecutionException {
+        if (args.length < 5) {
+            System.err.println("usage: Simulator YYYY-MM-DD YYYY-MM-DD <web server port> <database port> <scenario> [scenario...]");
+            return;
+        }
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i = 4; i < args.length; ++i)
+            scenarios.add(Scenario.parse(args[i]));
+        WebServer web_server = new WebServer("localhost", args[2]);
+        for (Scenario scenario : scenarios) {
+            scenario.no_fly_zones = scenario.zones_file == null ? web_server.get_no_fly_zones()
+                    : WebServer.parse_no_fly_zones(Files.readString(Paths.get(scenario.zones_file)));
+            scenario.segment_kernel = SegmentKernel.create(scenario.no_fly_zones);
+        }
+
+        // the orders of every date are read with one query and held in order books while the range is read
+        long start = System.nanoTime();
+        Database database = new Database("localhost", args[3], args[2], args[0]);
+        Map<Date, OrderBook> days = new LinkedHashMap<>();
+        new OrdersLoader(database).load(args[0], args[1], days::put);
+        database.close();
+        System.out.printf("Simulator: %d dates read in %.1f ms%n", days.size(), (System.nanoTime() - start) / 1e6);
+
+        int threads = Integer.getInteger("drone.sim.threads", Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        start = System.nanoTime();
+        Map<Scenario, List<Future<Result>>> simulations = new LinkedHashMap<>();
+        try {
+            for (Scenario scenario : scenarios) {
+                List<Future<Result>> results = new ArrayList<>();
+                for (OrderBook book : days.values())
+                    results.add(pool.submit(() -> simulate_day(scenario, book.as_list())));
+                simulations.put(scenario, results);
+            }
+            Map<Scenario, Result> totals = new LinkedHashMap<>();
+            for (Map.Entry<Scenario, List<Future<Result>>> simulation : simulations.entrySet()) {
+                Result total = new Result();
+                for (Future<Result> result : simulation.getValue())
+                    total.add(result.get());
+                totals.put(simulation.getKey(), total);
+            }
+            System.out.printf("Simulator: %d scenarios x %d dates on %d threads in %.1f s%n", scenarios.size(), days.size(), threads, (System.nanoTime() - start) / 1e9);
+            report(totals);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // prints a row of totals per scenario, then the change of each total from the first scenario
+    private static void report(Map<Scenario, Result> totals) {
+        System.out.printf("%-16s %5s %5s %7s %10s %11s %8s %8s %10s%n", "scenario", "fleet", "dates", "orders", "deliveries", "value (GBP)", "moves", "cpu (s)", "unfinished");
+        for (Map.Entry<Scenario, Result> entry : totals.entrySet()) {
+            Result total = entry.getValue();
+            System.out.printf("%-16s %5d %5d %7d %10d %11.2f %8d %8.2f %10d%n", entry.getKey().name, entry.getKey().fleet, total.dates,
+                    total.orders, total.deliveries, total.value / 100.0, total.moves, total.cpu_nanos / 1e9, total.unfinished);
+        }
+        if (totals.size() < 2)
+            return;
+        Result base = totals.values().iterator().next();
+        System.out.printf("%nchange from %s:%n", totals.keySet().iterator().next().name);
+        System.out.printf("%-16s %10s %10s %8s %8s%n", "scenario", "deliveries", "value", "moves", "cpu");
+        for (Map.Entry<Scenario, Result> entry : totals.entrySet()) {
+            Result total = entry.getValue();
+            if (total == base)
+                continue;
+            System.out.printf("%-16s %10s %10s %8s %8s%n", entry.getKey().name, change(total.deliveries, base.deliveries),
+                    change(total.value, base.value), change(total.moves, base.moves), change(total.cpu_nanos, base.cpu_nanos));
+        }
+    }
+
+    // the change of a total from the first scenario's in percent
+    private static String change(double total, double base) {
+        return base == 0 ? "-" : String.format("%+.1f%%", 100 * (total - base) / base);
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * class for generating the application class-data-sharing (AppCDS) archive of the application and reporting the startup time it saves,
+ * a training run plans a sample date with -XX:ArchiveClassesAtExit so the classes it loads (Mapbox GeoJSON, Gson, the Derby client, java.awt.geom)
+ * are written to the archive, later runs started with -XX:SharedArchiveFile map them from the archive instead of parsing and verifying them again
+ *
+ * the archive only matches the class path it was trained with, so the runs must use the same jar, e.g. the shaded target/ilp-1.0-SNAPSHOT.jar
+ */
+public class StartupArchive {
+
+    // the stages of the metrics the report compares
+    private static final String[] STAGES = {"jvmStartup", "startup"};
+
+    /**
+     * function to run the application in a JVM of its own, with the class path and options of this JVM
+     * @param jvm_options the options of the JVM, e.g. the archive to use
+     * @param app_args the command line arguments of the application
+     * @param metrics_file the file the metrics of the run are dumped to
+     * @return the wall time of the run in milliseconds, from starting the JVM to it exiting
+     * @throws IOException if the JVM can't be started or the application failed
+     * @throws InterruptedException if the thread is interrupted while waiting for the JVM
+     */
+    static double run_app(List<String> jvm_options, String[] app_args, Path metrics_file) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvm_options);
+        // the options this JVM was started with, e.g. --add-modules jdk.incubator.vector and the drone.* system properties, apart from its own archive and metrics
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+            if (!option.startsWith("-Ddrone.metrics=") && !option.startsWith("-Ddrone.cds.")
+                    && !option.startsWith("-XX:ArchiveClassesAtExit") && !option.startsWith("-XX:SharedArchiveFile"))
+                command.add(option);
+        command.add("-Ddrone.metrics=" + metrics_file);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(App.class.getName());
+        command.addAll(Arrays.asList(app_args));
+        long start = System.nanoTime();
+        // the journey printed by the application isn't part of the report
+        Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        int exit_code = process.waitFor();
+        double wall_millis = (System.nanoTime() - start) / 1e6;
+        if (exit_code != 0)
+            throw new IOException("The application exited with code " + exit_code + ": " + String.join(" ", command));
+        return wall_millis;
+    }
+
+    /**
+     * function to get the medians of the startup figures of a number of runs of the application
+     * @param jvm_options the options of the JVM, e.g. the archive to use
+     * @param app_args the command line arguments of the application
+     * @param runs the number of runs
+     * @return the medians of the wall time, the time of each stage of STAGES in milliseconds and the number of classes loaded
+     * @throws IOException if a run failed or its metrics can't be read
+     * @throws InterruptedException if the thread is interrupted while waiting for a run
+     */
+    static double[] measure(List<String> jvm_options, String[] app_args, int runs) throws IOException, InterruptedException {
+        double[][] figures = new double[STAGES.length + 2][runs];
+        Path metrics_file = Files.createTempFile("drone-metrics", ".json");
+        try {
+            for (int r = 0; r < runs; ++r) {
+                figures[0][r] = run_app(jvm_options, app_args, metrics_file);
+                JsonObject metrics = JsonParser.parseString(Files.readString(metrics_file)).getAsJsonObject();
+                JsonObject stages = metrics.getAsJsonObject("stageMillis");
+                for (int s = 0; s < STAGES.length; ++s)
+                    figures[s + 1][r] = stages.has(STAGES[s]) ? stages.get(STAGES[s]).getAsDouble() : Double.NaN;
+                figures[STAGES.length + 1][r] = metrics.get("classesLoaded").getAsDouble();
+            }
+        } finally {
+            Files.deleteIfExists(metrics_file);
+        }
+        double[] medians = new double[figures.length];
+        for (int f = 0; f < figures.length; ++f) {
+            Arrays.sort(figures[f]);
+            medians[f] = figures[f][runs / 2];
+        }
+        return medians;
+    }
+
+    /**
+     * main function training the archive on a sample date and printing the startup time of the application without and with it
+     * @param args command line arguments including the sample date (DD MM YYYY), the web server and database port number and the archive file to write,
+     *             the runs measured with and without the archive are set with the system property drone.cds.runs (default 5)
+     * @throws IOException if a run failed or the archive couldn't be written
+     * @throws InterruptedException if the thread is interrupted while waiting for a run
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 6) {
+            System.err.println("usage: StartupArchive DD MM YYYY <web server port> <database port> <archive file>");
+            return;
+        }
+        String[] app_args = Arrays.copyOf(args, 5);
+        Path archive = Paths.get(args[5]).toAbsolutePath();
+        int runs = Integer.getInteger("drone.cds.runs", 5);
+
+        // the training run, the classes it loaded are dumped to the archive when its JVM exits
+        Files.deleteIfExists(archive);
+        Path metrics_file = Files.createTempFile("drone-metrics", ".json");
+        double training_millis;
+        try {
+            training_millis = run_app(List.of("-XX:ArchiveClassesAtExit=" + archive), app_args, metrics_file);
+        } finally {
+            Files.deleteIfExists(metrics_file);
+        }
+        if (!Files.exists(archive))
+            throw new IOException("The training run didn't write the archive " + archive + ", the class path must only hold jars");
+        System.out.printf("StartupArchive: %s trained on %s-%s-%s in %.0f ms (%d bytes)%n", archive, args[0], args[1], args[2], training_millis, Files.size(archive));
+
+        double[] before = measure(List.of(), app_args, runs);
+        double[] after = measure(List.of("-XX:SharedArchiveFile=" + archive), app_args, runs);
+        System.out.printf("startup report, medians of %d runs%n", runs);
+        System.out.printf("%-22s %10s %10s %8s%n", "", "before", "after", "change");
+        String[] names = {"wall (ms)", "JVM to main (ms)", "main to orders (ms)", "classes loaded"};
+        for (int f = 0; f < names.length; ++f)
+            System.out.printf("%-22s %10.0f %10.0f %8s%n", names[f], before[f], after[f],
+                    before[f] == 0 ? "-" : String.format("%+.1f%%", 100 * (after[f] - before[f]) / before[f]));
+    }
+}
@@ -0,0 +1,302 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * class for planning the drone's journey while the orders of the day are still arriving, instead of from the snapshot of the whole day,
+ * a poller thread polls the order source and stamps every order with the time it arrived, and the orders are planned in micro-batches:
+ * the batch starts with the first order to arrive and takes every order that arrives within the window after it
+ *
+ * each batch is planned incrementally as a sortie of the drone movement algorithm from where the previous sortie ended,
+ * the drone's position at Appleton Tower, with the orders of the batch in descending order of their total price and a charged battery,
+ * and published to the same sink as the sorties before it, so the day's journey is the sorties one after the other,
+ * the orders a sortie couldn't deliver within its battery are carried into the next batch once
+ *
+ * the latency of an order is the time from its arrival to the delivery of its sortie being planned, reported once the stream is idle
+ */
+public class StreamDispatcher {
+
+    // the coordinates of Appleton Tower, where the drone begins and ends every sortie
+    private static final double[] APPLETON_COORDS = {-3.1869, 55.9445};
+
+    // how long the stream waits for a poll still running when it ends before closing the source anyway
+    private static final long POLLER_SHUTDOWN_MILLIS = 10_000;
+
+    // an order item and the value of System.nanoTime() when it was polled from the source
+    private static class Arrival {
+        final Orders order;
+        final long arrived;
+        // true once the order has been carried into a later batch because its sortie couldn't deliver it
+        boolean carried;
+
+        Arrival(Orders order, long arrived) {
+            this.order = order;
+            this.arrived = arrived;
+        }
+    }
+
+    private final OrderSource source;
+    private final Database database;
+    private final List<List<List<Double>>> no_fly_zones;
+    private final LegPlanner leg_planner;
+    private final PickupSequencer pickup_sequencer;
+    private final HeadingScorer heading_scorer;
+    private final SegmentKernel segment_kernel;
+    // the window of a batch, the time the source is polled at and the time without a new order after which the stream has ended, in milliseconds
+    private final long window_millis, poll_millis, idle_millis;
+
+    /**
+     * constructor of the class
+     * @param source the source the orders are polled from
+     * @param database the database the locations and prices of the orders are resolved with
+     * @param no_fly_zones the no-fly zones
+     * @param leg_planner plans the legs of every sortie, null for the rotation sweeps
+     * @param pickup_sequencer picks the sequence the shops of each order are visited in, null for the order the items were read
+     * @param heading_scorer picks the heading of the moves around the no-fly zones, null for the rotation sweeps
+     * @param segment_kernel tests the moves against the edges of the no-fly zones, null to test each edge as a Line2D
+     * @param window_millis the window of a batch in milliseconds
+     * @param poll_millis the time between two polls of the source in milliseconds
+     * @param idle_millis the time without a new order after which the stream has ended in milliseconds
+     */
+    public StreamDispatcher(OrderSource source, Database database, List<List<List<Double>>> no_fly_zones, LegPlanner leg_planner,
+                            PickupSequencer pickup_sequencer, HeadingScorer heading_scorer, SegmentKernel segment_kernel,
+                            long window_millis, long poll_millis, long idle_millis) {
+        this.source = source;
+        this.database = database;
+        this.no_fly_zones = no_fly_zones;
+        this.leg_planner = leg_planner;
+        this.pickup_sequencer = pickup_sequencer;
+        this.heading_scorer = heading_scorer;
+        this.segment_kernel = segment_kernel;
+        this.window_millis = window_millis;
+        this.poll_millis = poll_millis;
+        this.idle_millis = idle_millis;
+    }
+
+    /**
+     * function to make a dispatcher with the system properties drone.stream.window, drone.stream.poll and drone.stream.idle
+     * @param source the source the orders are polled from
+     * @param database the database the locations and prices of the orders are resolved with
+     * @param no_fly_zones the no-fly zones
+     * @param leg_planner plans the legs of every sortie, null for the rotation sweeps
+     * @param pickup_sequencer picks the sequence the shops of each order are visited in, null for the order the items were read
+     * @param heading_scorer picks the heading of the moves around the no-fly zones, null for the rotation sweeps
+     * @param segment_kernel tests the moves against the edges of the no-fly zones, null to test each edge as a Line2D
+     * @return the dispatcher
+     */
+    public static StreamDispatcher from_properties(OrderSource source, Database database, List<List<List<Double>>> no_fly_zones, LegPlanner leg_planner,
+                                                   PickupSequencer pickup_sequencer, HeadingScorer heading_scorer, SegmentKernel segment_kernel) {
+        return new StreamDispatcher(source, database, no_fly_zones, leg_planner, pickup_sequencer, heading_scorer, segment_kernel,
+                Long.getLong("drone.stream.window", 2000), Long.getLong("drone.stream.poll", 200), Long.getLong("drone.stream.idle", 30_000));
+    }
+
+    /**
+     * function to plan the orders of the stream in batches until no order has arrived for the idle time, and report the latency of the orders
+     * @param sink the sink receiving the positions, moves and deliveries of every sortie
+     * @throws SQLException if there's an error polling the database
+     * @throws IOException if there's an error reading the stream
+     * @throws InterruptedException if the thread is interrupted while waiting for orders or for the sink
+     */
+    public void run(MoveSink sink) throws SQLException, IOException, InterruptedException {
+        BlockingQueue<Arrival> arrivals = new LinkedBlockingQueue<>();
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor();
+        // a poll that throws stops the polling, the exception is rethrown by the dispatching thread
+        ScheduledFuture<?> polling = poller.scheduleWithFixedDelay(() -> {
+            try {
+                List<Orders> orders = source.poll();
+                long now = System.nanoTime();
+                for (Orders order : orders)
+                    arrivals.add(new Arrival(order, now));
+            } catch (SQLException | IOException err) {
+                throw new IllegalStateException(err);
+            }
+        }, 0, poll_millis, TimeUnit.MILLISECONDS);
+
+        List<Long> latencies = new ArrayList<>();
+        List<Arrival> carried = new ArrayList<>();
+        double[] position = APPLETON_COORDS.clone();
+        // true once a sortie has published the position it starts at, a batch none of whose orders resolved publishes nothing
+        boolean[] published = {false};
+        int batches = 0, unscheduled = 0;
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                Arrival first = next_arrival(arrivals, polling, carried.isEmpty() ? idle_millis : 0);
+                if (first == null && carried.isEmpty())
+                    break;
+                List<Arrival> batch = new ArrayList<>(carried);
+                carried.clear();
+                if (first != null) {
+                    // the batch takes every order that arrives within the window after its first order
+                    TimeUnit.NANOSECONDS.sleep(first.arrived + TimeUnit.MILLISECONDS.toNanos(window_millis) - System.nanoTime());
+                    batch.add(first);
+                    arrivals.drainTo(batch);
+                }
+                position = dispatch(batch, position, published, sink, latencies, carried);
+                ++batches;
+                // an order a second sortie couldn't deliver either is left out
+                for (int i = carried.size() - 1; i >= 0; --i) {
+                    if (carried.get(i).carried) {
+                        if (i == 0 || !carried.get(i - 1).order.getOrderNo().equals(carried.get(i).order.getOrderNo()))
+                            ++unscheduled;
+                        carried.remove(i);
+                    } else
+                        carried.get(i).carried = true;
+                }
+            }
+        } finally {
+            poller.shutdownNow();
+            try {
+                // a poll still running when the stream ends reads from the source, so the source is only closed once the poller has stopped
+                if (!poller.awaitTermination(POLLER_SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS))
+                    System.err.println("The order stream poller didn't stop within " + POLLER_SHUTDOWN_MILLIS + " ms, closing the source anyway");
+            } finally {
+                source.close();
+            }
+        }
+        Metrics.stage_time("stream", start);
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("Order stream: %d orders in %d batches (window %d ms), %d not scheduled%n", sorted.length + unscheduled, batches, window_millis, unscheduled);
+        if (sorted.length > 0)
+            System.out.printf("  arrival to scheduled flight: p50 %.1f ms, p95 %.1f ms, max %.1f ms%n",
+                    percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.95) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    // the latency below which the given fraction of the sorted latencies are
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    // waits for the next order to arrive, null if none arrived within the given time
+    private Arrival next_arrival(BlockingQueue<Arrival> arrivals, ScheduledFuture<?> polling, long wait_millis) throws SQLException, IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait_millis);
+        while (true) {
+            Arrival arrival = arrivals.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(poll_millis), Math.max(0, deadline - System.nanoTime())), TimeUnit.NANOSECONDS);
+            if (arrival != null)
+                return arrival;
+            if (polling.isDone())
+                rethrow(polling);
+            if (System.nanoTime() >= deadline)
+                return null;
+        }
+    }
+
+    // rethrows the exception the poller stopped with
+    private static void rethrow(ScheduledFuture<?> polling) throws SQLException, IOException, InterruptedException {
+        try {
+            polling.get();
+        } catch (ExecutionException err) {
+            Throwable cause = err.getCause() instanceof IllegalStateException && err.getCause().getCause() != null ? err.getCause().getCause() : err.getCause();
+            if (cause instanceof SQLException)
+                throw (SQLException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IllegalStateException("The order stream poller stopped", cause);
+        }
+        throw new IllegalStateException("The order stream poller stopped");
+    }
+
+    /**
+     * function to plan a batch as a sortie of the drone movement algorithm
+     * @param batch the orders of the batch
+     * @param position the position the sortie starts at
+     * @param published true once a position has been published, the position the later sorties start at has been published by the sortie before,
+     *                  set to true when the sortie publishes its first position
+     * @param sink the sink receiving the positions, moves and deliveries of the sortie
+     * @param latencies filled with the latency of every order delivered
+     * @param carried filled with the orders the sortie didn't deliver
+     * @return the position the sortie ended at
+     */
+    private double[] dispatch(List<Arrival> batch, double[] position, boolean[] published, MoveSink sink, List<Long> latencies, List<Arrival> carried)
+            throws IOException, InterruptedException {
+        // the items of each order, in the order the orders arrived
+        Map<String, List<Arrival>> by_order = new LinkedHashMap<>();
+        for (Arrival arrival : batch)
+            by_order.computeIfAbsent(arrival.order.getOrderNo(), o -> new ArrayList<>()).add(arrival);
+        List<List<Arrival>> orders = new ArrayList<>();
+        Map<String, Integer> order_cost = new HashMap<>();
+        for (List<Arrival> items : by_order.values()) {
+            ArrayList<Orders> resolved = new ArrayList<>();
+            for (Arrival arrival : items)
+                resolved.add(arrival.order);
+            try {
+                database.resolve_orders(resolved);
+            } catch (IOException err) {
+                // an order whose location or items can't be resolved can't be planned, the rest of the batch still can
+                System.err.println("Order stream: can't resolve order " + items.get(0).order.getOrderNo() + ", " + err.getMessage());
+                continue;
+            }
+            orders.add(items);
+            order_cost.put(items.get(0).order.getOrderNo(), resolved.stream().mapToInt(Orders::getItemPrice).sum());
+        }
+        // the orders worth the most first, like the sorted orders of a day, orders worth the same in the order they arrived
+        orders.sort((a, b) -> Integer.compare(order_cost.get(b.get(0).order.getOrderNo()), order_cost.get(a.get(0).order.getOrderNo())));
+        List<Orders> items = new ArrayList<>();
+        Map<String, Long> arrived = new HashMap<>();
+        for (List<Arrival> order : orders) {
+            for (Arrival arrival : order) {
+                items.add(arrival.order);
+                arrived.merge(arrival.order.getOrderNo(), arrival.arrived, Math::min);
+            }
+        }
+        if (items.isEmpty())
+            return position;
+
+        Set<String> delivered = new HashSet<>();
+        double[][] last = {position};
+        // a sortie after one that published its positions starts where that one ended, so its first position isn't published again
+        boolean[] skip_start = {published[0]};
+        MoveSink sortie_sink = new MoveSink() {
+            @Override
+            public void publish_position(double[] p) throws InterruptedException {
+                if (skip_start[0]) {
+                    skip_start[0] = false;
+                    return;
+                }
+                last[0] = p;
+                published[0] = true;
+                sink.publish_position(p);
+            }
+
+            @Override
+            public void publish_flightpath(Flightpath flightpath) throws InterruptedException {
+                sink.publish_flightpath(flightpath);
+            }
+
+            @Override
+            public void publish_delivery(Deliveries delivery) throws InterruptedException {
+                latencies.add(System.nanoTime() - arrived.get(delivery.getOrderNo()));
+                delivered.add(delivery.getOrderNo());
+                Metrics.ORDERS_STREAMED.increment();
+                sink.publish_delivery(delivery);
+            }
+        };
+        Drone drone = new Drone(position[0], position[1]);
+        drone.setLegPlanner(leg_planner);
+        drone.setPickupSequencer(pickup_sequencer);
+        drone.setHeadingScorer(heading_scorer);
+        drone.setSegmentKernel(segment_kernel);
+        drone.drone_movement(items, no_fly_zones, sortie_sink);
+        for (List<Arrival> order : orders)
+            if (!delivered.contains(order.get(0).order.getOrderNo()))
+                carried.addAll(order);
+        System.out.printf("Order stream: batch of %d orders planned, %d delivered%n", orders.size(), delivered.size());
+        return last[0];
+    }
+}
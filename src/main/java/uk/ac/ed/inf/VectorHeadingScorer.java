@@ -0,0 +1,109 @@
+package uk.ac.ed.inf;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.List;
+
+/**
+ * class for scoring the headings of a move with the Vector API, each lane of a vector holds a heading,
+ * so a pass over the edges of the no-fly zones tests the moves and rotated lines of as many headings as the vector has lanes,
+ * the tests are Line2D.linesIntersect written with lane-wise operations in the same order, so every heading gets the same score as HeadingScorer gives it
+ *
+ * the class can only be loaded if the JVM was run with --add-modules jdk.incubator.vector, HeadingScorer.create checks for the module first
+ */
+class VectorHeadingScorer extends HeadingScorer {
+
+    // 256-bit vectors of 4 headings, on JDK 17 the masks of 512-bit vectors and of 128-bit vectors aren't compiled to vector instructions
+    // and both run several times slower than testing one heading at a time
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= 256 ? DoubleVector.SPECIES_256 : DoubleVector.SPECIES_PREFERRED;
+
+    VectorHeadingScorer(List<List<List<Double>>> no_fly_zones) {
+        super(no_fly_zones, SPECIES.length());
+    }
+
+    // the number of headings scored at a time
+    int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    protected void score(double x, double y, double target_x, double target_y) {
+        double reach = Math.hypot(target_x - x, target_y - y);
+        int near_step_count = near(x, y, Drone.DISTANCE_TOLERANCE, near_step), near_line_count = near(x, y, reach, near_line);
+        for (int h = 0; h < cos.length; h += SPECIES.length()) {
+            DoubleVector cos_h = DoubleVector.fromArray(SPECIES, cos, h), sin_h = DoubleVector.fromArray(SPECIES, sin, h);
+            DoubleVector step_x = cos_h.mul(Drone.DISTANCE_TOLERANCE).add(x), step_y = sin_h.mul(Drone.DISTANCE_TOLERANCE).add(y);
+            DoubleVector line_x = cos_h.mul(reach).add(x), line_y = sin_h.mul(reach).add(y);
+            // the lanes padding the last vector are left out so they don't keep the passes over the edges going
+            VectorMask<Double> headings = SPECIES.indexInRange(h, HEADINGS);
+            VectorMask<Double> step_allowed_h = headings.and(step_x.compare(VectorOperators.GT, Drone.CONFINED_LONG[0]))
+                    .and(step_x.compare(VectorOperators.LT, Drone.CONFINED_LONG[1]))
+                    .and(step_y.compare(VectorOperators.GT, Drone.CONFINED_LAT[0]))
+                    .and(step_y.compare(VectorOperators.LT, Drone.CONFINED_LAT[1]));
+            for (int i = 0; i < near_step_count && step_allowed_h.anyTrue(); ++i) {
+                int e = near_step[i];
+                step_allowed_h = step_allowed_h.andNot(intersects(x, y, step_x, step_y, edge_x1[e], edge_y1[e], edge_x2[e], edge_y2[e]));
+            }
+            VectorMask<Double> line_clear_h = headings;
+            for (int i = 0; i < near_line_count && line_clear_h.anyTrue(); ++i) {
+                int e = near_line[i];
+                line_clear_h = line_clear_h.andNot(intersects(x, y, line_x, line_y, edge_x1[e], edge_y1[e], edge_x2[e], edge_y2[e]));
+            }
+            DoubleVector dx = step_x.sub(target_x), dy = step_y.sub(target_y);
+            dx.mul(dx).add(dy.mul(dy)).intoArray(distance, h);
+            for (int lane = 0; lane < SPECIES.length(); ++lane) {
+                step_allowed[h + lane] = step_allowed_h.laneIsSet(lane);
+                line_clear[h + lane] = line_clear_h.laneIsSet(lane);
+            }
+        }
+    }
+
+    /**
+     * function to test the segments from a point to the ends in each lane against an edge, lane-wise Line2D.linesIntersect,
+     * which checks the ends of each segment aren't strictly on the same side of the other segment's line
+     * @return the lanes whose segment intersects the edge
+     */
+    private static VectorMask<Double> intersects(double x1, double y1, DoubleVector x2, DoubleVector y2, double x3, double y3, double x4, double y4) {
+        DoubleVector x1_v = DoubleVector.broadcast(SPECIES, x1), y1_v = DoubleVector.broadcast(SPECIES, y1);
+        DoubleVector x3_v = DoubleVector.broadcast(SPECIES, x3), y3_v = DoubleVector.broadcast(SPECIES, y3);
+        DoubleVector x4_v = DoubleVector.broadcast(SPECIES, x4), y4_v = DoubleVector.broadcast(SPECIES, y4);
+        DoubleVector ccw3 = relative_ccw(x1_v, y1_v, x2, y2, x3_v, y3_v), ccw4 = relative_ccw(x1_v, y1_v, x2, y2, x4_v, y4_v);
+        VectorMask<Double> edge_on_one_side = same_side(ccw3, ccw4);
+        if (edge_on_one_side.allTrue())
+            return edge_on_one_side.not();
+        DoubleVector ccw1 = relative_ccw(x3_v, y3_v, x4_v, y4_v, x1_v, y1_v), ccw2 = relative_ccw(x3_v, y3_v, x4_v, y4_v, x2, y2);
+        return edge_on_one_side.or(same_side(ccw1, ccw2)).not();
+    }
+
+    // the lanes where both values are above zero or both are below zero, i.e., the product of their signs is above zero
+    private static VectorMask<Double> same_side(DoubleVector a, DoubleVector b) {
+        return a.compare(VectorOperators.GT, 0).and(b.compare(VectorOperators.GT, 0))
+                .or(a.compare(VectorOperators.LT, 0).and(b.compare(VectorOperators.LT, 0)));
+    }
+
+    /**
+     * function to find on which side of the line from (x1, y1) to (x2, y2) each point (px, py) lies, lane-wise Line2D.relativeCCW
+     * without the rounding to -1, 0 or 1
+     * @return a value below zero, zero or above zero in each lane
+     */
+    static DoubleVector relative_ccw(DoubleVector x1, DoubleVector y1, DoubleVector x2, DoubleVector y2, DoubleVector px, DoubleVector py) {
+        x2 = x2.sub(x1);
+        y2 = y2.sub(y1);
+        px = px.sub(x1);
+        py = py.sub(y1);
+        DoubleVector ccw = px.mul(y2).sub(py.mul(x2));
+        // a point on the line is on the line's side if it's beyond either end and on neither side if it's between them
+        VectorMask<Double> on_line = ccw.compare(VectorOperators.EQ, 0);
+        if (on_line.anyTrue()) {
+            DoubleVector along = px.mul(x2).add(py.mul(y2));
+            VectorMask<Double> beyond_start = on_line.and(along.compare(VectorOperators.GT, 0));
+            DoubleVector beyond = px.sub(x2).mul(x2).add(py.sub(y2).mul(y2));
+            beyond = beyond.blend(0, beyond.compare(VectorOperators.LT, 0));
+            ccw = ccw.blend(along, on_line).blend(beyond, beyond_start);
+        }
+        return ccw;
+    }
+}
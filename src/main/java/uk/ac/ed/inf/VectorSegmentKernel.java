@@ -0,0 +1,80 @@
+package uk.ac.ed.inf;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.awt.geom.Line2D;
+import java.util.List;
+
+/**
+ * class for testing a line segment against the edges of the no-fly zones with the Vector API, each lane of a vector holds an edge,
+ * the tests are Line2D.linesIntersect written with lane-wise operations, so the result is the same as testing one edge at a time,
+ * a vector of edges the segment doesn't reach is settled by the first two cross products, which is most of them on a map of many small zones
+ *
+ * the class can only be loaded if the JVM was run with --add-modules jdk.incubator.vector, SegmentKernel.create checks for the module first
+ */
+class VectorSegmentKernel extends SegmentKernel {
+
+    // 256-bit vectors of 4 coordinates, on JDK 17 the masks of 512-bit vectors and of 128-bit vectors aren't compiled to vector instructions
+    // and both run several times slower than testing one edge at a time
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.vectorBitSize() >= 256 ? DoubleVector.SPECIES_256 : DoubleVector.SPECIES_PREFERRED;
+
+    VectorSegmentKernel(List<List<List<Double>>> no_fly_zones) {
+        super(no_fly_zones, SPECIES.length());
+    }
+
+    @Override
+    public int first_intersecting(double x1, double y1, double x2, double y2) {
+        DoubleVector x1_v = DoubleVector.broadcast(SPECIES, x1), y1_v = DoubleVector.broadcast(SPECIES, y1);
+        DoubleVector x2_v = DoubleVector.broadcast(SPECIES, x2), y2_v = DoubleVector.broadcast(SPECIES, y2);
+        // the arrays are padded with copies of the first edge, so the last vector needs no mask
+        for (int e = 0; e < edge_x1.length; e += SPECIES.length()) {
+            DoubleVector x3 = DoubleVector.fromArray(SPECIES, edge_x1, e), y3 = DoubleVector.fromArray(SPECIES, edge_y1, e);
+            DoubleVector x4 = DoubleVector.fromArray(SPECIES, edge_x2, e), y4 = DoubleVector.fromArray(SPECIES, edge_y2, e);
+            VectorMask<Double> hits = intersects(x1_v, y1_v, x2_v, y2_v, x3, y3, x4, y4);
+            if (hits.anyTrue())
+                return e + hits.firstTrue();
+        }
+        return -1;
+    }
+
+    /**
+     * function to test the segments from (x1, y1) to (x2, y2) against the segments from (x3, y3) to (x4, y4) lane by lane, lane-wise Line2D.linesIntersect,
+     * which checks the ends of each segment aren't strictly on the same side of the other segment's line,
+     * the side is the sign of the same cross product Line2D.relativeCCW computes, and in the lanes where a cross product is zero,
+     * i.e., an end lies on the other segment's line, which relativeCCW settles with a dot product, the lane is tested with Line2D itself
+     * @return the lanes whose segments intersect
+     */
+    static VectorMask<Double> intersects(DoubleVector x1, DoubleVector y1, DoubleVector x2, DoubleVector y2,
+                                         DoubleVector x3, DoubleVector y3, DoubleVector x4, DoubleVector y4) {
+        DoubleVector ccw3 = cross(x1, y1, x2, y2, x3, y3), ccw4 = cross(x1, y1, x2, y2, x4, y4);
+        VectorMask<Double> apart = same_side(ccw3, ccw4);
+        if (apart.allTrue())
+            return apart.not();
+        DoubleVector ccw1 = cross(x3, y3, x4, y4, x1, y1), ccw2 = cross(x3, y3, x4, y4, x2, y2);
+        VectorMask<Double> hits = apart.or(same_side(ccw1, ccw2)).not();
+        // a lane whose ends are strictly on the same side is apart whatever the other cross products are, only a hit can be wrong
+        VectorMask<Double> on_line = hits.and(ccw1.compare(VectorOperators.EQ, 0).or(ccw2.compare(VectorOperators.EQ, 0))
+                .or(ccw3.compare(VectorOperators.EQ, 0)).or(ccw4.compare(VectorOperators.EQ, 0)));
+        if (!on_line.anyTrue())
+            return hits;
+        boolean[] exact = new boolean[SPECIES.length()];
+        for (int lane = 0; lane < exact.length; ++lane)
+            exact[lane] = on_line.laneIsSet(lane) ? Line2D.linesIntersect(x1.lane(lane), y1.lane(lane), x2.lane(lane), y2.lane(lane),
+                    x3.lane(lane), y3.lane(lane), x4.lane(lane), y4.lane(lane)) : hits.laneIsSet(lane);
+        return VectorMask.fromArray(SPECIES, exact, 0);
+    }
+
+    // the lanes where both values are above zero or both are below zero, i.e., the product of their signs is above zero
+    private static VectorMask<Double> same_side(DoubleVector a, DoubleVector b) {
+        return a.compare(VectorOperators.GT, 0).and(b.compare(VectorOperators.GT, 0))
+                .or(a.compare(VectorOperators.LT, 0).and(b.compare(VectorOperators.LT, 0)));
+    }
+
+    // the cross product Line2D.relativeCCW takes the side of the point (px, py) from the line from (x1, y1) to (x2, y2) from, computed in the same order
+    private static DoubleVector cross(DoubleVector x1, DoubleVector y1, DoubleVector x2, DoubleVector y2, DoubleVector px, DoubleVector py) {
+        return px.sub(x1).mul(y2.sub(y1)).sub(py.sub(y1).mul(x2.sub(x1)));
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * class for sending GET requests to the web server, every request has a timeout and failed requests are retried a bounded number of times
+ * after a random delay, and a request for a URL that is already being fetched waits for the response of that request instead of sending another one
+ */
+public class WebClient {
+
+    // how long a request waits for its response before it fails, in milliseconds
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMillis(Long.getLong("drone.http.timeout", 5000));
+
+    // how many times a failed request is sent again
+    private static final int RETRIES = Integer.getInteger("drone.http.retries", 2);
+
+    // the upper bound of the delay before the first retry in milliseconds, doubled for each retry after it
+    private static final long BACKOFF_MILLIS = Long.getLong("drone.http.backoff", 100);
+
+    // status codes which mean the server is overloaded, requests failing with these or any 5xx code are retried
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+
+    private final HttpClient client;
+
+    // the requests being sent, by URL, completed with their response once it arrives
+    private final ConcurrentHashMap<URI, CompletableFuture<HttpResponse<String>>> in_flight = new ConcurrentHashMap<>();
+
+    /**
+     * constructor of the class
+     * @param client the HttpClient the requests are sent with
+     */
+    public WebClient(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * function to get a resource from the web server, sharing the response with any other thread asking for the same URL at the same time
+     * @param uri the URL of the resource
+     * @return the response with its body as a string, its status code is the one of the last attempt
+     * @throws IOException if every attempt failed to get a response
+     * @throws InterruptedException if the thread is interrupted while waiting for the response
+     */
+    public HttpResponse<String> get(URI uri) throws IOException, InterruptedException {
+        String endpoint = endpoint(uri);
+        CompletableFuture<HttpResponse<String>> call = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<String>> running = in_flight.putIfAbsent(uri, call);
+        // another thread is already fetching the URL
+        if (running != null) {
+            Metrics.http_coalesced(endpoint);
+            return await(running);
+        }
+        try {
+            HttpResponse<String> response = send_with_retries(HttpRequest.newBuilder().uri(uri).timeout(REQUEST_TIMEOUT).build(), endpoint);
+            call.complete(response);
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException err) {
+            call.completeExceptionally(err);
+            throw err;
+        } finally {
+            in_flight.remove(uri, call);
+        }
+    }
+
+    // sends a request until it gets a response that is not worth retrying or it runs out of retries
+    private HttpResponse<String> send_with_retries(HttpRequest request, String endpoint) throws IOException, InterruptedException {
+        for (int attempt = 0; ; ++attempt) {
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = send(request, attempt);
+                int status = response.statusCode();
+                Metrics.http_request(endpoint, start, status != WebServer.POSITIVE_STATUS_CODE);
+                if (status != TOO_MANY_REQUESTS && status < SERVER_ERROR || attempt == RETRIES)
+                    return response;
+            } catch (IOException err) {
+                Metrics.http_request(endpoint, start, true);
+                if (attempt == RETRIES)
+                    throw err;
+            }
+            Metrics.http_retry(endpoint);
+            // full jitter, so requests that failed together are not all retried at the same time
+            Thread.sleep(ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS << attempt) + 1);
+        }
+    }
+
+    // sends a request once, counting it and recording it as a flight recorder event
+    private HttpResponse<String> send(HttpRequest request, int attempt) throws IOException, InterruptedException {
+        Metrics.HTTP_REQUESTS.increment();
+        HttpRequestEvent event = new HttpRequestEvent();
+        event.begin();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        event.end();
+        if (event.shouldCommit()) {
+            event.url = request.uri().toString();
+            event.statusCode = response.statusCode();
+            event.bytes = response.body().getBytes(StandardCharsets.UTF_8).length;
+            event.attempt = attempt;
+            event.commit();
+        }
+        return response;
+    }
+
+    // waits for the response of a request sent by another thread
+    private static HttpResponse<String> await(CompletableFuture<HttpResponse<String>> running) throws IOException, InterruptedException {
+        try {
+            return running.get();
+        } catch (ExecutionException err) {
+            if (err.getCause() instanceof IOException)
+                throw (IOException) err.getCause();
+            throw new IOException("Request shared with another thread failed", err.getCause());
+        }
+    }
+
+    // the endpoint metrics are kept under, the first directory of the path (words, menus or buildings)
+    private static String endpoint(URI uri) {
+        String path = uri.getPath();
+        int end = path.indexOf('/', 1);
+        return end < 0 ? path.substring(1) : path.substring(1, end);
+    }
+}
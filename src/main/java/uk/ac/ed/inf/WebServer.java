@@ -5,14 +5,14 @@ import com.google.gson.reflect.TypeToken;
 import com.mapbox.geojson.*;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.TreeSet;
 
 /**
  * class representing the operations of the application which are dependent on the web server at port number supplied as command-line arguments
@@ -29,11 +29,23 @@ public class WebServer {
 
     // number response.StatusCode() returns if the request made to the
     // server does not fail
-    private static final int POSITIVE_STATUS_CODE = 200;
+    static final int POSITIVE_STATUS_CODE = 200;
 
-    // an HttpClient object used to send requests and retrieve their responses
-    // shared between all HTTPRequests
-    private static final HttpClient client = HttpClient.newHttpClient();
+    // a client used to send requests and retrieve their responses with timeouts and retries, shared between all HTTPRequests,
+    // created the first time a request is sent, so a run reading its reference data from a snapshot never loads the HTTP client or its TLS classes
+    private static class Client {
+        static final WebClient INSTANCE = new WebClient(HttpClientFactory.from_properties().create());
+    }
+
+    // the parser of the menus and the type of the list it reads them into, created the first time the menus are read
+    private static class Menus {
+        static final Gson GSON = new Gson();
+        static final Type LIST_TYPE = new TypeToken<ArrayList<Shops>>() {
+        }.getType();
+    }
+
+    // the reference data compiled ahead of time, looked up before asking the web server, null if no snapshot is used
+    private static final ReferenceSnapshot snapshot = ReferenceSnapshot.load_from_properties();
 
     /**
      * constructor of the class to assign the server name and the server port number
@@ -54,44 +66,68 @@ public class WebServer {
     }
 
     /**
-     * function to get the no-fly zones from the geoJSON file on the web server
+     * function to get a resource from the web server
+     * @param url the URL of the resource
+     * @return the response, which always has the status code 200
+     * @throws IOException if there's no response after retrying, the status code is not 200 or the thread is interrupted
+     */
+    private HttpResponse<String> get(String url) throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = Client.INSTANCE.get(URI.create(url));
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        }
+        if (response.statusCode() != POSITIVE_STATUS_CODE)
+            throw new IOException("Request for " + url + " failed with status code " + response.statusCode());
+        return response;
+    }
+
+    /**
+     * function to get the no-fly zones from the geoJSON file on the web server, or from the reference snapshot if one is loaded
      * @return a list of all the no-fly zones represented as list of points which is further represented as list of coordinates
+     * @throws IOException if there's no response after retrying or the file isn't a FeatureCollection of Polygons,
+     *                     planning without the no-fly zones would fly the drone through them
      */
-    public List<List<List<Double>>> get_no_fly_zones() {
+    public List<List<List<Double>>> get_no_fly_zones() throws IOException {
+        if (snapshot != null)
+            return snapshot.getNoFlyZones();
         String geoJSON = "http://" + getServer() + ":" + getPort() + "/buildings/no-fly-zones.geojson";
-        // HttpRequest object to access a resource on the server
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(geoJSON))
-                .build();
-        List<List<List<Double>>> no_fly_array = new ArrayList<>();
+        // HttpResponse object provide the client with the resource it requested,
+        // or inform the client that the action it requested has been carried out;
+        // or else to inform the client that an error occurred in processing its request.
+        HttpResponse<String> response = get(geoJSON);
         try {
-            // HttpResponse object provide the client with the resource it requested,
-            // or inform the client that the action it requested has been carried out;
-            // or else to inform the client that an error occurred in processing its request.
-            HttpResponse<String> response =
-                    client.send(request, HttpResponse.BodyHandlers.ofString());
-            // if the request does not fail
-            if (response.statusCode() == POSITIVE_STATUS_CODE) {
-                // getting the individual elements from a geoJSON file
-                FeatureCollection fc = FeatureCollection.fromJson(response.body());
-                List<Feature> features = fc.features();
-                Geometry geom;
-                Polygon poly;
-                List<List<Point>> point;
-                // iterates over the feature elements of the FeatureCollection element
-                for (Feature feature : features) {
-                    geom = feature.geometry();
-                    poly = (Polygon) geom;
-                    point = poly.coordinates();
-                    List<List<Double>> p = new ArrayList<>();
-                    // getting the list of points for each no-fly region
-                    for (int i = 0; i < point.get(0).size(); ++i)
-                        p.add(point.get(0).get(i).coordinates());
-                    no_fly_array.add(p);
-                }
-            }
-        } catch (IOException | InterruptedException | NullPointerException err) {
-            err.printStackTrace();
+            return parse_no_fly_zones(response.body());
+        } catch (RuntimeException err) {
+            throw new IOException("Unable to read the no-fly zones from " + geoJSON, err);
+        }
+    }
+
+    /**
+     * function to read the no-fly zones from the contents of a geoJSON file
+     * @param geoJSON the contents of the geoJSON file, a FeatureCollection of Polygons
+     * @return a list of all the no-fly zones represented as list of points which is further represented as list of coordinates
+     */
+    static List<List<List<Double>>> parse_no_fly_zones(String geoJSON) {
+        List<List<List<Double>>> no_fly_array = new ArrayList<>();
+        // getting the individual elements from a geoJSON file
+        FeatureCollection fc = FeatureCollection.fromJson(geoJSON);
+        List<Feature> features = fc.features();
+        Geometry geom;
+        Polygon poly;
+        List<List<Point>> point;
+        // iterates over the feature elements of the FeatureCollection element
+        for (Feature feature : features) {
+            geom = feature.geometry();
+            poly = (Polygon) geom;
+            point = poly.coordinates();
+            List<List<Double>> p = new ArrayList<>();
+            // getting the list of points for each no-fly region
+            for (int i = 0; i < point.get(0).size(); ++i)
+                p.add(point.get(0).get(i).coordinates());
+            no_fly_array.add(p);
         }
         return no_fly_array;
     }
@@ -100,90 +136,108 @@ public class WebServer {
      * function to get the coordinates from the json file given a What3Words string
      * @param string a What3Words string
      * @return the coordinates
+     * @throws IOException if the web server has no coordinates for the What3Words string
      */
-    public double[] get_coords(String string) {
-        String[] what3words = string.split("\\.");
-        // HttpRequest object to access a resource on the server
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://" + getServer() + ":" + getPort() + "/words/" + what3words[0] + "/" + what3words[1] + "/" + what3words[2] + "/details.json"))
-                .build();
-        double[] coords = null;
+    public double[] get_coords(String string) throws IOException {
+        String[] what3words = string == null ? new String[0] : string.split("\\.");
+        if (what3words.length != 3)
+            throw new IOException("Not a What3Words location: " + string);
+        double[] coords = snapshot == null ? null : snapshot.getCoords(string);
+        if (coords != null)
+            return coords;
+        // HttpResponse object provide the client with the resource it requested,
+        // or inform the client that the action it requested has been carried out;
+        // or else to inform the client that an error occurred in processing its request.
+        HttpResponse<String> response = get("http://" + getServer() + ":" + getPort() + "/words/" + what3words[0] + "/" + what3words[1] + "/" + what3words[2] + "/details.json");
+        return parse_coords(response.body(), string);
+    }
+
+    /**
+     * function to read the coordinates from the contents of a What3Words details.json file
+     * @param details the contents of the details.json file
+     * @param string the What3Words string the file belongs to
+     * @return the coordinates
+     * @throws IOException if the file doesn't hold the coordinates where they are expected
+     */
+    static double[] parse_coords(String details, String string) throws IOException {
         try {
-            // HttpResponse object provide the client with the resource it requested,
-            // or inform the client that the action it requested has been carried out;
-            // or else to inform the client that an error occurred in processing its request.
-            HttpResponse<String> response =
-                    client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == POSITIVE_STATUS_CODE) {
-                // splits the json string on every ":" and accesses particular elements
-                String longitude = response.body().split(":")[11];
-                String latitude = response.body().split(":")[12];
-                // splits the string containing longitude and latitude on particular expressions and accesses the first element
-                double lon = Double.parseDouble(longitude.split(",")[0]);
-                double lat = Double.parseDouble(latitude.split("}")[0]);
-                coords = new double[]{lon, lat};
-            }
-        } catch (IOException | InterruptedException err) {
-            err.printStackTrace();
+            // splits the json string on every ":" and accesses particular elements
+            String longitude = details.split(":")[11];
+            String latitude = details.split(":")[12];
+            // splits the string containing longitude and latitude on particular expressions and accesses the first element
+            double lon = Double.parseDouble(longitude.split(",")[0]);
+            double lat = Double.parseDouble(latitude.split("}")[0]);
+            return new double[]{lon, lat};
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException err) {
+            throw new IOException("Unable to read the coordinates of " + string, err);
         }
-        return coords;
     }
 
     /**
      * function to get the price of given item and the shop which sells the item
      * @param food_item the food item
      * @return an object containing the price of given item and location of the shop
+     * @throws IOException if the menus can't be read from the web server or no shop sells the item
      */
-    public ItemPriceShopLocation getPriceLocation(String food_item) {
-        // HttpRequest object to access a resource on the server
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://" + getServer() + ":" + getPort() + "/menus/menus.json"))
-                .build();
-        String shopLocation;
+    public ItemPriceShopLocation getPriceLocation(String food_item) throws IOException {
         ItemPriceShopLocation object = new ItemPriceShopLocation();
-        int itemPrice = 0;
-        try {
-            // HttpResponse object provide the client with the resource it requested,
-            // or inform the client that the action it requested has been carried out;
-            // or else to inform the client that an error occurred in processing its request.
-            HttpResponse<String> response =
-                    client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == POSITIVE_STATUS_CODE) {
-                Type listType =
-                        new TypeToken<ArrayList<Shops>>() {
-                        }.getType();
-                ArrayList<Shops> shopsList =
-                        new Gson().fromJson(response.body(), listType);
-                int check = 0;
-                Integer price = item_price.get(food_item);
-                String loc = shop_loc.get(food_item);
-                // checks if the food item maps to anything in the hashmap
-                if (price == null)
-                    //loops through the available shops to find the food item
-                    for (Shops shops : shopsList) {
-                        for (MenuItems items : shops.getMenu())
-                            if (items.getItem().equals(food_item)) {
-                                itemPrice += items.getPence();
-                                object.setPrice(itemPrice);
-                                item_price.put(food_item, itemPrice);
-                                shopLocation = shops.getLocation();
-                                object.setLocation(shopLocation);
-                                shop_loc.put(food_item, shopLocation);
-                                check = 1;
-                                break;
-                            }
-                        if (check == 1)
-                            break;
-                    }
-                price = item_price.get(food_item);
-                loc = shop_loc.get(food_item);
-                object.setPrice(price);
-                object.setLocation(loc);
+        Integer price = item_price.get(food_item);
+        // checks if the food item maps to anything in the hashmap
+        if (price != null)
+            Metrics.CACHE_HITS.increment();
+        else {
+            ItemPriceShopLocation found = snapshot == null ? null : snapshot.getPriceLocation(food_item);
+            if (found != null) {
+                item_price.put(food_item, found.getPrice());
+                shop_loc.put(food_item, found.getLocation());
+            } else {
+                // HttpResponse object provide the client with the resource it requested,
+                // or inform the client that the action it requested has been carried out;
+                // or else to inform the client that an error occurred in processing its request.
+                HttpResponse<String> response = get("http://" + getServer() + ":" + getPort() + "/menus/menus.json");
+                //loops through the available shops to find the food item
+                search:
+                for (Shops shops : parse_menus(response.body()))
+                    for (MenuItems items : shops.getMenu())
+                        if (items.getItem().equals(food_item)) {
+                            item_price.put(food_item, items.getPence());
+                            shop_loc.put(food_item, shops.getLocation());
+                            break search;
+                        }
             }
-        } catch (IOException | InterruptedException err) {
-            System.err.println("Fatal error: Unable to connect to " +
-                    server + " at port " + port + ".");
+            price = item_price.get(food_item);
+            if (price == null)
+                throw new IOException("No shop sells " + food_item);
         }
+        object.setPrice(price);
+        object.setLocation(shop_loc.get(food_item));
         return object;
     }
+
+    /**
+     * function to get the coordinates of every shop on the menus, from the reference snapshot if one is loaded
+     * @return the coordinates of the shops, sorted by their What3Words location
+     * @throws IOException if the menus or the coordinates of a shop can't be read from the web server
+     */
+    public List<double[]> get_shop_coords() throws IOException {
+        TreeSet<String> locations = new TreeSet<>();
+        if (snapshot != null)
+            locations.addAll(snapshot.getShopLocations());
+        else
+            for (Shops shops : parse_menus(get("http://" + getServer() + ":" + getPort() + "/menus/menus.json").body()))
+                locations.add(shops.getLocation());
+        List<double[]> coords = new ArrayList<>();
+        for (String location : locations)
+            coords.add(get_coords(location));
+        return coords;
+    }
+
+    /**
+     * function to read the shops and their menus from the contents of the menus.json file
+     * @param menus the contents of the menus.json file
+     * @return the shops in the order they are listed in the file
+     */
+    static ArrayList<Shops> parse_menus(String menus) {
+        return Menus.GSON.fromJson(menus, Menus.LIST_TYPE);
+    }
 }
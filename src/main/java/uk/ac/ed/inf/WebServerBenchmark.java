@@ -0,0 +1,170 @@
+package uk.ac.ed.inf;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * class for measuring how the HTTP version, the client's executor and connection reuse affect the throughput of the web server requests,
+ * by default it starts a local stand-in for the web server serving the words, menus and buildings directories of the working directory,
+ * the requests cycle through every What3Words details file, the menus and the no-fly zones like resolving a day of orders does
+ */
+public class WebServerBenchmark {
+
+    // the directories the web server serves
+    private static final String[] TREES = {"words", "menus", "buildings"};
+
+    // the number of requests sent with each client before the measured ones, to open the connections and warm up the JIT
+    private static final int WARM_UP = 500;
+
+    /**
+     * main function running the benchmark
+     * @param args command line arguments including optionally the number of requests per configuration, the number of threads sending them,
+     *             and the port number of a running web server to use instead of the stand-in
+     * @throws IOException if the stand-in can't be started or a request fails
+     * @throws InterruptedException if the thread is interrupted while waiting for the requests
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        // the paths of the resources, relative to the root of the web server
+        List<String> paths = new ArrayList<>();
+        for (String tree : TREES)
+            try (Stream<Path> files = Files.walk(Paths.get(tree))) {
+                files.filter(Files::isRegularFile).forEach(file -> paths.add(file.toString().replace('\\', '/')));
+            }
+
+        HttpServer stand_in = null;
+        String port;
+        if (args.length > 2)
+            port = args[2];
+        else {
+            stand_in = start_stand_in(paths, concurrency);
+            port = Integer.toString(stand_in.getAddress().getPort());
+        }
+        List<URI> uris = new ArrayList<>();
+        for (String path : paths)
+            uris.add(URI.create("http://localhost:" + port + "/" + path));
+        System.out.println((stand_in == null ? "web server" : "stand-in") + " on port " + port + ", " + uris.size() + " resources, "
+                + requests + " requests per configuration, " + concurrency + " threads");
+
+        Duration connect_timeout = Duration.ofSeconds(2);
+        for (HttpClient.Version version : HttpClient.Version.values())
+            for (int threads : new int[]{0, concurrency}) {
+                HttpClientFactory factory = new HttpClientFactory(version, threads, connect_timeout);
+                run(factory.toString(), factory.create(), uris, requests, concurrency);
+            }
+        // run last, the connections left open by the discarded clients fill the server's idle connections
+        // and it would close the connections of the clients measured after it
+        run("HTTP_1_1, new client per request", null, uris, requests / 10, concurrency);
+
+        if (stand_in != null)
+            stand_in.stop(0);
+    }
+
+    // sends the requests from several threads with one shared client, or a new client per request if the client is null, and prints the throughput and latency
+    private static void run(String name, HttpClient client, List<URI> uris, int requests, int concurrency) throws InterruptedException {
+        ExecutorService senders = Executors.newFixedThreadPool(concurrency);
+        try {
+            if (client != null)
+                send_all(senders, client, uris, WARM_UP, concurrency);
+            long start = System.nanoTime();
+            long[] latencies = send_all(senders, client, uris, requests, concurrency);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(latencies);
+            System.out.printf("%-36s %9.0f requests/s, p50 %.3f ms, p99 %.3f ms%n", name + ":", latencies.length / seconds,
+                    latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+        } catch (IOException err) {
+            System.out.println(name + ": failed, " + err);
+        } finally {
+            senders.shutdownNow();
+        }
+    }
+
+    // splits the requests between the threads and returns the latency of each request in nanoseconds
+    private static long[] send_all(ExecutorService senders, HttpClient client, List<URI> uris, int requests, int concurrency) throws IOException, InterruptedException {
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < concurrency; ++t) {
+            int first = t;
+            results.add(senders.submit(() -> {
+                long[] latencies = new long[(requests - first + concurrency - 1) / concurrency];
+                for (int r = 0; r < latencies.length; ++r) {
+                    HttpRequest request = HttpRequest.newBuilder(uris.get((first + r * concurrency) % uris.size())).build();
+                    HttpClient sender = client != null ? client : HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    long start = System.nanoTime();
+                    HttpResponse<byte[]> response = sender.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    latencies[r] = System.nanoTime() - start;
+                    if (response.statusCode() != WebServer.POSITIVE_STATUS_CODE)
+                        throw new IOException(request.uri() + " returned status code " + response.statusCode());
+                }
+                return latencies;
+            }));
+        }
+        long[] all = new long[0];
+        for (Future<long[]> result : results) {
+            long[] latencies;
+            try {
+                latencies = result.get();
+            } catch (ExecutionException err) {
+                throw err.getCause() instanceof IOException ? (IOException) err.getCause() : new IOException(err.getCause());
+            }
+            int length = all.length;
+            all = Arrays.copyOf(all, length + latencies.length);
+            System.arraycopy(latencies, 0, all, length, latencies.length);
+        }
+        return all;
+    }
+
+    // starts an HTTP server on a free port serving the files from memory, like WebServerLite.jar serves them from disk
+    private static HttpServer start_stand_in(List<String> paths, int threads) throws IOException {
+        Map<String, byte[]> files = new HashMap<>();
+        for (String path : paths)
+            files.put("/" + path, Files.readAllBytes(Paths.get(path)));
+        // without TCP_NODELAY the headers and the body are sent in separate segments and every response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = files.get(exchange.getRequestURI().getPath());
+            exchange.getRequestBody().readAllBytes();
+            if (body == null)
+                exchange.sendResponseHeaders(404, -1);
+            else {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        // daemon threads so the benchmark ends once the stand-in is stopped
+        server.setExecutor(Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "stand-in");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,90 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * tests of the heading scorers on random positions in the confinement area, with the real no-fly zones and with random ones
+ */
+public class HeadingScorerTest {
+
+    // the number of positions tested per zone map
+    private static final int POSITIONS = 20_000;
+
+    // the no-fly zones of the university, read from the project directory the tests are run in
+    private static List<List<List<Double>>> real_zones() throws IOException {
+        return WebServer.parse_no_fly_zones(Files.readString(Paths.get("buildings/no-fly-zones.geojson")));
+    }
+
+    // a random position and destination in the confinement area
+    private static double[] random_point(Random random) {
+        return new double[]{Drone.CONFINED_LONG[0] + random.nextDouble() * (Drone.CONFINED_LONG[1] - Drone.CONFINED_LONG[0]),
+                Drone.CONFINED_LAT[0] + random.nextDouble() * (Drone.CONFINED_LAT[1] - Drone.CONFINED_LAT[0]),
+                Drone.CONFINED_LONG[0] + random.nextDouble() * (Drone.CONFINED_LONG[1] - Drone.CONFINED_LONG[0]),
+                Drone.CONFINED_LAT[0] + random.nextDouble() * (Drone.CONFINED_LAT[1] - Drone.CONFINED_LAT[0])};
+    }
+
+    // checks that the vector scorer picks the same heading as the scalar one for every position, the two are asked in the same order
+    // so they keep to the same side of the no-fly zones
+    private static void check_same_headings(List<List<List<Double>>> no_fly_zones, long seed) {
+        HeadingScorer scalar = new HeadingScorer(no_fly_zones), vector = new VectorHeadingScorer(no_fly_zones);
+        Random random = new Random(seed);
+        for (int p = 0; p < POSITIONS; ++p) {
+            double[] point = random_point(random);
+            assertEquals("position " + p, scalar.best_heading(point[0], point[1], point[2], point[3]),
+                    vector.best_heading(point[0], point[1], point[2], point[3]));
+        }
+    }
+
+    @Test
+    public void vectorScorerMatchesScalarOnRealZones() throws IOException {
+        // the vector scorer can only be loaded if the JVM was run with --add-modules jdk.incubator.vector
+        assumeTrue(HeadingScorer.VECTOR_API);
+        check_same_headings(real_zones(), 1);
+    }
+
+    @Test
+    public void vectorScorerMatchesScalarOnRandomZones() {
+        assumeTrue(HeadingScorer.VECTOR_API);
+        Random random = new Random(2);
+        for (int edges = 16; edges <= 256; edges *= 4)
+            check_same_headings(SegmentKernel.random_zones(random, edges), random.nextLong());
+    }
+
+    @Test
+    public void headingMovesAvoidEveryEdgeAndStayConfined() throws IOException {
+        List<List<List<Double>>> no_fly_zones = real_zones();
+        HeadingScorer scorer = new HeadingScorer(no_fly_zones);
+        Random random = new Random(3);
+        int headings = 0;
+        for (int p = 0; p < POSITIONS; ++p) {
+            double[] point = random_point(random);
+            int heading = scorer.best_heading(point[0], point[1], point[2], point[3]);
+            if (heading < 0)
+                continue;
+            ++headings;
+            assertEquals("position " + p, 0, heading % 10);
+            Drone next = new Drone(point[0], point[1]).nextPosition(heading);
+            assertTrue("position " + p, next.isConfined());
+            for (List<List<Double>> zone : no_fly_zones)
+                for (int i = 0; i < zone.size(); ++i) {
+                    List<Double> from = zone.get(i), to = zone.get(i == zone.size() - 1 ? 0 : i + 1);
+                    assertFalse("position " + p, Line2D.linesIntersect(point[0], point[1], next.getLongitude(), next.getLatitude(),
+                            from.get(0), from.get(1), to.get(0), to.get(1)));
+                }
+        }
+        // most random positions aren't inside a building, so the scorer has to find a heading for them
+        assertTrue(headings > POSITIONS / 2);
+    }
+}
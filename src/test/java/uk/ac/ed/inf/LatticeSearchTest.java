@@ -0,0 +1,87 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * tests of the lattice searches on every pair of the points in the testing directory, i.e., Appleton Tower, the pickup locations and the delivery locations
+ */
+public class LatticeSearchTest {
+
+    private static ObstacleIndex obstacles;
+    private static List<double[]> points;
+
+    @BeforeClass
+    public static void read_points() throws IOException {
+        obstacles = new ObstacleIndex(WebServer.parse_no_fly_zones(Files.readString(Paths.get("buildings/no-fly-zones.geojson"))));
+        points = new ArrayList<>();
+        for (String name : new String[]{"appleton-tower.geojson", "pickup-locations.geojson", "delivery-locations.geojson"})
+            for (Feature feature : FeatureCollection.fromJson(Files.readString(Paths.get("testing", name))).features()) {
+                Point point = (Point) feature.geometry();
+                points.add(new double[]{point.longitude(), point.latitude()});
+            }
+    }
+
+    // checks that flying the moves from one point is allowed move by move and ends close to the other
+    private static void assert_valid_path(String message, int[] moves, double[] from, double[] to) {
+        Drone position = new Drone(from[0], from[1]);
+        for (int m = 0; m < moves.length; ++m) {
+            Drone next = position.nextPosition(moves[m]);
+            assertTrue(message + " move " + m, obstacles.allows(position, next));
+            position = next;
+        }
+        assertTrue(message, position.closeTo(new Drone(to[0], to[1])));
+    }
+
+    @Test
+    public void pathsAreAllowedAndReachTheDestination() {
+        LatticeSearch search = new LatticeSearch(obstacles);
+        for (double[] from : points)
+            for (double[] to : points) {
+                if (from == to)
+                    continue;
+                String pair = from[0] + "," + from[1] + " to " + to[0] + "," + to[1];
+                int[] naive = search.find_path_naive(from, to);
+                if (naive == null)
+                    continue;
+                assert_valid_path("A* on cells " + pair, naive, from, to);
+                int[] jump = search.find_path(from, to);
+                assertNotNull("jump points " + pair, jump);
+                assert_valid_path("jump points " + pair, jump, from, to);
+                int[] bidirectional = search.find_path_bidirectional(from, to);
+                assertNotNull("bidirectional " + pair, bidirectional);
+                assert_valid_path("bidirectional " + pair, bidirectional, from, to);
+            }
+    }
+
+    @Test
+    public void jumpPointPathsAreNearlyAsShortAsAStar() {
+        LatticeSearch search = new LatticeSearch(obstacles);
+        long jump_moves = 0, naive_moves = 0;
+        for (double[] from : points)
+            for (double[] to : points) {
+                if (from == to)
+                    continue;
+                int[] naive = search.find_path_naive(from, to), jump = search.find_path(from, to);
+                if (naive == null || jump == null)
+                    continue;
+                naive_moves += naive.length;
+                jump_moves += jump.length;
+            }
+        assertTrue(naive_moves > 0);
+        // the jump point search only moves along the lattice lines between jump points, which costs it a few moves in total
+        assertTrue(jump_moves + " moves against " + naive_moves, jump_moves <= naive_moves * 1.02);
+    }
+}
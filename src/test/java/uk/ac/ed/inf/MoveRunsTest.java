@@ -0,0 +1,95 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * tests that the runs of random flights give back exactly the moves they were made from, as a list and after writing and reading them
+ */
+public class MoveRunsTest {
+
+    // the angle of a move the drone hovers in
+    private static final int HOVER_ANGLE = -999;
+
+    // the number of random flights tested
+    private static final int FLIGHTS = 200;
+
+    // a random flight of straight runs, hovers, order changes and moves whose end can't be computed from their start and angle
+    private static List<Flightpath> random_flight(Random random) {
+        List<Flightpath> moves = new ArrayList<>();
+        Drone position = new Drone(-3.186874, 55.944494);
+        String order_no = "appleton";
+        int runs = random.nextInt(40);
+        for (int r = 0; r < runs; ++r) {
+            if (random.nextInt(4) == 0)
+                order_no = Integer.toHexString(random.nextInt()).toUpperCase();
+            int angle = random.nextInt(10) == 0 ? HOVER_ANGLE : 10 * random.nextInt(36);
+            int length = angle == HOVER_ANGLE ? 1 : 1 + random.nextInt(20);
+            for (int m = 0; m < length; ++m) {
+                Drone next = position.nextPosition(angle);
+                // the end of the move is off the computed position, like a move logged with rounded coordinates
+                if (random.nextInt(30) == 0)
+                    next = new Drone(next.getLongitude() + 1e-9, next.getLatitude());
+                moves.add(new Flightpath(order_no, position.getLongitude(), position.getLatitude(), angle, next.getLongitude(), next.getLatitude()));
+                position = next;
+            }
+        }
+        return moves;
+    }
+
+    // checks that two moves have the same order number, angle and coordinates
+    private static void assert_same_move(String message, Flightpath expected, Flightpath actual) {
+        assertEquals(message, expected.getOrderNo(), actual.getOrderNo());
+        assertEquals(message, expected.getAngle(), actual.getAngle());
+        assertEquals(message, expected.getFromLongitude(), actual.getFromLongitude());
+        assertEquals(message, expected.getFromLatitude(), actual.getFromLatitude());
+        assertEquals(message, expected.getToLongitude(), actual.getToLongitude());
+        assertEquals(message, expected.getToLatitude(), actual.getToLatitude());
+    }
+
+    // checks that the list of the runs has exactly the moves, through its iterator and by index
+    private static void assert_same_moves(String message, List<Flightpath> moves, List<Flightpath> expanded) {
+        assertEquals(message, moves.size(), expanded.size());
+        Iterator<Flightpath> move = expanded.iterator();
+        for (int m = 0; m < moves.size(); ++m) {
+            assertTrue(message, move.hasNext());
+            assert_same_move(message + " move " + m, moves.get(m), move.next());
+            assert_same_move(message + " move " + m, moves.get(m), expanded.get(m));
+        }
+        assertFalse(message, move.hasNext());
+    }
+
+    @Test
+    public void runsGiveBackTheMoves() {
+        Random random = new Random(1);
+        for (int f = 0; f < FLIGHTS; ++f) {
+            List<Flightpath> moves = random_flight(random);
+            assert_same_moves("flight " + f, moves, MoveRuns.of(moves).as_list());
+        }
+    }
+
+    @Test
+    public void writtenRunsReadBackTheMoves() {
+        Random random = new Random(2);
+        for (int f = 0; f < FLIGHTS; ++f) {
+            List<Flightpath> moves = random_flight(random);
+            MoveRuns runs = MoveRuns.of(moves);
+            ByteBuffer encoded = ByteBuffer.allocate(runs.getEncodedSize());
+            runs.write(encoded);
+            // the encoded size is exact, so a segment can be sized before the runs are written
+            assertEquals("flight " + f, encoded.capacity(), encoded.position());
+            MoveRuns read = MoveRuns.read(encoded.flip());
+            assertEquals("flight " + f, runs.getRunCount(), read.getRunCount());
+            assert_same_moves("flight " + f, moves, read.as_list());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * tests of the segment kernels against Line2D.linesIntersect on random segments and random no-fly zones,
+ * the coordinates are snapped to a coarse grid so segments touching at an end or lying on the same line, the cases Line2D handles specially, come up often
+ */
+public class SegmentKernelTest {
+
+    // the number of segments tested per zone map
+    private static final int SEGMENTS = 5_000;
+
+    // the first edge a segment intersects, tested with Line2D one edge at a time
+    private static int expected(SegmentKernel kernel, double[] q) {
+        for (int e = 0; e < kernel.edge_count; ++e)
+            if (Line2D.linesIntersect(q[0], q[1], q[2], q[3], kernel.edge_x1[e], kernel.edge_y1[e], kernel.edge_x2[e], kernel.edge_y2[e]))
+                return e;
+        return -1;
+    }
+
+    // a random segment a few grid steps long, like the moves and the short legs of the drone
+    private static double[] random_segment(Random random) {
+        int column = random.nextInt(SegmentKernel.GRID + 1), row = random.nextInt(SegmentKernel.GRID + 1);
+        return new double[]{SegmentKernel.grid(column, Drone.CONFINED_LONG), SegmentKernel.grid(row, Drone.CONFINED_LAT),
+                SegmentKernel.grid(column + random.nextInt(7) - 3, Drone.CONFINED_LONG), SegmentKernel.grid(row + random.nextInt(7) - 3, Drone.CONFINED_LAT)};
+    }
+
+    // checks that the kernel finds the same first edge as Line2D for random segments on random zone maps of increasing size
+    private static void check(boolean vector, long seed) {
+        Random random = new Random(seed);
+        for (int edges = 16; edges <= 1024; edges *= 4) {
+            List<List<List<Double>>> no_fly_zones = SegmentKernel.random_zones(random, edges);
+            SegmentKernel scalar = new SegmentKernel(no_fly_zones);
+            SegmentKernel kernel = vector ? new VectorSegmentKernel(no_fly_zones) : scalar;
+            for (int s = 0; s < SEGMENTS; ++s) {
+                double[] q = random_segment(random);
+                // the same first edge, so the edge tests counted in the metrics are the same as well
+                assertEquals("segment " + s + " of " + edges + " edges", expected(scalar, q), kernel.first_intersecting(q[0], q[1], q[2], q[3]));
+            }
+        }
+    }
+
+    @Test
+    public void scalarKernelMatchesLine2D() {
+        check(false, 1);
+    }
+
+    @Test
+    public void vectorKernelMatchesLine2D() {
+        // the vector kernel can only be loaded if the JVM was run with --add-modules jdk.incubator.vector
+        assumeTrue(HeadingScorer.VECTOR_API);
+        check(true, 2);
+    }
+
+    @Test
+    public void createPicksKernelWithSameResults() {
+        Random random = new Random(3);
+        List<List<List<Double>>> no_fly_zones = SegmentKernel.random_zones(random, 512);
+        SegmentKernel scalar = new SegmentKernel(no_fly_zones), created = SegmentKernel.create(no_fly_zones);
+        assertEquals(scalar.getEdgeCount(), created.getEdgeCount());
+        for (int s = 0; s < SEGMENTS; ++s) {
+            double[] q = random_segment(random);
+            assertEquals("segment " + s, scalar.intersects(q[0], q[1], q[2], q[3]), created.intersects(q[0], q[1], q[2], q[3]));
+        }
+    }
+}